@@ -8,6 +8,9 @@ import java.util.*;
  * lane pressure, waiting vehicles and fairness constraints.
  */
 public class ActuatedController implements TrafficLightController {
+    private static final int EMERGENCY = -2;
+    private static final int ALL_RED = -1;
+
     private final List<Phase> phases;
     private int currentPhaseIndex = 0;
     private int nextPhaseIndex = -1;
@@ -20,68 +23,130 @@ public class ActuatedController implements TrafficLightController {
     private final double beta; //Vehicles waiting
     private final double gamma; //Fairness
     private final int fairnessCap;
+    private final boolean debug;
     private final Deque<Lane> emergencyQueue = new ArrayDeque<>();
     private Lane currentEmergencyLane = null;
 
+    // per-phase aggregates, refreshed only for phases whose lanes changed
+    private final Lane[][] phaseLanes;
+    private final long[] phaseMasks;
+    private final boolean[] dirty;
+    private final boolean[] occupied;
+    private final double[] vehiclesWaiting;
+    private final double[] pressures;
+    private final double[] priorities;
+
 
     /**
      * Create a controller using the global {@link Config} parameters and the
-     * supplied road map.
+     * supplied road map. The phases are those of the configured
+     * {@link Geometry}, see {@link PhaseTable}.
      *
      * @param roads mapping of directions to their corresponding road objects
      */
     public ActuatedController(Map<Direction, Road> roads) {
+        this(roads, RunConfig.current());
+    }
+
+    /**
+     * Create a controller for the supplied road map using the parameters of
+     * a run.
+     *
+     * @param roads  mapping of directions to their corresponding road objects
+     * @param config configuration of the run
+     */
+    public ActuatedController(Map<Direction, Road> roads, RunConfig config) {
         this.roads = roads;
 
-        Config cfg = Config.current;
-        this.yellowDuration = cfg.yellowDuration;
-        this.alpha = cfg.alpha;
-        this.beta = cfg.beta;
-        this.gamma = cfg.gamma;
-        this.fairnessCap = cfg.fairnessCap;
-
-        this.phases = List.of(
-                new Phase(
-                        Set.of(
-                                roads.get(Direction.NORTH).getLane(LaneType.STRAIGHT),
-                                roads.get(Direction.SOUTH).getLane(LaneType.STRAIGHT)
-                        ),
-                        cfg.phases.get(0).minGreen,
-                        cfg.phases.get(0).maxGreen
-                ),
-                new Phase(
-                        Set.of(
-                                roads.get(Direction.EAST).getLane(LaneType.STRAIGHT),
-                                roads.get(Direction.WEST).getLane(LaneType.STRAIGHT)
-                        ),
-                        cfg.phases.get(1).minGreen,
-                        cfg.phases.get(1).maxGreen
-                ),
-                new Phase(
-                        Set.of(
-                                roads.get(Direction.NORTH).getLane(LaneType.LEFT),
-                                roads.get(Direction.SOUTH).getLane(LaneType.LEFT)
-                        ),
-                        cfg.phases.get(2).minGreen,
-                        cfg.phases.get(2).maxGreen
-                ),
-                new Phase(
-                        Set.of(
-                                roads.get(Direction.EAST).getLane(LaneType.LEFT),
-                                roads.get(Direction.WEST).getLane(LaneType.LEFT)
-                        ),
-                        cfg.phases.get(3).minGreen,
-                        cfg.phases.get(3).maxGreen
-                )
-        );
+        this.yellowDuration = config.yellowDuration;
+        this.alpha = config.alpha;
+        this.beta = config.beta;
+        this.gamma = config.gamma;
+        this.fairnessCap = config.fairnessCap;
+        this.debug = config.debug;
+
+        PhaseTable table = config.getPhaseTable();
+        List<Phase> built = new ArrayList<>(table.getPhaseCount());
+        for (int i = 0; i < table.getPhaseCount(); i++) {
+            Set<Lane> lanes = new LinkedHashSet<>();
+            for (long m = table.getPhase(i); m != 0; m &= m - 1) {
+                Geometry.LaneKey key = table.getLanes().get(Long.numberOfTrailingZeros(m));
+                lanes.add(roads.get(key.start()).getLane(key.type()));
+            }
+            built.add(new Phase(Collections.unmodifiableSet(lanes), config.getMinGreen(i), config.getMaxGreen(i)));
+        }
+        this.phases = List.copyOf(built);
 
         this.stepsSinceActivation = new int[phases.size()];
 
+        int n = phases.size();
+        this.phaseLanes = new Lane[n][];
+        this.phaseMasks = new long[n];
+        this.dirty = new boolean[n];
+        this.occupied = new boolean[n];
+        this.vehiclesWaiting = new double[n];
+        this.pressures = new double[n];
+        this.priorities = new double[n];
+        Map<Lane, List<Integer>> lanePhases = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            phaseLanes[i] = phases.get(i).getLanes().toArray(new Lane[0]);
+            dirty[i] = true;
+            for (Lane lane : phaseLanes[i]) {
+                phaseMasks[i] |= laneBit(lane);
+                lanePhases.computeIfAbsent(lane, l -> new ArrayList<>()).add(i);
+            }
+        }
+        lanePhases.forEach((lane, indices) -> {
+            int[] affected = indices.stream().mapToInt(Integer::intValue).toArray();
+            lane.addListener(l -> {
+                for (int i : affected) {
+                    dirty[i] = true;
+                }
+            });
+        });
+
         // initial phase is active at start
         phases.get(currentPhaseIndex).incrementActivations();
     }
 
 
+    /**
+     * Copy this controller and its state to drive a forked intersection.
+     * Subclasses override this to return their own type, creating the copy
+     * and calling {@link #copyStateFrom}.
+     */
+    @Override
+    public ActuatedController fork(Intersection fork) {
+        ActuatedController copy = new ActuatedController(fork.getRoads(), fork.getConfig());
+        copy.copyStateFrom(this);
+        return copy;
+    }
+
+    /**
+     * Take over the phase, timers, statistics and pending emergencies of
+     * another controller of the same geometry, mapping its lanes to the
+     * lanes of this controller's roads.
+     */
+    protected void copyStateFrom(ActuatedController other) {
+        currentPhaseIndex = other.currentPhaseIndex;
+        nextPhaseIndex = other.nextPhaseIndex;
+        yellowTimer = other.yellowTimer;
+        currentStep = other.currentStep;
+        System.arraycopy(other.stepsSinceActivation, 0, stepsSinceActivation, 0, stepsSinceActivation.length);
+        for (int i = 0; i < phases.size(); i++) {
+            phases.get(i).copyStateFrom(other.phases.get(i));
+        }
+        emergencyQueue.clear();
+        for (Lane lane : other.emergencyQueue) {
+            emergencyQueue.add(ownLane(lane));
+        }
+        currentEmergencyLane = other.currentEmergencyLane == null ? null : ownLane(other.currentEmergencyLane);
+    }
+
+    private Lane ownLane(Lane lane) {
+        return roads.get(lane.getStart()).getLane(lane.getType());
+    }
+
     /**
      * Queue a lane for immediate service when an emergency vehicle arrives.
      * Duplicate notifications are ignored.
@@ -100,6 +165,35 @@ public class ActuatedController implements TrafficLightController {
      */
     @Override
     public Set<Lane> getGreenLanes(Map<Direction, Road> roads) {
+        int decision = decide();
+        if (decision == EMERGENCY) return Set.of(currentEmergencyLane);
+        if (decision == ALL_RED) return Set.of();
+        return phases.get(decision).getLanes();
+    }
+
+    /**
+     * Same decision as {@link #getGreenLanes}, returned as a lane bitmask
+     * without allocating.
+     */
+    @Override
+    public long getGreenMask(Map<Direction, Road> roads) {
+        int decision = decide();
+        if (decision == EMERGENCY) return laneBit(currentEmergencyLane);
+        if (decision == ALL_RED) return 0L;
+        return phaseMasks[decision];
+    }
+
+    private static long laneBit(Lane lane) {
+        return lane.getIndex() >= 0 ? 1L << lane.getIndex() : 0L;
+    }
+
+    /**
+     * Advance the controller by one step.
+     *
+     * @return index of the phase to keep green, {@link #EMERGENCY} to serve
+     * only the current emergency lane or {@link #ALL_RED} during yellow
+     */
+    private int decide() {
         currentStep++;
         for (int i = 0; i < stepsSinceActivation.length; i++) {
             stepsSinceActivation[i]++;
@@ -121,7 +215,7 @@ public class ActuatedController implements TrafficLightController {
             }
         }
         if (currentEmergencyLane != null) {
-            return Set.of(currentEmergencyLane);
+            return EMERGENCY;
         }
 
         if (yellowTimer > 0) {
@@ -134,7 +228,7 @@ public class ActuatedController implements TrafficLightController {
                 newPhase.incrementActivations();
                 stepsSinceActivation[currentPhaseIndex] = 0;
             }
-            return Set.of();
+            return ALL_RED;
         }
 
         stepsSinceActivation[currentPhaseIndex] = 0;
@@ -142,114 +236,164 @@ public class ActuatedController implements TrafficLightController {
         Phase current = phases.get(currentPhaseIndex);
         current.incrementTimer();
 
-        double currentPriority = calculatePriority(currentPhaseIndex);
-        double bestOtherPriority = currentPriority;
-        int bestOtherIndex = currentPhaseIndex;
-
-        // Fairness cap selection
-        int fairnessCandidateIndex = -1;
-        double maxFairnessPressure = -1;
+        int targetIndex = selectPhase();
+        boolean minReached = current.isMinTimeReached();
 
-        for (int i = 0; i < phases.size(); i++) {
-            Phase phase = phases.get(i);
-            int fairness = stepsSinceActivation[i];
+        if (targetIndex != -1 && targetIndex != currentPhaseIndex && minReached) {
+            if (debug) {
+                System.out.printf("-> Switching phase from %s to %s%n",
+                        current.getLanes(), phases.get(targetIndex).getLanes());
+            }
+            current.addDuration(current.getTimeGreen());
+            nextPhaseIndex = targetIndex;
+            yellowTimer = yellowDuration;
+        } else {
+            if (debug) {
+                System.out.printf("-> Staying on current phase: %s%n", current.getLanes());
+            }
+        }
 
-            boolean hasVehicles = phase.getLanes().stream().anyMatch(l -> l.size() > 0);
+        return currentPhaseIndex;
+    }
 
-            if (fairness >= fairnessCap && hasVehicles) {
-                double pressure = calculatePressure(phase);
-                if (pressure > maxFairnessPressure) {
-                    maxFairnessPressure = pressure;
-                    fairnessCandidateIndex = i;
-                }
-            }
 
-            // Regular priority evaluation
-            double priority = calculatePriority(i);
-            if (i != currentPhaseIndex && priority > bestOtherPriority) {
-                bestOtherPriority = priority;
-                bestOtherIndex = i;
-            }
 
-            if (Config.debug) {
+    /**
+     * Choose the phase to switch to once the current one has run for this
+     * step. The default scores every phase from lane pressure, waiting
+     * vehicles and fairness; subclasses may decide differently. A returned
+     * phase only takes effect once the current phase has reached its minimum
+     * green time.
+     *
+     * @return index of the phase to switch to, or {@code -1} (or the current
+     * index) to stay
+     */
+    protected int selectPhase() {
+        evaluatePhases();
+        Phase current = phases.get(currentPhaseIndex);
+        if (debug) {
+            for (int i = 0; i < phases.size(); i++) {
+                Phase phase = phases.get(i);
                 System.out.printf(
                         "Phase %d (%s): priority=%.2f, timer=%d, fairness=%d%n",
                         i,
                         phase.getLanes(),
-                        priority,
+                        priorities[i],
                         phase.getTimeGreen(),
-                        fairness
+                        stepsSinceActivation[i]
                 );
             }
         }
 
-        boolean minReached = current.isMinTimeReached();
-        boolean maxReached = current.isMaxTimeExceeded();
-        boolean switchByPriority = bestOtherIndex != currentPhaseIndex && bestOtherPriority > currentPriority;
-
-        int targetIndex = -1;
-
-        if (fairnessCandidateIndex != -1) {
-            targetIndex = fairnessCandidateIndex;
-            if (Config.debug) {
-                System.out.printf("-> Fairness cap reached by phase %d%n", targetIndex);
+        int fairnessCandidate = fairnessCandidate(stepsSinceActivation, occupied, pressures, fairnessCap);
+        if (fairnessCandidate != -1) {
+            if (debug) {
+                System.out.printf("-> Fairness cap reached by phase %d%n", fairnessCandidate);
             }
-        } else if (minReached && (maxReached || switchByPriority)) {
-            targetIndex = bestOtherIndex;
+            return fairnessCandidate;
         }
+        return priorityCandidate(currentPhaseIndex, priorities,
+                current.isMinTimeReached(), current.isMaxTimeExceeded());
+    }
 
-        if (targetIndex != -1 && targetIndex != currentPhaseIndex && minReached) {
-            if (Config.debug) {
-                System.out.printf("-> Switching phase from %s to %s%n",
-                        current.getLanes(), phases.get(targetIndex).getLanes());
-            }
-            current.addDuration(current.getTimeGreen());
-            nextPhaseIndex = targetIndex;
-            yellowTimer = yellowDuration;
-        } else {
-            if (Config.debug) {
-                System.out.printf("-> Staying on current phase: %s%n", current.getLanes());
+    /**
+     * Fairness cap selection: among the occupied phases skipped for at least
+     * {@code fairnessCap} steps, the one with the highest pressure.
+     *
+     * @return phase index, or {@code -1} if no phase reached the cap
+     */
+    static int fairnessCandidate(int[] stepsSinceActivation, boolean[] occupied, double[] pressures,
+                                 int fairnessCap) {
+        int candidate = -1;
+        double maxPressure = -1;
+        for (int i = 0; i < stepsSinceActivation.length; i++) {
+            if (stepsSinceActivation[i] >= fairnessCap && occupied[i] && pressures[i] > maxPressure) {
+                maxPressure = pressures[i];
+                candidate = i;
             }
         }
+        return candidate;
+    }
 
-        return phases.get(currentPhaseIndex).getLanes();
+    /**
+     * Regular priority selection: once the minimum green time is reached,
+     * the highest-priority other phase if it beats the current one or the
+     * maximum green time is exceeded.
+     *
+     * @return phase index, or {@code -1} to stay
+     */
+    static int priorityCandidate(int current, double[] priorities, boolean minReached, boolean maxReached) {
+        double bestPriority = priorities[current];
+        int best = current;
+        for (int i = 0; i < priorities.length; i++) {
+            if (i != current && priorities[i] > bestPriority) {
+                bestPriority = priorities[i];
+                best = i;
+            }
+        }
+        return minReached && (maxReached || best != current) ? best : -1;
     }
 
+    /**
+     * Score every phase for the current step. Vehicle counts only change when
+     * a lane reports a change, so the weighted number of waiting vehicles and
+     * whether a phase has any vehicles at all are cached per phase and only
+     * refreshed for dirty phases. Waiting pressure grows with time and is
+     * evaluated once per occupied phase; empty phases have none.
+     */
+    private void evaluatePhases() {
+        for (int i = 0; i < phaseLanes.length; i++) {
+            if (dirty[i]) {
+                refreshPhase(i);
+            }
+            pressures[i] = occupied[i] ? calculatePressure(phaseLanes[i]) : 0.0;
+            priorities[i] = alpha * pressures[i] + beta * vehiclesWaiting[i] + gamma * stepsSinceActivation[i];
+        }
+    }
 
+    private void refreshPhase(int index) {
+        double waiting = 0.0;
+        boolean any = false;
+        for (Lane lane : phaseLanes[index]) {
+            waiting += lane.size() * lane.getPriority();
+            any |= lane.size() > 0;
+        }
+        vehiclesWaiting[index] = waiting;
+        occupied[index] = any;
+        dirty[index] = false;
+    }
 
     /**
      * Compute the accumulated waiting pressure for a phase. Each lane
      * contributes its total waiting time weighted by lane priority.
      */
-    private double calculatePressure(Phase phase) {
+    private double calculatePressure(Lane[] lanes) {
         double total = 0.0;
-        for (Lane lane : phase.getLanes()) {
+        for (Lane lane : lanes) {
             total += lane.getTotalWaitingTime(currentStep) * lane.getPriority();
         }
         return total;
     }
 
-
     /**
-     * Overall priority used to compare phases. Combines waiting pressure,
-     * number of vehicles and a fairness factor.
+     * @return bitmask of the lanes of phase {@code index}
      */
-    private double calculatePriority(int index) {
-        Phase phase = phases.get(index);
-        double pressure = calculatePressure(phase);
-        double vehiclesWaiting = 0.0;
-        for (Lane lane : phase.getLanes()) {
-            vehiclesWaiting += lane.size() * lane.getPriority();
-        }
-        int fairness = stepsSinceActivation[index];
-
-        return alpha * pressure + beta * vehiclesWaiting + gamma * fairness;
+    protected long getPhaseMask(int index) {
+        return phaseMasks[index];
     }
 
     public int getCurrentPhaseIndex() {
         return currentPhaseIndex;
     }
 
+    /**
+     * @return steps since phase {@code index} was last green, 0 for the
+     * current phase
+     */
+    public int getStepsSinceActivation(int index) {
+        return stepsSinceActivation[index];
+    }
+
     public List<Phase> getPhases() {
         return phases;
     }
@@ -0,0 +1,72 @@
+package sim;
+
+import java.util.Map;
+
+/**
+ * A simulation command decoded once from its input form. Road names and
+ * vehicle types are resolved to enums at decode time, so executing a command
+ * through {@link SimulationEngine#execute(Command)} involves no string handling.
+ */
+public sealed interface Command permits Command.AddVehicle, Command.AddVehicles, Command.Step, Command.Unknown {
+
+    /** Shared instance of a single {@link Step}. */
+    Step STEP = new Step(1);
+
+    /**
+     * Place a new vehicle on the road it arrives from.
+     */
+    record AddVehicle(String vehicleId, Direction startRoad, Direction endRoad,
+                      VehicleType vehicleType) implements Command {
+    }
+
+    /**
+     * Place {@code count} vehicles with the same route and type on their start
+     * road at once. Vehicle ids are {@code idPrefix} followed by consecutive
+     * numbers from {@code startIndex}, so the command behaves exactly like
+     * the equivalent run of {@link AddVehicle} commands.
+     */
+    record AddVehicles(String idPrefix, long startIndex, int count, Direction startRoad,
+                       Direction endRoad, VehicleType vehicleType) implements Command {
+        public AddVehicles {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative vehicle count: " + count);
+            }
+        }
+
+        /**
+         * @param i position within the batch, from {@code 0} to {@code count - 1}
+         * @return id of the {@code i}-th vehicle
+         */
+        public String vehicleId(int i) {
+            return idPrefix + (startIndex + i);
+        }
+    }
+
+    /**
+     * Advance the simulation by {@code count} steps, each reported separately
+     * in the output.
+     */
+    record Step(int count) implements Command {
+        public Step {
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative step count: " + count);
+            }
+        }
+    }
+
+    /**
+     * Command whose type is not recognised. Executing it only reports the type.
+     */
+    record Unknown(String type) implements Command {
+    }
+
+    /**
+     * Decode a command from its generic map form as produced by Jackson.
+     *
+     * @param command map with a {@code type} entry and type specific fields
+     * @return typed command
+     */
+    static Command fromMap(Map<String, Object> command) {
+        return CommandFields.of(command).toCommand();
+    }
+}
@@ -0,0 +1,116 @@
+package sim;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Raw field values of one input command before decoding. Readers fill in the
+ * fields they find and call {@link #toCommand()}; an instance can be
+ * {@link #clear() cleared} and reused for the next command.
+ */
+final class CommandFields {
+    String type;
+    String vehicleId;
+    String startRoad;
+    String endRoad;
+    String vehicleType;
+    String idPrefix;
+    Long count;
+    Long startIndex;
+
+    void clear() {
+        type = null;
+        vehicleId = null;
+        startRoad = null;
+        endRoad = null;
+        vehicleType = null;
+        idPrefix = null;
+        count = null;
+        startIndex = null;
+    }
+
+    /**
+     * Copy the recognised entries of a command in its generic map form as
+     * produced by Jackson.
+     */
+    static CommandFields of(Map<String, Object> command) {
+        CommandFields f = new CommandFields();
+        f.type = string(command.get("type"));
+        f.vehicleId = string(command.get("vehicleId"));
+        f.startRoad = string(command.get("startRoad"));
+        f.endRoad = string(command.get("endRoad"));
+        f.vehicleType = string(command.get("vehicleType"));
+        f.idPrefix = string(command.get("idPrefix"));
+        f.count = number("count", command.get("count"));
+        f.startIndex = number("startIndex", command.get("startIndex"));
+        return f;
+    }
+
+    private static String string(Object value) {
+        return value instanceof String s ? s : null;
+    }
+
+    private static Long number(String field, Object value) {
+        if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            return integral(field, ((Number) value).doubleValue());
+        }
+        return value instanceof Number n ? n.longValue() : null;
+    }
+
+    /**
+     * Value of a number written with a fraction or exponent, which must still
+     * be whole, e.g. {@code 2.0}.
+     *
+     * @throws IllegalArgumentException if the value is not a whole number
+     */
+    static long integral(String field, double value) {
+        if (value != Math.rint(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value + " is not a whole number");
+        }
+        return (long) value;
+    }
+
+    /**
+     * Build the typed command. Missing optional fields fall back to their
+     * defaults: vehicle type {@link VehicleType#NORMAL}, step count 1,
+     * id prefix {@code ""} and start index 1.
+     *
+     * @throws IllegalArgumentException if a road, vehicle type or count is
+     *                                  invalid or a required count is missing
+     */
+    Command toCommand() {
+        if ("addVehicle".equals(type)) {
+            return new Command.AddVehicle(vehicleId,
+                    Direction.parse(startRoad),
+                    Direction.parse(endRoad),
+                    parseVehicleType());
+        }
+        if ("step".equals(type)) {
+            return count == null || count == 1 ? Command.STEP : new Command.Step(toInt("count", count));
+        }
+        if ("addVehicles".equals(type)) {
+            if (count == null) {
+                throw new IllegalArgumentException("addVehicles requires a count");
+            }
+            return new Command.AddVehicles(
+                    idPrefix == null ? "" : idPrefix,
+                    startIndex == null ? 1 : startIndex,
+                    toInt("count", count),
+                    Direction.parse(startRoad),
+                    Direction.parse(endRoad),
+                    parseVehicleType());
+        }
+        return new Command.Unknown(type);
+    }
+
+    private VehicleType parseVehicleType() {
+        return vehicleType == null ? VehicleType.NORMAL : VehicleType.parse(vehicleType);
+    }
+
+    private static int toInt(String field, long value) {
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+        return (int) value;
+    }
+}
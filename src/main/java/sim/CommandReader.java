@@ -0,0 +1,150 @@
+package sim;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader for the {@code commands} array of an input file. Commands
+ * are pulled from the underlying {@link JsonParser} one at a time and decoded
+ * straight from the token stream into {@link Command} records, so only the
+ * command currently being executed is held in memory regardless of input size.
+ */
+public class CommandReader implements CommandSource {
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private final CommandFields fields = new CommandFields();
+    private boolean inArray;
+    private boolean ready;
+
+    /**
+     * Open a reader over the given input file, decompressing it if it is
+     * gzipped.
+     *
+     * @param file JSON document containing a top-level {@code commands} array
+     * @see FileStreams#openInput
+     */
+    public CommandReader(File file) throws IOException {
+        this(FACTORY.createParser(FileStreams.openInput(file.toPath())));
+    }
+
+    /**
+     * Open a reader over the given stream. The stream is closed together with
+     * the reader.
+     */
+    public CommandReader(InputStream in) throws IOException {
+        this(FACTORY.createParser(in));
+    }
+
+    private CommandReader(JsonParser parser) throws IOException {
+        this.parser = parser;
+        this.inArray = seekCommands();
+    }
+
+    /**
+     * Advance the parser to the start of the top-level {@code commands} array,
+     * skipping any other fields of the root object.
+     *
+     * @return whether a commands array was found
+     */
+    private boolean seekCommands() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object at the root of the input");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("commands".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (ready) return true;
+        if (!inArray) return false;
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                ready = true;
+            } else if (token == JsonToken.END_ARRAY || token == null) {
+                inArray = false;
+            } else {
+                throw new IOException("Unexpected token in commands array: " + token);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ready;
+    }
+
+    @Override
+    public Command next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        try {
+            return readCommand();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decode the fields of the command object the parser is positioned on.
+     * Unrecognised fields are skipped.
+     */
+    private Command readCommand() throws IOException {
+        CommandFields f = fields;
+        f.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                continue;
+            }
+            String text = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+            switch (field) {
+                case "type" -> f.type = text;
+                case "vehicleId" -> f.vehicleId = text;
+                case "startRoad" -> f.startRoad = text;
+                case "endRoad" -> f.endRoad = text;
+                case "vehicleType" -> f.vehicleType = text;
+                case "idPrefix" -> f.idPrefix = text;
+                case "count" -> f.count = longValue("count", value);
+                case "startIndex" -> f.startIndex = longValue("startIndex", value);
+                default -> { }
+            }
+        }
+        return f.toCommand();
+    }
+
+    /**
+     * Integer value of a number field, accepting whole numbers written with
+     * a fraction like {@link CommandFields#of} does.
+     *
+     * @throws IllegalArgumentException if the number is not whole
+     */
+    private Long longValue(String field, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) return parser.getLongValue();
+        if (value == JsonToken.VALUE_NUMBER_FLOAT) return CommandFields.integral(field, parser.getDoubleValue());
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
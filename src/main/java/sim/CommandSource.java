@@ -0,0 +1,12 @@
+package sim;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Closeable sequence of decoded commands read from an input file, either a
+ * JSON document ({@link CommandReader}) or a compiled scenario
+ * ({@link ScenarioFile}).
+ */
+public interface CommandSource extends Iterator<Command>, Closeable {
+}
@@ -24,18 +24,22 @@ public class Config {
         Map<LaneType, Double> north = new EnumMap<>(LaneType.class);
         north.put(LaneType.LEFT, 1.0);
         north.put(LaneType.STRAIGHT, 1.0);
+        north.put(LaneType.RIGHT, 1.0);
 
         Map<LaneType, Double> south = new EnumMap<>(LaneType.class);
         south.put(LaneType.LEFT, 1.0);
         south.put(LaneType.STRAIGHT, 1.0);
+        south.put(LaneType.RIGHT, 1.0);
 
         Map<LaneType, Double> east = new EnumMap<>(LaneType.class);
         east.put(LaneType.LEFT, 1.0);
         east.put(LaneType.STRAIGHT, 1.0);
+        east.put(LaneType.RIGHT, 1.0);
 
         Map<LaneType, Double> west = new EnumMap<>(LaneType.class);
         west.put(LaneType.LEFT, 1.0);
         west.put(LaneType.STRAIGHT, 1.0);
+        west.put(LaneType.RIGHT, 1.0);
 
         lanePriorities.put(Direction.NORTH, north);
         lanePriorities.put(Direction.SOUTH, south);
@@ -72,13 +76,41 @@ public class Config {
      */
     public int vehiclesPerStep = 2;
 
+    /**
+     * number of steps [steps] the lookahead controller rolls each candidate
+     * forward
+     */
+    public int lookaheadHorizon = 10;
+    /**
+     * time budget [µs] per decision of the lookahead controller, 0 to always
+     * wait for every rollout
+     */
+    public long lookaheadBudgetMicros = 0;
+
+    /**
+     * direct memory budget [MB] for queued vehicle records, 0 for no limit;
+     * records beyond it spill to a memory-mapped file
+     */
+    public long vehicleStoreMemoryMB = 0;
+    /**
+     * directory of the vehicle spill file, the system temporary directory
+     * when unset
+     */
+    public String vehicleStoreSpillDir = null;
+
     /**
      * base priority for every lane
      */
     public Map<Direction, Map<LaneType, Double>> lanePriorities = new EnumMap<>(Direction.class);
 
     /**
-     * timing constraints for each defined phase
+     * lanes of the intersection and their conflicts
+     */
+    public Geometry geometry = new Geometry();
+
+    /**
+     * timing constraints for each phase, in the order of {@link PhaseTable};
+     * phases beyond the list use {@link #DEFAULT_PHASE_TIME}
      */
     public List<PhaseTime> phases = new ArrayList<>(List.of(
             new PhaseTime(2, 5),
@@ -87,6 +119,9 @@ public class Config {
             new PhaseTime(2, 5)
     ));
 
+    /** Timing of phases without a configured entry. */
+    public static final PhaseTime DEFAULT_PHASE_TIME = new PhaseTime(2, 5);
+
     public static class PhaseTime {
         /**
          * minimum time [steps] the phase stays green
@@ -111,10 +146,19 @@ public class Config {
      * keep their default values.
      */
     public static Config load(String file) throws IOException {
+        Config defaults = read(file);
+        current = defaults;
+        return defaults;
+    }
+
+    /**
+     * Read a configuration file like {@link #load} without making it the
+     * {@link #current} one.
+     */
+    public static Config read(String file) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         Config defaults = new Config();
         mapper.readerForUpdating(defaults).readValue(new File(file));
-        current = defaults;
         return defaults;
     }
 
@@ -123,4 +167,8 @@ public class Config {
         if (map == null) return 1.0;
         return map.getOrDefault(type, 1.0);
     }
-}
\ No newline at end of file
+
+    public PhaseTime getPhaseTime(int index) {
+        return index < phases.size() ? phases.get(index) : DEFAULT_PHASE_TIME;
+    }
+}
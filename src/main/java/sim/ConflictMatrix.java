@@ -0,0 +1,79 @@
+package sim;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Pairwise lane compatibility of an intersection, stored as one bitmask per
+ * lane holding the indices of the lanes it must not share a green light
+ * with. Checking a set of green lanes takes one AND per green lane.
+ * Matrices for configured layouts come from {@link PhaseTable}.
+ */
+public final class ConflictMatrix {
+    private final long[] conflicts;
+
+    /**
+     * @param conflicts per lane, the bitmask of conflicting lanes; the
+     *                  relation must be symmetric
+     */
+    public ConflictMatrix(long[] conflicts) {
+        this.conflicts = conflicts.clone();
+    }
+
+    /**
+     * Build a matrix from a pairwise rule.
+     *
+     * @param lanes    lanes indexed by position
+     * @param conflict whether two distinct lanes conflict
+     */
+    public static <T> ConflictMatrix of(List<T> lanes, BiPredicate<? super T, ? super T> conflict) {
+        if (lanes.size() > SignalBank.MAX_SIGNALS) {
+            throw new IllegalArgumentException("Too many lanes: " + lanes.size());
+        }
+        long[] masks = new long[lanes.size()];
+        for (int i = 0; i < masks.length; i++) {
+            for (int j = i + 1; j < masks.length; j++) {
+                if (conflict.test(lanes.get(i), lanes.get(j)) || conflict.test(lanes.get(j), lanes.get(i))) {
+                    masks[i] |= 1L << j;
+                    masks[j] |= 1L << i;
+                }
+            }
+        }
+        return new ConflictMatrix(masks);
+    }
+
+    /**
+     * @return bitmask of the lanes conflicting with lane {@code index}
+     */
+    public long conflictsOf(int index) {
+        return conflicts[index];
+    }
+
+    /**
+     * @param green bitmask of green lanes
+     * @return whether any two of the lanes conflict
+     */
+    public boolean hasConflict(long green) {
+        for (long m = green; m != 0; m &= m - 1) {
+            if ((conflicts[Long.numberOfTrailingZeros(m)] & green) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return conflicts.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConflictMatrix other && Arrays.equals(conflicts, other.conflicts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(conflicts);
+    }
+}
@@ -1,26 +1,29 @@
 package sim;
 
-import java.util.Map;
-
 /**
- * Monitor that checks for conflicting green lights on every step.
- * If a conflict is detected the whole intersection is put into
+ * Monitor that checks for conflicting green lights on every step against the
+ * intersection's {@link ConflictMatrix}. If a conflict is detected the whole intersection is put into
  * blinking mode for one step and then reset to all red.
  */
 public class ConflictMonitor {
     private boolean blinking = false;
 
+    /**
+     * @return monitor in the same state, for a forked intersection
+     */
+    public ConflictMonitor copy() {
+        ConflictMonitor copy = new ConflictMonitor();
+        copy.blinking = blinking;
+        return copy;
+    }
+
     /**
      * Should be called at the beginning of every step to reset the
      * intersection after blinking.
      */
     public void beforeStep(Intersection intersection) {
         if (blinking) {
-            for (Road r : intersection.getRoads().values()) {
-                for (Lane l : r.getLanes()) {
-                    l.getTrafficLight().setRed();
-                }
-            }
+            intersection.getSignals().setAllRed();
             blinking = false;
         }
     }
@@ -34,38 +37,11 @@ public class ConflictMonitor {
         }
         if (hasConflict(intersection)) {
             blinking = true;
-            for (Road r : intersection.getRoads().values()) {
-                for (Lane l : r.getLanes()) {
-                    l.getTrafficLight().setBlinking();
-                }
-            }
+            intersection.getSignals().setAllBlinking();
         }
     }
 
     private boolean hasConflict(Intersection intersection) {
-        boolean nsStraight = false;
-        boolean ewStraight = false;
-        boolean nsLeft = false;
-        boolean ewLeft = false;
-        for (Map.Entry<Direction, Road> e : intersection.getRoads().entrySet()) {
-            Direction dir = e.getKey();
-            Road road = e.getValue();
-            for (Lane lane : road.getLanes()) {
-                if (lane.getTrafficLight().getState() == TrafficLightState.GREEN) {
-                    boolean vertical = dir == Direction.NORTH || dir == Direction.SOUTH;
-                    if (lane.getType() == LaneType.STRAIGHT) {
-                        if (vertical) nsStraight = true; else ewStraight = true;
-                    } else {
-                        if (vertical) nsLeft = true; else ewLeft = true;
-                    }
-                }
-            }
-        }
-        int active = 0;
-        if (nsStraight) active++;
-        if (ewStraight) active++;
-        if (nsLeft) active++;
-        if (ewLeft) active++;
-        return active > 1;
+        return intersection.getConflicts().hasConflict(intersection.getSignals().getGreenMask());
     }
-}
\ No newline at end of file
+}
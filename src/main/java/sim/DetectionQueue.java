@@ -0,0 +1,281 @@
+package sim;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free front end feeding vehicle detections from any number of threads
+ * into a {@link SimulationEngine}, which only the simulation thread touches.
+ * Detector threads {@link #offer} vehicles; the simulation thread
+ * {@link #drainTo drains} everything queued so far at each step boundary and
+ * then steps the engine, so the engine, intersection and lanes keep a single
+ * writer and need no locks.
+ *
+ * <p>The queue is an unbounded linked multi-producer single-consumer queue:
+ * a producer swaps its node in as the tail with one atomic exchange and then
+ * links it behind the previous tail, and the consumer follows the links from
+ * the head. Detections from one producer are drained in the order offered. A
+ * detection whose producer has swapped the tail but not linked it yet is
+ * picked up at the next boundary.</p>
+ *
+ * <p>Routes are checked against the intersection's geometry when offered. A
+ * detection the engine still rejects when drained is dropped and counted,
+ * so it cannot hold up the ones behind it.</p>
+ *
+ * <p>The consumer keeps counters of queue depth, batch size, rejections and
+ * the latency from offering a detection to draining it into the engine. They are
+ * consumer-local and may be read by the simulation thread, or by another
+ * thread once it has stopped.</p>
+ */
+public class DetectionQueue {
+    /** Bits below the highest one telling latency buckets apart. */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LATENCY_BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private static final class Node {
+        final String id;
+        final Direction start;
+        final Direction end;
+        final VehicleType type;
+        final long offeredNanos;
+        volatile Node next;
+
+        Node(String id, Direction start, Direction end, VehicleType type, long offeredNanos) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.type = type;
+            this.offeredNanos = offeredNanos;
+        }
+    }
+
+    /** Last node, swapped by producers. */
+    private final AtomicReference<Node> tail;
+    private final LongAdder offered = new LongAdder();
+    /** Whether a start and end road, by ordinal, have a lane between them. */
+    private final boolean[] routes;
+
+    // consumer-local state
+    /** Node before the oldest queued detection. */
+    private Node head;
+    private long drained;
+    private long rejected;
+    private long batches;
+    private int maxBatch;
+    private long maxDepth;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    /** Drained detections by {@link #bucket bucket} of their latency. */
+    private final long[] latencyBuckets = new long[LATENCY_BUCKETS];
+
+    /**
+     * @param intersection intersection the detections will be drained into,
+     *                     whose roads define the routes accepted
+     */
+    public DetectionQueue(Intersection intersection) {
+        Direction[] directions = Direction.values();
+        routes = new boolean[directions.length * directions.length];
+        for (Direction start : directions) {
+            Road road = intersection.getRoads().get(start);
+            if (road == null) continue;
+            for (Direction end : directions) {
+                try {
+                    road.laneFor(end);
+                    routes[start.ordinal() * directions.length + end.ordinal()] = true;
+                } catch (IllegalArgumentException e) {
+                    // no lane towards end
+                }
+            }
+        }
+        head = new Node(null, null, null, null, 0);
+        tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Queue a vehicle detected on its start road. Safe to call from any
+     * thread; never blocks.
+     *
+     * @throws IllegalArgumentException if a road or the vehicle type is
+     *                                  missing, or the intersection has no
+     *                                  lane from {@code start} to {@code end}
+     */
+    public void offer(String id, Direction start, Direction end, VehicleType type) {
+        if (start == null || end == null || type == null) {
+            throw new IllegalArgumentException("Detection " + id + " needs start and end roads and a vehicle type");
+        }
+        if (!routes[start.ordinal() * Direction.values().length + end.ordinal()]) {
+            throw new IllegalArgumentException("Detection " + id + ": no route from " + start + " to " + end);
+        }
+        Node node = new Node(id, start, end, type, System.nanoTime());
+        offered.increment();
+        tail.getAndSet(node).next = node;
+    }
+
+    /**
+     * Add every detection queued when the call starts to the engine as
+     * arriving at its current step; later ones wait for the next boundary.
+     * Detections the engine rejects with an
+     * {@link IllegalArgumentException} are dropped and counted. Simulation
+     * thread only; call it at the step boundary, before
+     * {@link SimulationEngine#step()}.
+     *
+     * @return number of vehicles added
+     */
+    public int drainTo(SimulationEngine engine) {
+        maxDepth = Math.max(maxDepth, offered.sum() - drained);
+        Node last = tail.get();
+        long now = System.nanoTime();
+        int count = 0;
+        int added = 0;
+        try {
+            while (head != last) {
+                Node next = head.next;
+                if (next == null) break;
+                head = next;
+                count++;
+                try {
+                    engine.addVehicle(next.id, next.start, next.end, next.type);
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    continue;
+                }
+                long latency = Math.max(0, now - next.offeredNanos);
+                totalLatencyNanos += latency;
+                maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+                latencyBuckets[bucket(latency)]++;
+                added++;
+            }
+        } finally {
+            drained += count;
+            batches++;
+            maxBatch = Math.max(maxBatch, count);
+        }
+        return added;
+    }
+
+    /**
+     * Histogram bucket of a latency in nanoseconds: values below 8 have their
+     * own bucket, larger ones share one with the values having the same
+     * highest bit and the same three bits below it, so bucket widths stay
+     * within 1/8 of their values.
+     */
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int high = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (high - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (high - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return largest latency falling into the given bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = SUB_BUCKETS + bucket % SUB_BUCKETS + 1;
+        return (top << shift) - 1;
+    }
+
+    /**
+     * @return detections offered so far, by all producers
+     */
+    public long getOffered() {
+        return offered.sum();
+    }
+
+    /**
+     * @return detections taken off the queue, rejected ones included
+     */
+    public long getDrained() {
+        return drained;
+    }
+
+    /**
+     * @return drained detections the engine rejected
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return detections offered but not drained yet
+     */
+    public long getDepth() {
+        return offered.sum() - drained;
+    }
+
+    /**
+     * @return largest depth seen at the start of a drain
+     */
+    public long getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return number of drains, empty ones included
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public double getAverageBatch() {
+        return batches == 0 ? 0.0 : (double) drained / batches;
+    }
+
+    public double getAverageLatencyNanos() {
+        long added = drained - rejected;
+        return added == 0 ? 0.0 : (double) totalLatencyNanos / added;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Upper bound of the {@code p}-quantile of the latency from offering a
+     * detection to adding it to the engine, within 1/8 of its value.
+     *
+     * @param p quantile between 0 and 1
+     */
+    public long getLatencyPercentileNanos(double p) {
+        if (!(p >= 0 && p <= 1)) {
+            throw new IllegalArgumentException("Invalid quantile: " + p);
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * (drained - rejected)));
+        long seen = 0;
+        for (int b = 0; b < LATENCY_BUCKETS; b++) {
+            seen += latencyBuckets[b];
+            if (seen >= rank) return Math.min(maxLatencyNanos, upperBound(b));
+        }
+        return maxLatencyNanos;
+    }
+
+    /**
+     * @return counters keyed by descriptive labels, latencies in milliseconds
+     */
+    public Map<String, Object> getCounters() {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("offered", getOffered());
+        counters.put("drained", drained);
+        counters.put("rejected", rejected);
+        counters.put("depth", getDepth());
+        counters.put("maxDepth", maxDepth);
+        counters.put("batches", batches);
+        counters.put("averageBatch", getAverageBatch());
+        counters.put("maxBatch", maxBatch);
+        Map<String, Double> latency = new LinkedHashMap<>();
+        latency.put("average", getAverageLatencyNanos() / 1e6);
+        latency.put("p50", getLatencyPercentileNanos(0.5) / 1e6);
+        latency.put("p99", getLatencyPercentileNanos(0.99) / 1e6);
+        latency.put("max", maxLatencyNanos / 1e6);
+        counters.put("ingestionLatencyMillis", latency);
+        return counters;
+    }
+}
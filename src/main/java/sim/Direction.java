@@ -4,6 +4,20 @@ package sim;
 public enum Direction {
     NORTH, SOUTH, EAST, WEST;
 
+    private static final Direction[] VALUES = values();
+
+    /**
+     * Resolve a direction name case-insensitively, e.g. {@code "north"}.
+     *
+     * @throws IllegalArgumentException if the name matches no direction
+     */
+    public static Direction parse(String name) {
+        for (Direction d : VALUES) {
+            if (d.name().equalsIgnoreCase(name)) return d;
+        }
+        throw new IllegalArgumentException("Unknown direction: " + name);
+    }
+
     public Direction left() {
         switch (this) {
             case NORTH: return WEST;
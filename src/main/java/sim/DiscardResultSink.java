@@ -0,0 +1,19 @@
+package sim;
+
+/**
+ * Result sink that ignores the per-step output, for runs that only need the
+ * statistics of {@link SimulationEngine#getStats()}.
+ */
+public final class DiscardResultSink implements ResultSink {
+    @Override
+    public void beginStep() {
+    }
+
+    @Override
+    public void vehicleLeft(String vehicleId) {
+    }
+
+    @Override
+    public void endStep() {
+    }
+}
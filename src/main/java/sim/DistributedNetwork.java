@@ -0,0 +1,361 @@
+package sim;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Simulation of a {@link Network} split across several processes on one
+ * machine. Every process holds a contiguous range of the intersections and
+ * exchanges the vehicles crossing into its neighbours' ranges with them over
+ * local sockets after every step, see {@link PeerExchange}. A coordinator
+ * hands out the settings and peer addresses and adds up the results, which
+ * are identical to those of a single-process run of the same network.
+ *
+ * <p>All messages are frames made of a length, a type byte and the payload.
+ * A worker connects to the coordinator and sends {@code HELLO} with its
+ * partition and the port it accepts peers on. Once all have, the coordinator
+ * sends each a {@code SETUP} frame with the settings, the configuration as
+ * JSON and every worker's port. Workers then connect to their peers: of
+ * each pair, the lower partition dials the higher one's port and announces
+ * itself with {@code PEER} carrying its partition, and the higher one
+ * accepts. They run the simulation, exchanging {@code STEP} frames (see
+ * {@link PeerExchange}), and report back with {@code RESULT}.</p>
+ */
+public final class DistributedNetwork {
+    static final byte HELLO = 1;
+    static final byte SETUP = 2;
+    static final byte PEER = 3;
+    static final byte STEP = 4;
+    static final byte RESULT = 5;
+
+    private static final int MAX_FRAME = 1 << 30;
+
+    private DistributedNetwork() {
+    }
+
+    /**
+     * What to simulate: a grid under {@link NetworkRunner#randomDemand random
+     * demand}, each process advancing its intersections on {@code threads}
+     * threads.
+     */
+    public record Settings(int width, int height, int travelTime, int steps, int threads, double rate, long seed,
+                           Config config) {
+    }
+
+    /**
+     * Time split of one worker.
+     *
+     * @param computeNanos  time spent advancing intersections
+     * @param exchangeNanos time spent exchanging vehicles with peers,
+     *                      waiting for slower ones included
+     */
+    public record Timing(int partition, int intersections, long computeNanos, long exchangeNanos,
+                         long bytesSent, long bytesReceived) {
+    }
+
+    /**
+     * @param stats   statistics of the whole network, as
+     *                {@link Network#getStats()}
+     * @param timings time split of every worker in partition order
+     */
+    public record Outcome(Map<String, Object> stats, List<Timing> timings) {
+    }
+
+    /**
+     * Run the coordinator: wait for {@code partitions} workers to connect to
+     * {@code server}, send them the settings and collect their results.
+     *
+     * @throws IOException if a worker fails or breaks the protocol
+     */
+    public static Outcome coordinate(ServerSocketChannel server, int partitions, Settings settings)
+            throws IOException {
+        int size = settings.width() * settings.height();
+        if (partitions < 1 || partitions > size) {
+            throw new IllegalArgumentException("Invalid number of partitions: " + partitions);
+        }
+        SocketChannel[] workers = new SocketChannel[partitions];
+        int[] ports = new int[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                SocketChannel channel = server.accept();
+                ByteBuffer hello = readFrame(channel, HELLO);
+                int partition = hello.getInt();
+                if (partition < 0 || partition >= partitions || workers[partition] != null) {
+                    channel.close();
+                    throw new IOException("Unexpected partition " + partition);
+                }
+                workers[partition] = channel;
+                ports[partition] = hello.getInt();
+            }
+
+            byte[] config = new ObjectMapper().writeValueAsBytes(settings.config());
+            ByteBuffer setup = ByteBuffer.allocate(6 * 4 + 8 + 8 + 4 + config.length + 4 * partitions);
+            setup.putInt(settings.width()).putInt(settings.height()).putInt(settings.travelTime())
+                    .putInt(settings.steps()).putInt(settings.threads()).putDouble(settings.rate())
+                    .putLong(settings.seed()).putInt(partitions).putInt(config.length).put(config);
+            for (int port : ports) {
+                setup.putInt(port);
+            }
+            for (SocketChannel worker : workers) {
+                writeFrame(worker, SETUP, setup.flip());
+            }
+
+            Network.Totals totals = Network.Totals.ZERO;
+            List<Timing> timings = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                ByteBuffer result = readFrame(workers[p], RESULT);
+                totals = totals.plus(new Network.Totals(result.getLong(), result.getLong(), result.getLong(),
+                        result.getLong(), result.getLong(), result.getInt()));
+                timings.add(new Timing(p, end(p, size, partitions) - start(p, size, partitions),
+                        result.getLong(), result.getLong(), result.getLong(), result.getLong()));
+            }
+            return new Outcome(totals.toStats(size, settings.steps()), timings);
+        } finally {
+            for (SocketChannel worker : workers) {
+                if (worker != null) worker.close();
+            }
+        }
+    }
+
+    /**
+     * Run worker {@code partition}: register with the coordinator, simulate
+     * the assigned part of the network in lock-step with the peers and report
+     * the result.
+     *
+     * @throws IOException if the coordinator or a peer fails or breaks the
+     *                     protocol
+     */
+    public static void work(InetSocketAddress coordinator, int partition) throws IOException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open();
+             SocketChannel control = SocketChannel.open(coordinator)) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+            writeFrame(control, HELLO, ByteBuffer.allocate(8).putInt(partition).putInt(port).flip());
+
+            ByteBuffer setup = readFrame(control, SETUP);
+            int width = setup.getInt();
+            int height = setup.getInt();
+            int travelTime = setup.getInt();
+            int steps = setup.getInt();
+            int threads = setup.getInt();
+            double rate = setup.getDouble();
+            long seed = setup.getLong();
+            int partitions = setup.getInt();
+            byte[] json = new byte[setup.getInt()];
+            setup.get(json);
+            int[] ports = new int[partitions];
+            for (int i = 0; i < partitions; i++) {
+                ports[i] = setup.getInt();
+            }
+            RunConfig config = RunConfig.of(new ObjectMapper().readValue(json, Config.class), false);
+
+            int size = width * height;
+            Network network = new Network(width, height, travelTime, config,
+                    intersection -> new ActuatedController(intersection.getRoads(), config),
+                    start(partition, size, partitions), end(partition, size, partitions));
+            network.setDemand(NetworkRunner.randomDemand(network, rate, seed));
+
+            TreeSet<Integer> peers = new TreeSet<>();
+            for (Network.Edge edge : network.getExports()) {
+                peers.add(owner(edge.to, size, partitions));
+            }
+            for (Network.Edge edge : network.getImports()) {
+                peers.add(owner(edge.from, size, partitions));
+            }
+            Map<Integer, SocketChannel> channels = new HashMap<>();
+            for (int peer : peers.tailSet(partition, false)) {
+                SocketChannel channel = SocketChannel.open(
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), ports[peer]));
+                writeFrame(channel, PEER, ByteBuffer.allocate(4).putInt(partition).flip());
+                channels.put(peer, channel);
+            }
+            for (int i = 0; i < peers.headSet(partition).size(); i++) {
+                SocketChannel channel = listener.accept();
+                int peer = readFrame(channel, PEER).getInt();
+                if (!peers.contains(peer) || channels.containsKey(peer)) {
+                    channel.close();
+                    throw new IOException("Unexpected peer " + peer);
+                }
+                channels.put(peer, channel);
+            }
+
+            PeerExchange exchange = new PeerExchange(network, channels, node -> owner(node, size, partitions));
+            network.setExchange(exchange);
+            long start = System.nanoTime();
+            try {
+                network.run(steps, threads);
+            } finally {
+                exchange.close();
+                network.close();
+            }
+            long total = System.nanoTime() - start;
+
+            Network.Totals totals = network.getTotals();
+            ByteBuffer result = ByteBuffer.allocate(5 * 8 + 4 + 4 * 8);
+            result.putLong(totals.entered()).putLong(totals.exited()).putLong(totals.tripTime())
+                    .putLong(totals.passages()).putLong(totals.waitTime()).putInt(totals.maxWait())
+                    .putLong(total - exchange.getExchangeNanos()).putLong(exchange.getExchangeNanos())
+                    .putLong(exchange.getBytesSent()).putLong(exchange.getBytesReceived());
+            writeFrame(control, RESULT, result.flip());
+        }
+    }
+
+    /**
+     * @return first intersection of {@code partition}
+     */
+    static int start(int partition, int size, int partitions) {
+        return (int) ((long) partition * size / partitions);
+    }
+
+    /**
+     * @return intersection after the last one of {@code partition}
+     */
+    static int end(int partition, int size, int partitions) {
+        return start(partition + 1, size, partitions);
+    }
+
+    /**
+     * @return partition holding intersection {@code node}
+     */
+    static int owner(int node, int size, int partitions) {
+        int p = (int) (((long) node * partitions + partitions - 1) / size);
+        while (start(p, size, partitions) > node) p--;
+        while (end(p, size, partitions) <= node) p++;
+        return p;
+    }
+
+    /**
+     * Write a whole frame to a blocking channel.
+     */
+    static void writeFrame(SocketChannel channel, byte type, ByteBuffer payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5).putInt(1 + payload.remaining()).put(type).flip();
+        while (header.hasRemaining() || payload.hasRemaining()) {
+            channel.write(new ByteBuffer[]{header, payload});
+        }
+    }
+
+    /**
+     * Read a whole frame of the expected type from a blocking channel.
+     *
+     * @return the payload
+     * @throws IOException if the channel ends early or the frame has another
+     *                     type
+     */
+    static ByteBuffer readFrame(SocketChannel channel, byte type) throws IOException {
+        ByteBuffer length = readFully(channel, ByteBuffer.allocate(4)).flip();
+        int size = length.getInt();
+        if (size < 1 || size > MAX_FRAME) {
+            throw new IOException("Invalid frame length " + size);
+        }
+        ByteBuffer frame = readFully(channel, ByteBuffer.allocate(size)).flip();
+        byte actual = frame.get();
+        if (actual != type) {
+            throw new IOException("Expected frame " + type + ", got " + actual);
+        }
+        return frame;
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed");
+            }
+        }
+        return buffer;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.DistributedNetwork [--processes n] [--width n]"
+                    + " [--height n] [--steps n] [--travel-time n] [--rate p] [--seed n] [--config config.json]"
+                    + " [--threads n]");
+            return;
+        }
+        int processes = 2;
+        int width = 20;
+        int height = 1;
+        int steps = 1000;
+        int travelTime = 5;
+        double rate = 0.1;
+        long seed = 1;
+        String configFile = null;
+        int threads = 1;
+        int port = -1;
+        int partition = -1;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--processes" -> processes = Integer.parseInt(args[i + 1]);
+                case "--width" -> width = Integer.parseInt(args[i + 1]);
+                case "--height" -> height = Integer.parseInt(args[i + 1]);
+                case "--steps" -> steps = Integer.parseInt(args[i + 1]);
+                case "--travel-time" -> travelTime = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--config" -> configFile = args[i + 1];
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--join" -> port = Integer.parseInt(args[i + 1]);
+                case "--partition" -> partition = Integer.parseInt(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (port >= 0) {
+            work(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), partition);
+            return;
+        }
+        if (processes < 1 || threads < 1) {
+            System.err.println("Invalid number of processes or threads: " + processes + ", " + threads);
+            return;
+        }
+
+        Config config = configFile == null ? new Config() : Config.read(configFile);
+        Settings settings = new Settings(width, height, travelTime, steps, threads, rate, seed, config);
+        List<Process> workers = new ArrayList<>();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int coordinatorPort = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            for (int p = 0; p < processes; p++) {
+                workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        DistributedNetwork.class.getName(), "--join", String.valueOf(coordinatorPort),
+                        "--partition", String.valueOf(p)).inheritIO().start());
+            }
+            long start = System.nanoTime();
+            Outcome outcome = coordinate(server, processes, settings);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d intersections, %d steps on %d processes in %.2f s (%.0f intersection steps/s)%n",
+                    width * height, steps, processes, seconds, width * height * steps / seconds);
+            System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter()
+                    .writeValueAsString(outcome.stats()));
+            for (Timing t : outcome.timings()) {
+                double compute = t.computeNanos() / 1e9;
+                double exchange = t.exchangeNanos() / 1e9;
+                System.out.printf("  partition %d: %d intersections, compute %.2f s, communication %.2f s"
+                                + " (%.0f%%), %d kB sent, %d kB received%n", t.partition(), t.intersections(),
+                        compute, exchange, 100 * exchange / (compute + exchange),
+                        t.bytesSent() / 1024, t.bytesReceived() / 1024);
+            }
+            for (Process worker : workers) {
+                worker.waitFor();
+            }
+        } catch (IOException e) {
+            System.err.println("Distributed run failed: " + e.getMessage());
+            workers.forEach(Process::destroy);
+        }
+    }
+}
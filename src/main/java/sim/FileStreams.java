@@ -0,0 +1,59 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens input and output files, transparently (de)compressing gzip files so
+ * recorded command logs and results can stay compressed on disk.
+ */
+public final class FileStreams {
+    /** Buffer size used for compressed streams. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+
+    private FileStreams() {
+    }
+
+    /**
+     * @return whether the path names a gzip file by its {@code .gz} extension
+     */
+    public static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * Open a file for reading. Files with a {@code .gz} extension or starting
+     * with the gzip header are decompressed on the fly.
+     */
+    public static InputStream openInput(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        in.mark(2);
+        boolean gzip = in.read() == GZIP_MAGIC_0 && in.read() == GZIP_MAGIC_1;
+        in.reset();
+        if (gzip || isGzip(file)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    /**
+     * Open a file for writing, compressing it when its name ends in
+     * {@code .gz}.
+     */
+    public static OutputStream openOutput(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (isGzip(file)) {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return out;
+    }
+}
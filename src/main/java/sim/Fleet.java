@@ -0,0 +1,544 @@
+package sim;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Many independent intersections of the same geometry, each governed by the
+ * actuated policy of {@link ActuatedController}, held in a data-oriented
+ * layout instead of one object graph per intersection. Lane queues, lane
+ * counters, light states, controller state and statistics live in primitive
+ * arrays indexed by intersection, by {@code intersection * lanes + lane} or
+ * by {@code intersection * phases + phase}. Steps are computed in chunks of
+ * intersections on a work-stealing pool.
+ *
+ * <p>Every intersection behaves exactly like an {@link Intersection} with an
+ * {@link ActuatedController} driven by a {@link SimulationEngine}, and
+ * {@link #getStats(int)} reports the same statistics. Vehicles are not
+ * identified, only their arrival step and type are queued, and neither
+ * debug output nor the conflict monitor is supported: phases of a
+ * {@link PhaseTable} never conflict.</p>
+ */
+public final class Fleet {
+    /** Intersections stepped by one task. */
+    private static final int CHUNK = 256;
+    private static final int NONE = -1;
+    private static final int TYPE_BITS = 2;
+    private static final int BUS = VehicleType.BUS.ordinal();
+    private static final int EMERGENCY = VehicleType.EMERGENCY.ordinal();
+    private static final int DIRECTIONS = Direction.values().length;
+
+    private final int size;
+    private final int lanes;
+    private final int phases;
+
+    // geometry and configuration, shared by all intersections
+    private final long allLanes;
+    private final long[] phaseMasks;
+    private final int[][] phaseLanes;
+    private final int[] minGreen;
+    private final int[] maxGreen;
+    /** Lane of a vehicle by {@code start * 4 + end}, {@link #NONE} if there is none. */
+    private final int[] laneFor;
+    private final double[] basePriority;
+    private final int yellowDuration;
+    private final int vehiclesPerStep;
+    private final double alpha;
+    private final double beta;
+    private final double gamma;
+    private final int fairnessCap;
+    private final double busPriority;
+
+    // lanes: queued arrival steps and types as rings, running counters
+    private final int[][] queues;
+    private final int[] heads;
+    private final int[] sizes;
+    private final long[] arrivalSums;
+    private final int[] busCounts;
+    private final int[] emergencyCounts;
+    private final int[] yellowTimers;
+
+    // intersections: lights and controller
+    private final long[] green;
+    private final long[] yellow;
+    private final int[] currentPhase;
+    private final int[] nextPhase;
+    private final int[] phaseYellow;
+    private final int[] emergencyLane;
+    private final int[] emergencyQueue;
+    private final int[] emergencyQueued;
+
+    // phases: controller timers and statistics
+    private final int[] stepsSinceActivation;
+    private final int[] timeGreen;
+    private final int[] timesActivated;
+    private final int[] totalDuration;
+    private final long[] phaseWaitTime;
+    private final int[] phaseVehicles;
+
+    // intersection statistics
+    private final int[] totalVehicles;
+    private final int[] vehiclesLeft;
+    private final long[] totalWaitTime;
+    private final int[] maxWaitTimeLeft;
+    private final int[] maxWaitTimeRemaining;
+    private final int[] vehiclesPerDirection;
+
+    private Demand demand;
+    private int currentStep = 0;
+
+    /**
+     * Source of the vehicles arriving at each intersection. It is called for
+     * every intersection before each step, possibly concurrently for
+     * different intersections, and adds vehicles with {@link #addVehicle}.
+     */
+    @FunctionalInterface
+    public interface Demand {
+        void generate(Fleet fleet, int intersection, int step);
+    }
+
+    /**
+     * Create {@code size} intersections, all red with the first phase active
+     * and no vehicles, configured by {@code config}.
+     */
+    public Fleet(int size, RunConfig config) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid fleet size: " + size);
+        }
+        this.size = size;
+        // derive lane indices, phase lanes and lane choice from one regular intersection
+        Intersection template = new Intersection(null, config);
+        ActuatedController controller = new ActuatedController(template.getRoads(), config);
+        this.lanes = template.getLaneCount();
+        this.phases = controller.getPhases().size();
+        this.allLanes = lanes == SignalBank.MAX_SIGNALS ? -1L : (1L << lanes) - 1;
+        this.phaseMasks = new long[phases];
+        this.phaseLanes = new int[phases][];
+        this.minGreen = new int[phases];
+        this.maxGreen = new int[phases];
+        for (int p = 0; p < phases; p++) {
+            phaseLanes[p] = controller.getPhases().get(p).getLanes().stream().mapToInt(Lane::getIndex).toArray();
+            phaseMasks[p] = controller.getPhaseMask(p);
+            minGreen[p] = config.getMinGreen(p);
+            maxGreen[p] = config.getMaxGreen(p);
+        }
+        this.laneFor = new int[DIRECTIONS * DIRECTIONS];
+        Arrays.fill(laneFor, NONE);
+        template.getRoads().forEach((start, road) -> {
+            for (Direction end : Direction.values()) {
+                try {
+                    laneFor[start.ordinal() * DIRECTIONS + end.ordinal()] = road.laneFor(end).getIndex();
+                } catch (IllegalArgumentException e) {
+                    // no lane towards end
+                }
+            }
+        });
+        template.close();
+        this.basePriority = new double[lanes];
+        for (int l = 0; l < lanes; l++) {
+            basePriority[l] = config.getLanePriority(l);
+        }
+        this.yellowDuration = config.yellowDuration;
+        this.vehiclesPerStep = config.vehiclesPerStep;
+        this.alpha = config.alpha;
+        this.beta = config.beta;
+        this.gamma = config.gamma;
+        this.fairnessCap = config.fairnessCap;
+        this.busPriority = config.busPriority;
+
+        int laneSlots = size * lanes;
+        this.queues = new int[laneSlots][];
+        this.heads = new int[laneSlots];
+        this.sizes = new int[laneSlots];
+        this.arrivalSums = new long[laneSlots];
+        this.busCounts = new int[laneSlots];
+        this.emergencyCounts = new int[laneSlots];
+        this.yellowTimers = new int[laneSlots];
+
+        this.green = new long[size];
+        this.yellow = new long[size];
+        this.currentPhase = new int[size];
+        this.nextPhase = new int[size];
+        Arrays.fill(nextPhase, NONE);
+        this.phaseYellow = new int[size];
+        this.emergencyLane = new int[size];
+        Arrays.fill(emergencyLane, NONE);
+        this.emergencyQueue = new int[laneSlots];
+        this.emergencyQueued = new int[size];
+
+        int phaseSlots = size * phases;
+        this.stepsSinceActivation = new int[phaseSlots];
+        this.timeGreen = new int[phaseSlots];
+        this.timesActivated = new int[phaseSlots];
+        for (int i = 0; i < size; i++) {
+            // the initial phase is active at start
+            timesActivated[i * phases]++;
+        }
+        this.totalDuration = new int[phaseSlots];
+        this.phaseWaitTime = new long[phaseSlots];
+        this.phaseVehicles = new int[phaseSlots];
+
+        this.totalVehicles = new int[size];
+        this.vehiclesLeft = new int[size];
+        this.totalWaitTime = new long[size];
+        this.maxWaitTimeLeft = new int[size];
+        this.maxWaitTimeRemaining = new int[size];
+        this.vehiclesPerDirection = new int[size * DIRECTIONS];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of steps simulated so far
+     */
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * Generate vehicles from {@code demand} before every step, or stop
+     * generating with {@code null}.
+     */
+    public void setDemand(Demand demand) {
+        this.demand = demand;
+    }
+
+    /**
+     * Place a vehicle arriving at the current step on its start road of the
+     * given intersection, like {@link SimulationEngine#addVehicle}.
+     *
+     * @throws IllegalArgumentException if the intersection has no lane for
+     *                                  the route
+     */
+    public void addVehicle(int intersection, Direction start, Direction end, VehicleType type) {
+        int lane = laneFor[start.ordinal() * DIRECTIONS + end.ordinal()];
+        if (lane == NONE) {
+            throw new IllegalArgumentException("No lane on " + start + " road towards " + end);
+        }
+        int slot = intersection * lanes + lane;
+        int[] queue = queues[slot];
+        int n = sizes[slot];
+        if (queue == null) {
+            queue = queues[slot] = new int[4];
+        } else if (n == queue.length) {
+            int[] grown = new int[queue.length * 2];
+            int head = heads[slot];
+            System.arraycopy(queue, head, grown, 0, queue.length - head);
+            System.arraycopy(queue, 0, grown, queue.length - head, head);
+            queue = queues[slot] = grown;
+            heads[slot] = 0;
+        }
+        queue[(heads[slot] + n) & (queue.length - 1)] = currentStep << TYPE_BITS | type.ordinal();
+        sizes[slot] = n + 1;
+        arrivalSums[slot] += currentStep;
+        totalVehicles[intersection]++;
+        vehiclesPerDirection[intersection * DIRECTIONS + start.ordinal()]++;
+        if (type == VehicleType.BUS) busCounts[slot]++;
+        if (type == VehicleType.EMERGENCY) {
+            emergencyCounts[slot]++;
+            emergencyArrived(intersection, lane);
+        }
+    }
+
+    private void emergencyArrived(int intersection, int lane) {
+        int base = intersection * lanes;
+        int queued = emergencyQueued[intersection];
+        for (int k = 0; k < queued; k++) {
+            if (emergencyQueue[base + k] == lane) return;
+        }
+        emergencyQueue[base + queued] = lane;
+        emergencyQueued[intersection] = queued + 1;
+    }
+
+    /**
+     * Advance every intersection by {@code steps} steps on {@code pool}.
+     */
+    public void run(int steps, ForkJoinPool pool) {
+        for (int i = 0; i < steps; i++) {
+            step(pool);
+        }
+    }
+
+    /**
+     * Advance every intersection by one step on {@code pool}, in chunks of
+     * consecutive intersections.
+     */
+    public void step(ForkJoinPool pool) {
+        pool.invoke(new Chunk(0, size));
+        currentStep++;
+    }
+
+    private final class Chunk extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Chunk(from, middle), new Chunk(middle, to));
+                return;
+            }
+            Scratch scratch = new Scratch(phases);
+            for (int i = from; i < to; i++) {
+                if (demand != null) {
+                    demand.generate(Fleet.this, i, currentStep);
+                }
+                step(i, scratch);
+            }
+        }
+    }
+
+    /**
+     * Per-task buffers for scoring the phases of one intersection.
+     */
+    private static final class Scratch {
+        final int[] stepsSinceActivation;
+        final boolean[] occupied;
+        final double[] pressures;
+        final double[] priorities;
+
+        Scratch(int phases) {
+            stepsSinceActivation = new int[phases];
+            occupied = new boolean[phases];
+            pressures = new double[phases];
+            priorities = new double[phases];
+        }
+    }
+
+    /**
+     * One step of one intersection, as {@link Intersection#advance()} followed
+     * by the bookkeeping of {@link SimulationEngine#step()}.
+     */
+    private void step(int intersection, Scratch scratch) {
+        int laneBase = intersection * lanes;
+        // yellow lights count down
+        long y = yellow[intersection];
+        for (long m = y; m != 0; m &= m - 1) {
+            int slot = laneBase + Long.numberOfTrailingZeros(m);
+            if (--yellowTimers[slot] <= 0) {
+                y &= ~(1L << (slot - laneBase));
+                yellowTimers[slot] = 0;
+            }
+        }
+        // the controller decides and the lights follow
+        long mask = decide(intersection, scratch) & allLanes;
+        long g = green[intersection];
+        long toYellow = g & ~mask;
+        long toGreen = mask & ~(g | y);
+        g = (g & mask) | toGreen;
+        y |= toYellow;
+        for (long m = toYellow; m != 0; m &= m - 1) {
+            yellowTimers[laneBase + Long.numberOfTrailingZeros(m)] = yellowDuration;
+        }
+        green[intersection] = g;
+        yellow[intersection] = y;
+
+        // green lanes release vehicles in lane order
+        int phaseSlot = intersection * phases + currentPhase[intersection];
+        for (long m = g; m != 0; m &= m - 1) {
+            int slot = laneBase + Long.numberOfTrailingZeros(m);
+            int n = Math.min(vehiclesPerStep, sizes[slot]);
+            if (n <= 0) continue;
+            int[] queue = queues[slot];
+            int head = heads[slot];
+            for (int k = 0; k < n; k++) {
+                int packed = queue[head];
+                head = (head + 1) & (queue.length - 1);
+                int arrival = packed >>> TYPE_BITS;
+                int type = packed & ((1 << TYPE_BITS) - 1);
+                if (type == BUS) busCounts[slot]--;
+                if (type == EMERGENCY) emergencyCounts[slot]--;
+                arrivalSums[slot] -= arrival;
+                int wait = (currentStep + 1) - arrival;
+                vehiclesLeft[intersection]++;
+                totalWaitTime[intersection] += wait;
+                if (wait > maxWaitTimeLeft[intersection]) maxWaitTimeLeft[intersection] = wait;
+                phaseWaitTime[phaseSlot] += wait;
+                phaseVehicles[phaseSlot]++;
+            }
+            heads[slot] = head;
+            sizes[slot] -= n;
+        }
+    }
+
+    /**
+     * The decision of {@link ActuatedController} for one intersection.
+     *
+     * @return bitmask of the lanes to be green
+     */
+    private long decide(int intersection, Scratch scratch) {
+        int step = currentStep + 1;
+        int phaseBase = intersection * phases;
+        for (int p = 0; p < phases; p++) {
+            stepsSinceActivation[phaseBase + p]++;
+        }
+        // emergency vehicles are served one lane at a time, in order of arrival
+        int laneBase = intersection * lanes;
+        int emergency = emergencyLane[intersection];
+        if (emergency != NONE && emergencyCounts[laneBase + emergency] == 0) {
+            pollEmergency(intersection);
+            emergency = NONE;
+        }
+        if (emergency == NONE) {
+            while (emergencyQueued[intersection] > 0) {
+                int candidate = emergencyQueue[laneBase];
+                if (emergencyCounts[laneBase + candidate] > 0) {
+                    emergency = candidate;
+                    break;
+                }
+                pollEmergency(intersection);
+            }
+        }
+        emergencyLane[intersection] = emergency;
+        if (emergency != NONE) {
+            return 1L << emergency;
+        }
+
+        int current = currentPhase[intersection];
+        if (phaseYellow[intersection] > 0) {
+            if (--phaseYellow[intersection] == 0 && nextPhase[intersection] != NONE) {
+                current = currentPhase[intersection] = nextPhase[intersection];
+                nextPhase[intersection] = NONE;
+                timeGreen[phaseBase + current] = 0;
+                timesActivated[phaseBase + current]++;
+                stepsSinceActivation[phaseBase + current] = 0;
+            }
+            return 0L;
+        }
+
+        stepsSinceActivation[phaseBase + current] = 0;
+        int green = ++timeGreen[phaseBase + current];
+        boolean minReached = green >= minGreen[current];
+        boolean maxReached = green >= maxGreen[current];
+
+        // score the phases from pressure, waiting vehicles and fairness
+        for (int p = 0; p < phases; p++) {
+            double waiting = 0.0;
+            double pressure = 0.0;
+            boolean occupied = false;
+            for (int lane : phaseLanes[p]) {
+                int slot = laneBase + lane;
+                double priority = basePriority[lane] + busCounts[slot] * busPriority;
+                waiting += sizes[slot] * priority;
+                occupied |= sizes[slot] > 0;
+            }
+            if (occupied) {
+                for (int lane : phaseLanes[p]) {
+                    int slot = laneBase + lane;
+                    double priority = basePriority[lane] + busCounts[slot] * busPriority;
+                    pressure += ((long) sizes[slot] * step - arrivalSums[slot]) * priority;
+                }
+            }
+            int since = stepsSinceActivation[phaseBase + p];
+            scratch.stepsSinceActivation[p] = since;
+            scratch.occupied[p] = occupied;
+            scratch.pressures[p] = pressure;
+            scratch.priorities[p] = alpha * pressure + beta * waiting + gamma * since;
+        }
+        int target = ActuatedController.fairnessCandidate(scratch.stepsSinceActivation, scratch.occupied,
+                scratch.pressures, fairnessCap);
+        if (target == -1) {
+            target = ActuatedController.priorityCandidate(current, scratch.priorities, minReached, maxReached);
+        }
+
+        if (target != -1 && target != current && minReached) {
+            totalDuration[phaseBase + current] += green;
+            nextPhase[intersection] = target;
+            phaseYellow[intersection] = yellowDuration;
+        }
+        return phaseMasks[current];
+    }
+
+    private void pollEmergency(int intersection) {
+        int base = intersection * lanes;
+        int queued = --emergencyQueued[intersection];
+        System.arraycopy(emergencyQueue, base + 1, emergencyQueue, base, queued);
+    }
+
+    /**
+     * Finalise the statistics of every intersection like
+     * {@link SimulationEngine#finish()}.
+     */
+    public void finish() {
+        for (int i = 0; i < size; i++) {
+            int current = i * phases + currentPhase[i];
+            totalDuration[current] += timeGreen[current];
+            int max = 0;
+            for (int slot = i * lanes; slot < (i + 1) * lanes; slot++) {
+                if (sizes[slot] > 0) {
+                    int oldest = queues[slot][heads[slot]] >>> TYPE_BITS;
+                    max = Math.max(max, currentStep - oldest);
+                }
+            }
+            maxWaitTimeRemaining[i] = Math.max(maxWaitTimeRemaining[i], max);
+        }
+    }
+
+    /**
+     * @return number of vehicles queued at {@code intersection}
+     */
+    public int getQueued(int intersection) {
+        int queued = 0;
+        for (int slot = intersection * lanes; slot < (intersection + 1) * lanes; slot++) {
+            queued += sizes[slot];
+        }
+        return queued;
+    }
+
+    /**
+     * Statistics of one intersection in the layout of
+     * {@link SimulationEngine#getStats()}.
+     */
+    public Map<String, Object> getStats(int intersection) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int left = vehiclesLeft[intersection];
+        stats.put("totalVehicles", totalVehicles[intersection]);
+        stats.put("vehiclesLeft", left);
+        stats.put("vehiclesRemaining", totalVehicles[intersection] - left);
+        stats.put("averageWaitTime", left == 0 ? 0.0 : (double) totalWaitTime[intersection] / left);
+        Map<String, Integer> maxWait = new LinkedHashMap<>();
+        maxWait.put("left", maxWaitTimeLeft[intersection]);
+        maxWait.put("remaining", maxWaitTimeRemaining[intersection]);
+        stats.put("maxWaitTime", maxWait);
+        stats.put("totalSteps", currentStep);
+
+        Map<String, Object> phasesStats = new LinkedHashMap<>();
+        for (int p = 0; p < phases; p++) {
+            int slot = intersection * phases + p;
+            Map<String, Object> pMap = new LinkedHashMap<>();
+            pMap.put("timesActivated", timesActivated[slot]);
+            pMap.put("totalDuration", totalDuration[slot]);
+            pMap.put("avgDuration", timesActivated[slot] == 0 ? 0.0
+                    : (double) totalDuration[slot] / timesActivated[slot]);
+            pMap.put("avgWaitTime", phaseVehicles[slot] == 0 ? 0.0
+                    : (double) phaseWaitTime[slot] / phaseVehicles[slot]);
+            phasesStats.put("Phase" + p, pMap);
+        }
+        stats.put("phases", phasesStats);
+
+        Map<String, Integer> dirMap = new LinkedHashMap<>();
+        for (Direction d : Direction.values()) {
+            dirMap.put(d.name(), vehiclesPerDirection[intersection * DIRECTIONS + d.ordinal()]);
+        }
+        stats.put("vehiclesPerDirection", dirMap);
+        return stats;
+    }
+
+    /**
+     * @return whether vehicles can travel from {@code start} to {@code end}
+     */
+    public boolean hasRoute(Direction start, Direction end) {
+        return laneFor[start.ordinal() * DIRECTIONS + end.ordinal()] != NONE;
+    }
+}
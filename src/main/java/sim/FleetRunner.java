@@ -0,0 +1,158 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line driver stepping a {@link Fleet} of independent intersections
+ * under random demand and reporting how much faster than real time it runs,
+ * a step being one second. Optionally runs the same demand through one
+ * {@link Intersection}, {@link ActuatedController} and
+ * {@link SimulationEngine} per intersection for comparison, checking that
+ * both give the same statistics.
+ */
+public class FleetRunner {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private FleetRunner() {
+    }
+
+    /**
+     * Receiver of the vehicles arriving at one intersection.
+     */
+    @FunctionalInterface
+    public interface Arrivals {
+        void add(Direction start, Direction end, VehicleType type);
+    }
+
+    /**
+     * Random arrivals at {@code intersection} during {@code step}: on every
+     * road a vehicle with probability {@code rate}, heading for one of the
+     * other roads, 2% of them emergency vehicles and 8% buses. The draws are
+     * a hash of the seed, intersection, step and road, so they do not depend
+     * on the order intersections are stepped in.
+     *
+     * @param fleet fleet whose routes the vehicles must take
+     */
+    public static void randomArrivals(Fleet fleet, long seed, double rate, int intersection, int step,
+                                      Arrivals arrivals) {
+        for (Direction start : DIRECTIONS) {
+            long h = mix(seed + GOLDEN * ((((long) intersection << 32) + step) * DIRECTIONS.length
+                    + start.ordinal()));
+            if ((h >>> 11) * 0x1.0p-53 >= rate) continue;
+            long g = mix(h);
+            Direction end = DIRECTIONS[(start.ordinal() + 1 + (int) ((g >>> 1) % 3)) % DIRECTIONS.length];
+            if (!fleet.hasRoute(start, end)) continue;
+            int kind = (int) ((g >>> 16) % 100);
+            VehicleType type = kind < 2 ? VehicleType.EMERGENCY : kind < 10 ? VehicleType.BUS : VehicleType.NORMAL;
+            arrivals.add(start, end, type);
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.FleetRunner [--intersections n] [--steps n]"
+                    + " [--rate p] [--seed n] [--config config.json] [--threads n] [--compare true|false]");
+            return;
+        }
+        int size = 10_000;
+        int steps = 3600;
+        double rate = 0.05;
+        long seed = 1;
+        String configFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean compare = false;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--intersections" -> size = Integer.parseInt(args[i + 1]);
+                case "--steps" -> steps = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--config" -> configFile = args[i + 1];
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--compare" -> compare = Boolean.parseBoolean(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (threads < 1 || size < 1) {
+            System.err.println("Invalid number of threads or intersections: " + threads + ", " + size);
+            return;
+        }
+
+        RunConfig config = RunConfig.of(configFile == null ? new Config() : Config.read(configFile), false);
+        Fleet fleet = new Fleet(size, config);
+        long demandSeed = seed;
+        double demandRate = rate;
+        fleet.setDemand((f, i, step) -> randomArrivals(f, demandSeed, demandRate, i, step,
+                (start, end, type) -> f.addVehicle(i, start, end, type)));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        double seconds;
+        try {
+            long start = System.nanoTime();
+            fleet.run(steps, pool);
+            seconds = (System.nanoTime() - start) / 1e9;
+        } finally {
+            pool.shutdown();
+        }
+        fleet.finish();
+        long vehicles = 0;
+        for (int i = 0; i < size; i++) {
+            vehicles += (int) fleet.getStats(i).get("totalVehicles");
+        }
+        System.out.printf("Fleet: %d intersections, %d steps, %d vehicles on %d threads in %.2f s"
+                        + " (%.0fx real time, %.1f M intersection steps/s)%n", size, steps, vehicles, threads,
+                seconds, steps / seconds, (double) size * steps / seconds / 1e6);
+
+        if (compare) {
+            compare(fleet, config, size, steps, seed, rate, seconds);
+        }
+    }
+
+    /**
+     * Run the same demand through one object graph per intersection on the
+     * calling thread and compare time and statistics with the fleet.
+     */
+    private static void compare(Fleet fleet, RunConfig config, int size, int steps, long seed, double rate,
+                                double fleetSeconds) {
+        List<SimulationEngine> engines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Intersection intersection = new Intersection(null, config);
+            intersection.setController(new ActuatedController(intersection.getRoads(), config));
+            engines.add(new SimulationEngine(intersection, new DiscardResultSink()));
+        }
+        long[] ids = new long[1];
+        long start = System.nanoTime();
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < size; i++) {
+                SimulationEngine engine = engines.get(i);
+                randomArrivals(fleet, seed, rate, i, step,
+                        (from, to, type) -> engine.addVehicle("v" + ids[0]++, from, to, type));
+                engine.step();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int mismatches = 0;
+        for (int i = 0; i < size; i++) {
+            engines.get(i).finish();
+            if (!engines.get(i).getStats().equals(fleet.getStats(i))) {
+                mismatches++;
+            }
+            engines.get(i).close();
+        }
+        System.out.printf("Objects: one intersection graph each on 1 thread in %.2f s (%.1fx the fleet time),"
+                + " %d of %d intersections with different statistics%n", seconds, seconds / fleetSeconds,
+                mismatches, size);
+    }
+}
@@ -0,0 +1,138 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Layout of an intersection as declared in the configuration: the lanes on
+ * each approach and which of them may not be green together. Lanes are
+ * numbered approach by approach in {@link Direction} order and, within an
+ * approach, in the order listed.
+ */
+public class Geometry {
+    /**
+     * lane types on each incoming road, in lane order; roads without an entry
+     * do not exist
+     */
+    public Map<Direction, List<LaneType>> approaches = new EnumMap<>(Direction.class);
+    /**
+     * conflicting lanes by name, e.g. {@code "NORTH_LEFT": ["SOUTH_STRAIGHT"]};
+     * the relation is made symmetric. When unset, conflicts follow from the
+     * movements, see {@link #movementsConflict}.
+     */
+    public Map<String, List<String>> conflicts = null;
+
+    public Geometry() {
+        for (Direction d : Direction.values()) {
+            approaches.put(d, List.of(LaneType.LEFT, LaneType.STRAIGHT));
+        }
+    }
+
+    /**
+     * A lane identified by its road and type, e.g. {@code NORTH_LEFT}.
+     */
+    public record LaneKey(Direction start, LaneType type) {
+        /**
+         * @throws IllegalArgumentException if the name is not of the form
+         *                                  {@code DIRECTION_TYPE}
+         */
+        public static LaneKey parse(String name) {
+            int split = name.indexOf('_');
+            if (split < 0) {
+                throw new IllegalArgumentException("Invalid lane name: " + name);
+            }
+            return new LaneKey(Direction.parse(name.substring(0, split)), LaneType.parse(name.substring(split + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return start + "_" + type;
+        }
+    }
+
+    /**
+     * @return lane types of the road from {@code start}, empty if there is no
+     * such road
+     */
+    public List<LaneType> lanesOf(Direction start) {
+        List<LaneType> types = approaches.get(start);
+        return types == null ? List.of() : types;
+    }
+
+    /**
+     * @return all lanes of the intersection by index
+     * @throws IllegalArgumentException if a road lists a lane type twice or
+     *                                  there are no lanes or more lanes than
+     *                                  signals
+     */
+    public List<LaneKey> lanes() {
+        List<LaneKey> lanes = new ArrayList<>();
+        for (Direction d : Direction.values()) {
+            Set<LaneType> seen = EnumSet.noneOf(LaneType.class);
+            for (LaneType type : lanesOf(d)) {
+                if (!seen.add(type)) {
+                    throw new IllegalArgumentException("Duplicate lane " + new LaneKey(d, type));
+                }
+                lanes.add(new LaneKey(d, type));
+            }
+        }
+        if (lanes.isEmpty()) {
+            throw new IllegalArgumentException("Intersection has no lanes");
+        }
+        if (lanes.size() > SignalBank.MAX_SIGNALS) {
+            throw new IllegalArgumentException("Too many lanes: " + lanes.size());
+        }
+        return lanes;
+    }
+
+    /**
+     * Conflict matrix over {@link #lanes()}, from the declared conflicts or,
+     * if none are declared, from the movements.
+     *
+     * @throws IllegalArgumentException if a declared conflict names an
+     *                                  unknown lane
+     */
+    public ConflictMatrix conflictMatrix() {
+        List<LaneKey> lanes = lanes();
+        if (conflicts == null) {
+            return ConflictMatrix.of(lanes, Geometry::movementsConflict);
+        }
+        Set<List<LaneKey>> pairs = new HashSet<>();
+        conflicts.forEach((name, others) -> {
+            LaneKey a = known(lanes, name);
+            for (String other : others) {
+                pairs.add(List.of(a, known(lanes, other)));
+            }
+        });
+        return ConflictMatrix.of(lanes, (a, b) -> pairs.contains(List.of(a, b)));
+    }
+
+    private static LaneKey known(List<LaneKey> lanes, String name) {
+        LaneKey key = LaneKey.parse(name);
+        if (!lanes.contains(key)) {
+            throw new IllegalArgumentException("Unknown lane in conflicts: " + name);
+        }
+        return key;
+    }
+
+    /**
+     * Default conflict rule. Lanes approaching on the same axis may run
+     * together if they have the same type, or if one is a right turn and the
+     * other goes straight; every other pair conflicts.
+     */
+    public static boolean movementsConflict(LaneKey a, LaneKey b) {
+        if (isVertical(a.start()) != isVertical(b.start())) return true;
+        if (a.type() == b.type()) return false;
+        return !(a.type() == LaneType.RIGHT && b.type() == LaneType.STRAIGHT
+                || a.type() == LaneType.STRAIGHT && b.type() == LaneType.RIGHT);
+    }
+
+    private static boolean isVertical(Direction d) {
+        return d == Direction.NORTH || d == Direction.SOUTH;
+    }
+}
@@ -0,0 +1,43 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result sink that keeps every step status in memory so it can be returned by
+ * {@link SimulationEngine#getResult()}. Suited to tests and small runs; large
+ * runs should stream through a {@link JsonResultSink} instead.
+ */
+public class InMemoryResultSink implements ResultSink {
+    private final List<Map<String, Object>> stepStatuses = new ArrayList<>();
+    private List<String> current;
+
+    @Override
+    public void beginStep() {
+        current = new ArrayList<>();
+    }
+
+    @Override
+    public void vehicleLeft(String vehicleId) {
+        current.add(vehicleId);
+    }
+
+    @Override
+    public void endStep() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("leftVehicles", current);
+        stepStatuses.add(status);
+        current = null;
+    }
+
+    /**
+     * @return map containing status information for each executed step
+     */
+    public Map<String, Object> getResult() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("stepStatuses", stepStatuses);
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package sim;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Command line driver feeding one intersection from concurrent detector
+ * threads through a {@link DetectionQueue}. The main thread is the only one
+ * touching the simulation: at every step boundary it drains the queue into
+ * the engine and steps it. The queue counters and the simulation statistics
+ * are printed at the end.
+ */
+public class IngestionRunner {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private IngestionRunner() {
+    }
+
+    /**
+     * Detector offering vehicles with random routes, at exponentially
+     * distributed intervals averaging {@code 1 / rate} seconds.
+     */
+    private static Thread detector(int index, DetectionQueue queue, double rate, long seed) {
+        Thread thread = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(seed);
+            long next = System.nanoTime();
+            for (long n = 0; !Thread.currentThread().isInterrupted(); n++) {
+                next += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                Direction start = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+                Direction end;
+                do {
+                    end = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+                } while (end == start);
+                queue.offer("d" + index + "-" + n, start, end,
+                        random.nextInt(50) == 0 ? VehicleType.BUS : VehicleType.NORMAL);
+            }
+        }, "detector-" + index);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.IngestionRunner [--detectors n] [--rate per-second]"
+                    + " [--steps n] [--step-millis n] [--seed n] [--config config.json]");
+            return;
+        }
+        int detectors = 8;
+        double rate = 20;
+        int steps = 1000;
+        long stepMillis = 10;
+        long seed = 1;
+        String configFile = null;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--detectors" -> detectors = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--steps" -> steps = Integer.parseInt(args[i + 1]);
+                case "--step-millis" -> stepMillis = Long.parseLong(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--config" -> configFile = args[i + 1];
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (detectors < 1 || !(rate > 0) || steps < 0 || stepMillis < 0) {
+            System.err.println("Invalid detectors, rate, steps or step duration");
+            return;
+        }
+
+        RunConfig config = RunConfig.of(configFile == null ? new Config() : Config.read(configFile), false);
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        SimulationEngine engine = new SimulationEngine(intersection, new DiscardResultSink());
+        DetectionQueue queue = new DetectionQueue(intersection);
+
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < detectors; i++) {
+            threads.add(detector(i, queue, rate, seeds.nextLong()));
+        }
+        threads.forEach(Thread::start);
+
+        long start = System.nanoTime();
+        long next = start;
+        for (int step = 0; step < steps; step++) {
+            next += stepMillis * 1_000_000;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            queue.drainTo(engine);
+            engine.step();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Thread thread : threads) {
+            thread.interrupt();
+            thread.join();
+        }
+        engine.finish();
+
+        System.out.printf("%d steps with %d detectors in %.2f s (%.0f detections/s drained)%n",
+                steps, detectors, seconds, queue.getDrained() / seconds);
+        ObjectMapper mapper = new ObjectMapper();
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(queue.getCounters()));
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(engine.getStats()));
+        engine.close();
+    }
+}
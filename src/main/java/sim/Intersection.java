@@ -4,28 +4,124 @@ import java.util.*;
 
 
 /**
- * Representation of a four-way intersection. Each direction contains a pair of
- * lanes and the instance is governed by a {@link TrafficLightController} that
- * decides which lanes receive green lights at each step.
+ * Representation of an intersection of up to four roads. The roads and their
+ * lanes follow the configured {@link Geometry}, by default a pair of lanes in
+ * every direction, and the instance is governed by a
+ * {@link TrafficLightController} that decides which lanes receive green lights
+ * at each step. All parameters are taken from the {@link RunConfig} the
+ * intersection was built with. Closing the intersection releases its
+ * vehicle registry.
  */
-public class Intersection {
+public class Intersection implements AutoCloseable {
+    private final RunConfig config;
     private final Map<Direction, Road> roads = new EnumMap<>(Direction.class);
     private TrafficLightController controller;
-    private final ConflictMonitor monitor = new ConflictMonitor();
+    private final ConflictMonitor monitor;
+    private final VehicleRegistry vehicles;
+    /** Whether this is a fork sharing the vehicle registry of another intersection. */
+    private final boolean forked;
+    private int[] departed = new int[16];
+    /** All lanes by dense index, in road then lane order. */
+    private final Lane[] lanes;
+    private final SignalBank signals;
+    private final ConflictMatrix conflicts;
 
     /**
-     * Construct an intersection with the provided traffic light controller.
+     * Construct an intersection with the provided traffic light controller,
+     * configured by a snapshot of {@link Config#current}.
      *
      * @param controller strategy used to determine which lanes are given right
      *                   of way
      */
     public Intersection(TrafficLightController controller) {
+        this(controller, RunConfig.current());
+    }
+
+    /**
+     * Construct an intersection with the provided traffic light controller
+     * and configuration. Lanes start with the configured base priorities.
+     *
+     * @param controller strategy used to determine which lanes are given right
+     *                   of way
+     * @param config     configuration of the run
+     */
+    public Intersection(TrafficLightController controller, RunConfig config) {
+        this.config = config;
         this.controller = controller;
+        this.monitor = new ConflictMonitor();
+        this.vehicles = VehicleRegistry.fromConfig(config);
+        this.forked = false;
+        List<Lane> all = new ArrayList<>();
         for (Direction d : Direction.values()) {
-            roads.put(d, new Road(d));
+            List<LaneType> types = config.lanesOf(d);
+            if (types.isEmpty()) continue;
+            Road road = new Road(d, types, vehicles, config);
+            roads.put(d, road);
+            all.addAll(road.getLanes());
+        }
+        this.lanes = all.toArray(new Lane[0]);
+        this.signals = new SignalBank(lanes.length, config.yellowDuration);
+        this.conflicts = config.getPhaseTable().getConflicts();
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i].assignIndex(i, signals);
+            lanes[i].setPriority(config.getLanePriority(i));
         }
     }
 
+    private Intersection(Intersection other, boolean forkController) {
+        this.config = other.config.withoutDebug();
+        this.monitor = other.monitor.copy();
+        this.vehicles = other.vehicles;
+        this.forked = true;
+        this.signals = other.signals.copy();
+        this.conflicts = other.conflicts;
+        this.lanes = new Lane[other.lanes.length];
+        other.roads.forEach((d, road) -> {
+            Road copy = road.fork(signals);
+            roads.put(d, copy);
+            for (Lane lane : copy.getLanes()) {
+                lanes[lane.getIndex()] = lane;
+            }
+        });
+        this.controller = forkController && other.controller != null ? other.controller.fork(this) : null;
+    }
+
+    /**
+     * Snapshot this intersection into an independent copy that can be
+     * advanced on its own, e.g. to evaluate what-if scenarios. Forking is
+     * cheap: lane queues are shared copy-on-write, so only lanes that receive
+     * vehicles later are copied. The controller is forked with its state if
+     * it supports it, see {@link TrafficLightController#fork}.
+     *
+     * <p>A fork shares the vehicle registry with this intersection and only
+     * reads from it: it is advanced with {@link #advance()} or
+     * {@link #step()}, which leave departed vehicles registered, and new
+     * vehicles cannot be added to it. Forks of the same intersection may be
+     * advanced concurrently as long as this intersection is not modified
+     * meanwhile. Forks never print debug output, so that their steps stay
+     * out of the trace of this intersection.</p>
+     *
+     * @return the fork
+     */
+    public Intersection fork() {
+        return new Intersection(this, true);
+    }
+
+    /**
+     * Fork without copying the controller, for callers that drive the fork
+     * with their own.
+     */
+    Intersection forkWithoutController() {
+        return new Intersection(this, false);
+    }
+
+    /**
+     * @return whether this intersection is a {@link #fork()}
+     */
+    public boolean isFork() {
+        return forked;
+    }
+
     /**
      * Apply priority weighting to individual lanes. These priorities influence
      * the controller's phase-selection logic.
@@ -38,10 +134,10 @@ public class Intersection {
             if (road == null) continue;
             Map<LaneType, Double> map = priorities.get(d);
             if (map == null) continue;
-            for (LaneType lt : LaneType.values()) {
-                Double val = map.get(lt);
+            for (Lane lane : road.getLanes()) {
+                Double val = map.get(lane.getType());
                 if (val != null) {
-                    road.getLane(lt).setPriority(val);
+                    lane.setPriority(val);
                 }
             }
         }
@@ -54,13 +150,62 @@ public class Intersection {
      * @param vehicle vehicle entering the intersection
      */
     public void addVehicle(Vehicle vehicle) {
-        Road road = roads.get(vehicle.getStart());
-        Lane lane = road.addVehicle(vehicle);
+        checkNotForked();
+        Lane lane = road(vehicle.getStart()).addVehicle(vehicle);
         if (vehicle.getType() == VehicleType.EMERGENCY && controller != null) {
             controller.emergencyVehicleArrived(lane);
         }
     }
 
+    /**
+     * Add a vehicle already registered with {@link #getVehicles()} to the lane
+     * matching its route.
+     *
+     * @param handle registry handle of the arriving vehicle
+     */
+    public void addVehicle(int handle) {
+        checkNotForked();
+        Lane lane = road(vehicles.start(handle)).laneFor(vehicles.end(handle));
+        lane.enqueue(handle);
+        if (vehicles.type(handle) == VehicleType.EMERGENCY && controller != null) {
+            controller.emergencyVehicleArrived(lane);
+        }
+    }
+
+    /**
+     * Add a batch of registered vehicles sharing the same start road,
+     * destination and type, as produced by a bulk arrival. The batch is
+     * appended to its lane at once and the controller is notified once for
+     * emergency vehicles.
+     *
+     * @param handles registry handles in arrival order
+     * @param count   number of handles to add
+     */
+    public void addVehicles(int[] handles, int count) {
+        checkNotForked();
+        if (count == 0) return;
+        int first = handles[0];
+        Lane lane = road(vehicles.start(first)).laneFor(vehicles.end(first));
+        lane.enqueueAll(handles, count);
+        if (vehicles.type(first) == VehicleType.EMERGENCY && controller != null) {
+            controller.emergencyVehicleArrived(lane);
+        }
+    }
+
+    private void checkNotForked() {
+        if (forked) {
+            throw new IllegalStateException("Vehicles cannot be added to a fork");
+        }
+    }
+
+    private Road road(Direction start) {
+        Road road = roads.get(start);
+        if (road == null) {
+            throw new IllegalArgumentException("No road from " + start);
+        }
+        return road;
+    }
+
     /**
      * Advance the simulation by one time step. Traffic lights are updated and
      * vehicles with a green light are allowed to pass.
@@ -68,67 +213,113 @@ public class Intersection {
      * @return list of vehicles that left the intersection during this step
      */
     public List<Vehicle> step() {
-        monitor.beforeStep(this);
-        // Step 1: update lights (yellow -> red)
-        for (Road road : roads.values()) {
-            for (Lane lane : road.getLanes()) {
-                lane.getTrafficLight().step();
+        int count = advance();
+        List<Vehicle> leftVehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            leftVehicles.add(vehicles.vehicle(departed[i]));
+            if (!forked) {
+                vehicles.release(departed[i]);
             }
         }
-        // Step 2: controller selects lanes that will turn green
-        Set<Lane> newGreenLanes = controller.getGreenLanes(roads);
+        return leftVehicles;
+    }
 
+    /**
+     * Advance the simulation by one time step like {@link #step()}, but
+     * report departures as registry handles instead of {@link Vehicle}
+     * objects. The handles are available from {@link #getDepartedHandles()}
+     * until the next step and stay registered; the caller releases them.
+     *
+     * @return number of vehicles that left the intersection during this step
+     */
+    public int advance() {
+        monitor.beforeStep(this);
+        // Step 1: update lights (yellow -> red)
+        signals.step();
+        // Step 2: controller selects lanes that will turn green
+        long newGreenLanes = controller.getGreenMask(roads);
         // Step 3: apply new light states
-        for (Road road : roads.values()) {
-            for (Lane lane : road.getLanes()) {
-                TrafficLight light = lane.getTrafficLight();
-                if (light.getState() == TrafficLightState.GREEN && !newGreenLanes.contains(lane)) {
-                    light.setYellow();
-                } else if (light.getState() == TrafficLightState.RED && newGreenLanes.contains(lane)) {
-                    light.setGreen();
-                }
-            }
-        }
+        signals.apply(newGreenLanes);
 
         monitor.afterStep(this);
 
         // Step 5: vehicles move only on green
-        if (Config.debug) {
+        if (config.debug) {
             System.out.println("=== INTERSECTION STATE ===");
-            for (Road road : roads.values()) {
-                for (Lane lane : road.getLanes()) {
-                    TrafficLight light = lane.getTrafficLight();
-                    System.out.printf("[%s-%s] Light: %-6s | Queue: %d%n",
-                            road.getDirection(), lane.getType(), light.getState(), lane.size());
-                }
+            for (Lane lane : lanes) {
+                System.out.printf("[%s-%s] Light: %-6s | Queue: %d%n",
+                        lane.getStart(), lane.getType(), lane.getTrafficLight().getState(), lane.size());
             }
         }
 
-        // Step 6 (debug): list vehicles that left
-        List<Vehicle> leftVehicles = new ArrayList<>();
-        for (Road road : roads.values()) {
-            for (Lane lane : road.getLanes()) {
-                if (lane.getTrafficLight().getState() == TrafficLightState.GREEN) {
-                    for (int i = 0; i < Config.current.vehiclesPerStep; i++) {
-                        Vehicle vehicle = lane.pollVehicle();
-                        if (vehicle != null) {
-                            leftVehicles.add(vehicle);
-                        } else {
-                            break;
-                        }
-                    }
-                }
+        // Step 6: drain green lanes in index order
+        int perLane = config.vehiclesPerStep;
+        int count = 0;
+        for (long green = signals.getGreenMask(); green != 0; green &= green - 1) {
+            if (count + perLane > departed.length) {
+                departed = Arrays.copyOf(departed, Math.max(departed.length * 2, count + perLane));
             }
+            count += lanes[Long.numberOfTrailingZeros(green)].drain(perLane, departed, count);
         }
 
-        if (Config.debug) {
-            System.out.println("Vehicles that left: " + leftVehicles.stream().map(Vehicle::getId).toList());
+        if (config.debug) {
+            List<String> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(vehicles.id(departed[i]));
+            }
+            System.out.println("Vehicles that left: " + ids);
             System.out.println("----------------------------");
         }
 
-        return leftVehicles;
+        return count;
+    }
+
+    /**
+     * @return handles of the vehicles that left during the last
+     * {@link #advance()}, valid up to its returned count
+     */
+    public int[] getDepartedHandles() {
+        return departed;
+    }
+
+    /**
+     * @return lane with the given dense index
+     */
+    public Lane getLane(int index) {
+        return lanes[index];
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @return light states of all lanes, indexed like the lanes
+     */
+    public SignalBank getSignals() {
+        return signals;
+    }
+
+    /**
+     * @return which lanes may not be green at the same time
+     */
+    public ConflictMatrix getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return registry holding every vehicle queued on this intersection
+     */
+    public VehicleRegistry getVehicles() {
+        return vehicles;
     }
 
+    /**
+     * @return configuration this intersection was built with
+     */
+    public RunConfig getConfig() {
+        return config;
+    }
 
     public Map<Direction, Road> getRoads() {
         return roads;
@@ -142,4 +333,15 @@ public class Intersection {
         return controller;
     }
 
+    /**
+     * Close the vehicle registry, deleting its spill file if it has one. A
+     * fork shares the registry of the intersection it was forked from and
+     * leaves it open.
+     */
+    @Override
+    public void close() {
+        if (!forked) {
+            vehicles.close();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package sim;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Result sink that writes each step status through a Jackson
+ * {@link JsonGenerator} as soon as the step completes, keeping memory use
+ * constant and letting other tools follow the output while the simulation runs.
+ */
+public class JsonResultSink implements ResultSink {
+
+    /** Output layout. */
+    public enum Format {
+        /** Indented {@code {"stepStatuses": [...]}} document, as written by default. */
+        PRETTY,
+        /** The same document without whitespace. */
+        COMPACT,
+        /** One {@code {"leftVehicles": [...]}} object per line. */
+        NDJSON;
+
+        /**
+         * Resolve a format name case-insensitively, accepting {@code json} for
+         * {@link #COMPACT}.
+         */
+        public static Format parse(String name) {
+            if ("json".equalsIgnoreCase(name)) return COMPACT;
+            for (Format f : values()) {
+                if (f.name().equalsIgnoreCase(name)) return f;
+            }
+            throw new IllegalArgumentException("Unknown output format: " + name);
+        }
+    }
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private final Format format;
+    private boolean empty = true;
+
+    /**
+     * Start writing step statuses to the given stream, which is closed together
+     * with the sink.
+     */
+    public JsonResultSink(OutputStream out, Format format) throws IOException {
+        this.format = format;
+        this.generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        switch (format) {
+            case PRETTY -> generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            case NDJSON -> generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            case COMPACT -> { }
+        }
+        if (format != Format.NDJSON) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("stepStatuses");
+        }
+    }
+
+    @Override
+    public void beginStep() {
+        try {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("leftVehicles");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void vehicleLeft(String vehicleId) {
+        try {
+            generator.writeString(vehicleId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endStep() {
+        try {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            empty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (format != Format.NDJSON) {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } else if (!empty) {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+    }
+}
@@ -1,71 +1,237 @@
 package sim;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
 
 /**
  * Queue of vehicles sharing the same movement (left or straight/right) from a
  * particular direction. Each lane has its own traffic light instance and tracks
- * counts of buses and emergency vehicles for priority calculations.
+ * counts of buses and emergency vehicles for priority calculations. Queued
+ * vehicles are kept as {@link VehicleRegistry} handles in a primitive
+ * {@link LaneQueue}; {@link Vehicle} objects are only built when requested.
  */
 public class Lane {
+    private static final int BUS = VehicleType.BUS.ordinal();
+    private static final int EMERGENCY = VehicleType.EMERGENCY.ordinal();
+
     private final Direction start;
     private final LaneType type;
-    private final Queue<Vehicle> vehicles = new LinkedList<>();
-    private final TrafficLight light = new TrafficLight();
+    private final VehicleRegistry registry;
+    private final LaneQueue queue;
+    private final double busPriority;
+    private TrafficLight light = new TrafficLight();
+    private int index = -1;
     private double basePriority;
+    /** Sum of the arrival steps of all queued vehicles. */
+    private long arrivalStepSum = 0;
     public int busCount = 0;
     public int emergencyCount = 0;
+    private LaneListener[] listeners = new LaneListener[0];
 
 
     /**
-     * Create a lane starting from the given direction.
+     * Create a lane starting from the given direction with its own vehicle
+     * registry.
      *
      * @param start direction vehicles enter from
      * @param type  classification of the lane (LEFT or STRAIGHT)
      */
     public Lane(Direction start, LaneType type) {
+        this(start, type, new VehicleRegistry());
+    }
+
+    /**
+     * Create a lane whose vehicle handles belong to the given registry.
+     *
+     * @param start    direction vehicles enter from
+     * @param type     classification of the lane (LEFT or STRAIGHT)
+     * @param registry registry shared with the other lanes of the intersection
+     */
+    public Lane(Direction start, LaneType type, VehicleRegistry registry) {
+        this(start, type, registry, Config.current.busPriority);
+    }
+
+    /**
+     * Create a lane of an intersection run with the given configuration.
+     *
+     * @param start    direction vehicles enter from
+     * @param type     classification of the lane
+     * @param registry registry shared with the other lanes of the intersection
+     * @param config   configuration of the run
+     */
+    public Lane(Direction start, LaneType type, VehicleRegistry registry, RunConfig config) {
+        this(start, type, registry, config.busPriority);
+    }
+
+    private Lane(Direction start, LaneType type, VehicleRegistry registry, double busPriority) {
         this.start = start;
         this.type = type;
+        this.registry = registry;
+        this.queue = new LaneQueue();
+        this.busPriority = busPriority;
+    }
+
+    private Lane(Lane other, SignalBank signals) {
+        this.start = other.start;
+        this.type = other.type;
+        this.registry = other.registry;
+        this.queue = other.queue.fork();
+        this.busPriority = other.busPriority;
+        this.index = other.index;
+        this.light = other.index >= 0 ? new TrafficLight(signals, other.index) : new TrafficLight();
+        this.basePriority = other.basePriority;
+        this.arrivalStepSum = other.arrivalStepSum;
+        this.busCount = other.busCount;
+        this.emergencyCount = other.emergencyCount;
     }
 
     /**
-     * Enqueue a vehicle onto this lane and update priority counters.
+     * Copy this lane for a forked intersection. The queue is shared
+     * copy-on-write; listeners are not copied.
+     *
+     * @param signals signal bank of the fork
+     */
+    Lane fork(SignalBank signals) {
+        return new Lane(this, signals);
+    }
+
+    /**
+     * Enqueue a vehicle onto this lane and update priority counters. The
+     * vehicle is registered with the lane's registry.
      */
     public void addVehicle(Vehicle v) {
-        vehicles.offer(v);
-        if (v.getType() == VehicleType.BUS) busCount++;
-        if (v.getType() == VehicleType.EMERGENCY) emergencyCount++;
+        enqueue(registry.register(v.getId(), v.getArrivalStep(), v.getStart(), v.getEnd(), v.getType()));
+    }
+
+    /**
+     * Enqueue a batch of vehicles, registering each of them.
+     */
+    public void addVehicles(Vehicle[] batch) {
+        queue.ensureCapacity(batch.length);
+        for (Vehicle v : batch) {
+            addVehicle(v);
+        }
+    }
+
+    /**
+     * Enqueue an already registered vehicle and update priority counters.
+     *
+     * @param handle handle of the vehicle in this lane's registry
+     */
+    public void enqueue(int handle) {
+        int arrival = registry.arrivalStep(handle);
+        VehicleType vType = registry.type(handle);
+        queue.add(handle, arrival, vType);
+        arrivalStepSum += arrival;
+        if (vType == VehicleType.BUS) busCount++;
+        if (vType == VehicleType.EMERGENCY) emergencyCount++;
+        changed();
     }
 
     /**
-     * Dequeue the next vehicle, adjusting priority counters accordingly.
+     * Enqueue the first {@code count} handles of a bulk arrival of vehicles
+     * sharing the same type, updating the counters once for the batch.
+     */
+    public void enqueueAll(int[] handles, int count) {
+        if (count == 0) return;
+        queue.ensureCapacity(count);
+        VehicleType vType = registry.type(handles[0]);
+        for (int i = 0; i < count; i++) {
+            int arrival = registry.arrivalStep(handles[i]);
+            queue.add(handles[i], arrival, vType);
+            arrivalStepSum += arrival;
+        }
+        if (vType == VehicleType.BUS) busCount += count;
+        if (vType == VehicleType.EMERGENCY) emergencyCount += count;
+        changed();
+    }
+
+    /**
+     * Dequeue the next vehicle, adjusting priority counters accordingly. Its
+     * handle is released, so the vehicle is fully detached from the lane.
      */
     public Vehicle pollVehicle() {
-        Vehicle v = vehicles.poll();
-        if (v != null) {
-            if (v.getType() == VehicleType.BUS) busCount--;
-            if (v.getType() == VehicleType.EMERGENCY) emergencyCount--;
+        if (queue.size() == 0) {
+            return null;
         }
+        int handle = queue.handleAt(0);
+        removeFirst(1);
+        Vehicle v = registry.vehicle(handle);
+        registry.release(handle);
         return v;
     }
 
     /**
-     * Calculate total waiting time of vehicles currently in this lane.
+     * Dequeue up to {@code max} vehicles, writing their handles to
+     * {@code out} from {@code offset}. The handles stay registered; the caller
+     * is responsible for releasing them.
+     *
+     * @return number of vehicles dequeued
+     */
+    public int drain(int max, int[] out, int offset) {
+        int n = Math.min(max, queue.size());
+        for (int i = 0; i < n; i++) {
+            out[offset + i] = queue.handleAt(i);
+        }
+        removeFirst(n);
+        return n;
+    }
+
+    private void removeFirst(int n) {
+        for (int i = 0; i < n; i++) {
+            int vType = queue.typeAt(i);
+            if (vType == BUS) busCount--;
+            if (vType == EMERGENCY) emergencyCount--;
+            arrivalStepSum -= queue.arrivalAt(i);
+        }
+        queue.removeFirst(n);
+        if (n > 0) changed();
+    }
+
+    /**
+     * Register a listener notified after every change to the queue or the
+     * base priority of this lane.
+     */
+    public void addListener(LaneListener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    private void changed() {
+        for (LaneListener listener : listeners) {
+            listener.laneChanged(this);
+        }
+    }
+
+    /**
+     * Calculate total waiting time of vehicles currently in this lane in
+     * constant time from the running sum of their arrival steps.
      *
      * @param currentStep current simulation step
      * @return sum of waiting time for all vehicles in the lane
      */
-    public int getTotalWaitingTime(int currentStep) {
-        int wait = 0;
-        for (Vehicle v : vehicles) {
-            wait += currentStep - v.getArrivalStep();
-        }
-        return wait;
+    public long getTotalWaitingTime(int currentStep) {
+        return (long) queue.size() * currentStep - arrivalStepSum;
     }
 
     public int size() {
-        return vehicles.size();
+        return queue.size();
+    }
+
+    /**
+     * Give this lane its dense index within an intersection and move its
+     * light into the intersection's signal bank.
+     */
+    void assignIndex(int index, SignalBank signals) {
+        this.index = index;
+        this.light = new TrafficLight(signals, index);
+    }
+
+    /**
+     * @return dense index of this lane within its intersection, or -1 for a
+     * lane that is not part of one
+     */
+    public int getIndex() {
+        return index;
     }
 
     public TrafficLight getTrafficLight() {
@@ -81,11 +247,12 @@ public class Lane {
     }
 
     public double getPriority() {
-        return basePriority + busCount * Config.current.busPriority;
+        return basePriority + busCount * busPriority;
     }
 
     public void setPriority(double priority) {
         this.basePriority = priority;
+        changed();
     }
 
     /**
@@ -97,6 +264,6 @@ public class Lane {
 
     @Override
     public String toString() {
-        return start + "-" + type + ": " + vehicles.size() + " vehicles";
+        return start + "-" + type + ": " + queue.size() + " vehicles";
     }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package sim;
+
+/**
+ * Receives a notification whenever the queue or priority of a {@link Lane}
+ * changes, so controllers can keep aggregates over lanes up to date without
+ * rescanning them every step.
+ */
+@FunctionalInterface
+public interface LaneListener {
+    /**
+     * Called after vehicles were added to or removed from the lane, or its
+     * base priority changed.
+     */
+    void laneChanged(Lane lane);
+}
@@ -0,0 +1,126 @@
+package sim;
+
+/**
+ * FIFO queue of vehicles stored as parallel primitive arrays: the
+ * {@link VehicleRegistry} handle, the arrival step and the vehicle type
+ * ordinal of each queued vehicle. The arrays form a power-of-two ring that
+ * doubles when full, so a queued vehicle costs nine bytes and no objects.
+ * Positions passed to the accessors are relative to the head of the queue.
+ *
+ * <p>{@link #fork()} copies a queue in constant time by sharing the arrays.
+ * Removing vehicles only moves the head, so both queues keep reading the
+ * shared arrays until one of them adds a vehicle, which first copies them.</p>
+ */
+final class LaneQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] handles;
+    private int[] arrivals;
+    private byte[] types;
+    private int mask;
+    private int head = 0;
+    private int size = 0;
+    /** Whether the arrays may be shared with a fork and must be copied before writing. */
+    private boolean shared = false;
+
+    LaneQueue() {
+        handles = new int[INITIAL_CAPACITY];
+        arrivals = new int[INITIAL_CAPACITY];
+        types = new byte[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    private LaneQueue(LaneQueue other) {
+        handles = other.handles;
+        arrivals = other.arrivals;
+        types = other.types;
+        mask = other.mask;
+        head = other.head;
+        size = other.size;
+        shared = true;
+    }
+
+    /**
+     * @return independent copy of this queue sharing its arrays until either
+     * side adds a vehicle
+     */
+    LaneQueue fork() {
+        shared = true;
+        return new LaneQueue(this);
+    }
+
+    void add(int handle, int arrivalStep, VehicleType type) {
+        if (size == handles.length) {
+            grow(size + 1);
+        } else if (shared) {
+            handles = handles.clone();
+            arrivals = arrivals.clone();
+            types = types.clone();
+            shared = false;
+        }
+        int index = (head + size) & mask;
+        handles[index] = handle;
+        arrivals[index] = arrivalStep;
+        types[index] = (byte) type.ordinal();
+        size++;
+    }
+
+    /**
+     * Make room for at least {@code additional} more vehicles without further
+     * resizing.
+     */
+    void ensureCapacity(int additional) {
+        if (size + additional > handles.length) {
+            grow(size + additional);
+        }
+    }
+
+    private void grow(int required) {
+        int capacity = handles.length;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        handles = unwrap(handles, capacity);
+        arrivals = unwrap(arrivals, capacity);
+        byte[] t = new byte[capacity];
+        int first = Math.min(size, types.length - head);
+        System.arraycopy(types, head, t, 0, first);
+        System.arraycopy(types, 0, t, first, size - first);
+        types = t;
+        head = 0;
+        mask = capacity - 1;
+        shared = false;
+    }
+
+    private int[] unwrap(int[] array, int capacity) {
+        int[] a = new int[capacity];
+        int first = Math.min(size, array.length - head);
+        System.arraycopy(array, head, a, 0, first);
+        System.arraycopy(array, 0, a, first, size - first);
+        return a;
+    }
+
+    int handleAt(int i) {
+        return handles[(head + i) & mask];
+    }
+
+    int arrivalAt(int i) {
+        return arrivals[(head + i) & mask];
+    }
+
+    int typeAt(int i) {
+        return types[(head + i) & mask];
+    }
+
+    /**
+     * Drop the first {@code n} vehicles.
+     */
+    void removeFirst(int n) {
+        head = (head + n) & mask;
+        size -= n;
+    }
+
+    int size() {
+        return size;
+    }
+}
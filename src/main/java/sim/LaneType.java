@@ -2,5 +2,20 @@ package sim;
 
 public enum LaneType {
     LEFT,
-    STRAIGHT
+    STRAIGHT,
+    RIGHT;
+
+    private static final LaneType[] VALUES = values();
+
+    /**
+     * Resolve a lane type name case-insensitively, e.g. {@code "left"}.
+     *
+     * @throws IllegalArgumentException if the name matches no lane type
+     */
+    public static LaneType parse(String name) {
+        for (LaneType t : VALUES) {
+            if (t.name().equalsIgnoreCase(name)) return t;
+        }
+        throw new IllegalArgumentException("Unknown lane type: " + name);
+    }
 }
@@ -0,0 +1,242 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Actuated controller that decides by simulating. Once the current phase has
+ * reached its minimum green time, every candidate decision (stay, or switch
+ * to one of the other phases) is rolled forward on a {@link Intersection#fork
+ * fork} of the intersection for a fixed horizon, and the one leaving the
+ * fewest priority-weighted vehicles queued over the horizon wins. Rollouts
+ * run in parallel on a {@link ForkJoinPool}.
+ *
+ * <p>Rollouts assume no further arrivals and keep the chosen phase for the
+ * whole horizon. Phases held back past the fairness cap are still served
+ * first: when any are due, only they are candidates. With a time budget,
+ * rollouts still running at the deadline are abandoned; if none finished the
+ * decision falls back to the regular actuated one.</p>
+ */
+public class LookaheadController extends ActuatedController {
+    private final Intersection intersection;
+    private final int horizon;
+    private final long budgetNanos;
+    private final ForkJoinPool pool;
+    private final int fairnessCap;
+    private final int yellowDuration;
+    private long rollouts;
+    private long abandoned;
+
+    /**
+     * Create a controller for {@code intersection} using the lookahead
+     * settings of its configuration and the common pool.
+     */
+    public LookaheadController(Intersection intersection) {
+        this(intersection, intersection.getConfig().lookaheadHorizon,
+                TimeUnit.MICROSECONDS.toNanos(intersection.getConfig().lookaheadBudgetMicros),
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param intersection intersection this controller drives and forks
+     * @param horizon      number of steps each candidate is rolled forward
+     * @param budgetNanos  time budget per decision, {@code 0} to wait for
+     *                     every rollout
+     * @param pool         pool running the rollouts
+     */
+    public LookaheadController(Intersection intersection, int horizon, long budgetNanos, ForkJoinPool pool) {
+        super(intersection.getRoads(), intersection.getConfig());
+        if (horizon < 1 || budgetNanos < 0) {
+            throw new IllegalArgumentException("Invalid lookahead: horizon " + horizon + ", budget " + budgetNanos);
+        }
+        this.intersection = intersection;
+        this.horizon = horizon;
+        this.budgetNanos = budgetNanos;
+        this.pool = pool;
+        this.fairnessCap = intersection.getConfig().fairnessCap;
+        this.yellowDuration = intersection.getConfig().yellowDuration;
+    }
+
+    @Override
+    public LookaheadController fork(Intersection fork) {
+        LookaheadController copy = new LookaheadController(fork, horizon, budgetNanos, pool);
+        copy.copyStateFrom(this);
+        return copy;
+    }
+
+    @Override
+    protected int selectPhase() {
+        int current = getCurrentPhaseIndex();
+        Phase phase = getPhases().get(current);
+        if (!phase.isMinTimeReached()) {
+            return -1;
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        List<Integer> candidates = candidates(current, phase.isMaxTimeExceeded());
+
+        List<ForkJoinTask<Double>> tasks = new ArrayList<>(candidates.size());
+        for (int target : candidates) {
+            Intersection fork = intersection.forkWithoutController();
+            fork.setController(target == current
+                    ? new Plan(getPhaseMask(current), 0, getPhaseMask(current))
+                    : new Plan(getPhaseMask(current), yellowDuration, getPhaseMask(target)));
+            tasks.add(pool.submit(() -> rollout(fork, deadline)));
+        }
+
+        int best = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < tasks.size(); i++) {
+            double cost = await(tasks.get(i), deadline);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = candidates.get(i);
+            }
+        }
+        rollouts += tasks.size();
+        if (best == -1) {
+            return super.selectPhase();
+        }
+        if (intersection.getConfig().debug) {
+            System.out.printf("-> Lookahead chose phase %d (cost %.2f)%n", best, bestCost);
+        }
+        return best == current ? -1 : best;
+    }
+
+    /**
+     * Decisions to roll out, staying first so that it wins ties.
+     */
+    private List<Integer> candidates(int current, boolean maxExceeded) {
+        List<Integer> due = new ArrayList<>();
+        List<Integer> all = new ArrayList<>();
+        if (!maxExceeded) {
+            all.add(current);
+        }
+        for (int i = 0; i < getPhases().size(); i++) {
+            if (i == current) continue;
+            all.add(i);
+            if (getStepsSinceActivation(i) >= fairnessCap && isOccupied(i)) {
+                due.add(i);
+            }
+        }
+        return due.isEmpty() ? all : due;
+    }
+
+    private boolean isOccupied(int phase) {
+        for (Lane lane : getPhases().get(phase).getLanes()) {
+            if (lane.size() > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return cost of a finished rollout, {@code NaN} if it missed the
+     * deadline, whether it gave up by itself or was still running
+     */
+    private double await(ForkJoinTask<Double> task, long deadline) {
+        try {
+            double cost = budgetNanos == 0 ? task.join()
+                    : task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (Double.isNaN(cost)) {
+                abandoned++;
+            }
+            return cost;
+        } catch (TimeoutException | CancellationException e) {
+            task.cancel(false);
+            abandoned++;
+            return Double.NaN;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(false);
+            abandoned++;
+            return Double.NaN;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rollout failed", e.getCause());
+        }
+    }
+
+    /**
+     * Advance a fork for the horizon, summing the priority-weighted queue
+     * lengths after every step. Gives up once the deadline has passed.
+     */
+    private double rollout(Intersection fork, long deadline) {
+        double cost = 0.0;
+        for (int t = 0; t < horizon; t++) {
+            if (budgetNanos > 0 && System.nanoTime() - deadline > 0) {
+                return Double.NaN;
+            }
+            fork.advance();
+            for (int i = 0; i < fork.getLaneCount(); i++) {
+                Lane lane = fork.getLane(i);
+                cost += lane.size() * lane.getPriority();
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * @return number of rollouts started so far
+     */
+    public long getRollouts() {
+        return rollouts;
+    }
+
+    /**
+     * @return number of rollouts that missed their time budget
+     */
+    public long getAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * Fixed signal plan of a rollout: the current phase for one more step,
+     * as the actuated controller keeps it green on the step it decides to
+     * switch, then all red during the yellow time and the target phase from
+     * then on.
+     */
+    private static final class Plan implements TrafficLightController {
+        private final long first;
+        private final long target;
+        private int step;
+        private final int redSteps;
+
+        Plan(long first, int redSteps, long target) {
+            this.first = first;
+            this.redSteps = redSteps;
+            this.target = target;
+        }
+
+        @Override
+        public long getGreenMask(Map<Direction, Road> roads) {
+            int s = step++;
+            if (s == 0) return first;
+            return s <= redSteps ? 0L : target;
+        }
+
+        /**
+         * Same step of the plan as {@link #getGreenMask}, returned as the
+         * lanes whose bits are set.
+         */
+        @Override
+        public Set<Lane> getGreenLanes(Map<Direction, Road> roads) {
+            long mask = getGreenMask(roads);
+            Set<Lane> lanes = new HashSet<>();
+            for (Road road : roads.values()) {
+                for (Lane lane : road.getLanes()) {
+                    if (lane.getIndex() >= 0 && (mask & 1L << lane.getIndex()) != 0) {
+                        lanes.add(lane);
+                    }
+                }
+            }
+            return lanes;
+        }
+    }
+}
@@ -2,24 +2,39 @@ package sim;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.io.OutputStream;
+import java.nio.file.Path;
 
 /**
- * Command-line entry point that loads command sequences from JSON and runs the
- * simulation. Results and statistics are written to output files.
+ * Command-line entry point that streams command sequences from JSON and runs
+ * the simulation. JSON inputs are compiled once into a cached
+ * {@link ScenarioFile} so repeated runs skip parsing. Step results are streamed
+ * to the output file while the simulation runs and statistics are written at
+ * the end. Inputs and outputs ending in {@code .gz} are (de)compressed on the
+ * fly.
  */
 public class Main {
     public static void main(String[] args) throws IOException {
         if (args.length < 2 || args.length % 2 != 0) {
-            System.err.println("Usage: java -jar simulator.jar input.json output.json [--config config.json] [--debug true|false]");
+            System.err.println("Usage: java -jar simulator.jar input.json output.json [--config config.json] [--debug true|false]"
+                    + " [--cache true|false] [--cache-dir dir] [--output-format pretty|json|ndjson] [--pipeline true|false]"
+                    + " [--stats output_stats.json] [--policy table.policy]"
+                    + " [--lookahead true|false]");
             return;
         }
 
         String inputFile = args[0];
         String outputFile = args[1];
+        Config config = Config.current;
+        boolean debug = false;
+        boolean useCache = true;
+        Path cacheDir = ScenarioCache.defaultDirectory();
+        JsonResultSink.Format outputFormat = JsonResultSink.Format.PRETTY;
+        boolean pipelined = false;
+        Path policyFile = null;
+        boolean lookahead = false;
+        String statsFile = FileStreams.isGzip(Path.of(outputFile)) ? "output_stats.json.gz" : "output_stats.json";
 
         for (int i = 2; i < args.length; i += 2) {
             String opt = args[i];
@@ -28,8 +43,15 @@ public class Main {
                 return;
             }
             switch (opt) {
-                case "--config" -> Config.load(args[i + 1]);
-                case "--debug" -> Config.debug = Boolean.parseBoolean(args[i + 1]);
+                case "--config" -> config = Config.load(args[i + 1]);
+                case "--debug" -> debug = Boolean.parseBoolean(args[i + 1]);
+                case "--cache" -> useCache = Boolean.parseBoolean(args[i + 1]);
+                case "--cache-dir" -> cacheDir = Path.of(args[i + 1]);
+                case "--output-format" -> outputFormat = JsonResultSink.Format.parse(args[i + 1]);
+                case "--pipeline" -> pipelined = Boolean.parseBoolean(args[i + 1]);
+                case "--stats" -> statsFile = args[i + 1];
+                case "--policy" -> policyFile = Path.of(args[i + 1]);
+                case "--lookahead" -> lookahead = Boolean.parseBoolean(args[i + 1]);
                 default -> {
                     System.err.println("Unknown option: " + opt);
                     return;
@@ -37,22 +59,56 @@ public class Main {
             }
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, Object> input = mapper.readValue(new File(inputFile), Map.class);
-        List<Map<String, Object>> commands = (List<Map<String, Object>>) input.get("commands");
-
-        Intersection intersection = new Intersection(null);
-        intersection.applyLanePriorities(Config.current.lanePriorities);
-        TrafficLightController controller = new ActuatedController(intersection.getRoads());
+        RunConfig run = RunConfig.of(config, debug);
+        Intersection intersection = new Intersection(null, run);
+        TrafficLightController controller;
+        if (policyFile != null) {
+            controller = new PolicyTableController(intersection.getRoads(), PolicyTable.load(policyFile), run);
+        } else if (lookahead) {
+            controller = new LookaheadController(intersection);
+        } else {
+            controller = new ActuatedController(intersection.getRoads(), run);
+        }
         intersection.setController(controller);
 
-        SimulationEngine engine = new SimulationEngine(intersection);
-        engine.executeCommands(commands);
+        Path input = Path.of(inputFile);
+        Path compiled = null;
+        if (ScenarioFile.isCompiled(input)) {
+            compiled = input;
+        } else if (useCache) {
+            compiled = new ScenarioCache(cacheDir).compiled(input);
+        }
+
+        SimulationEngine engine;
+        try (ResultSink results = new JsonResultSink(FileStreams.openOutput(Path.of(outputFile)), outputFormat)) {
+            if (pipelined) {
+                PipelinedRunner runner = new PipelinedRunner();
+                try (CommandSource commands = compiled != null
+                        ? ScenarioFile.open(compiled)
+                        : new CommandReader(input.toFile())) {
+                    engine = runner.run(commands, intersection, results);
+                }
+                for (PipelinedRunner.StageStats stage : runner.getStageStats()) {
+                    System.out.println(stage);
+                }
+            } else {
+                engine = new SimulationEngine(intersection, results);
+                if (compiled != null) {
+                    ScenarioFile.replay(compiled, engine);
+                } else {
+                    try (CommandReader commands = new CommandReader(input.toFile())) {
+                        engine.executeCommands(commands);
+                    }
+                }
+            }
+        }
 
-        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(outputFile), engine.getResult());
+        ObjectMapper mapper = new ObjectMapper();
 
         // write statistics file alongside output
-        File statsFile = new File("output_stats.json");
-        mapper.writerWithDefaultPrettyPrinter().writeValue(statsFile, engine.getStats());
+        try (OutputStream stats = FileStreams.openOutput(Path.of(statsFile))) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(stats, engine.getStats());
+        }
+        engine.close();
     }
 }
\ No newline at end of file
@@ -0,0 +1,603 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Phaser;
+import java.util.function.Function;
+
+/**
+ * Rectangular grid of intersections connected by roads with a travel time,
+ * a corridor being a grid one intersection high. A vehicle leaving an
+ * intersection towards a neighbour joins the neighbour's opposite road after
+ * the travel time; one leaving towards the edge of the grid leaves the
+ * network. Vehicles are routed to a destination intersection and exit road,
+ * first east or west until they reach its column, then north or south.
+ *
+ * <p>{@link #run} partitions the intersections into contiguous blocks, one
+ * per thread, which advance in lock-step with a barrier after every step.
+ * Every road between two intersections is a {@link SpscRingBuffer} written
+ * only by the thread owning its upstream end and read only by the one owning
+ * its downstream end. As the travel time is at least one step, a vehicle
+ * handed over during a step is only due at the downstream intersection after
+ * the barrier, and arrivals are admitted in a fixed road order, so results do
+ * not depend on the number of threads.</p>
+ *
+ * <p>A network may also hold only a contiguous range of the intersections,
+ * the rest being simulated elsewhere. Roads leading out of the range are
+ * then {@linkplain #getExports() exported}: an {@link Exchange} run between
+ * steps ships the vehicles on them to the owners of the other intersections
+ * and fills the {@linkplain #getImports() imported} roads leading in.</p>
+ *
+ * <p>Closing the network closes its intersections.</p>
+ */
+public class Network implements AutoCloseable {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int width;
+    private final int height;
+    private final int travelTime;
+    private final RunConfig config;
+    private final int laneCount;
+    private final int first;
+    private final List<Node> nodes;
+    private final List<Edge> exports = new ArrayList<>();
+    private final List<Edge> imports = new ArrayList<>();
+    private Demand demand;
+    private Exchange exchange;
+    private int currentStep = 0;
+
+    /**
+     * Source of vehicles entering the network. It is called for every
+     * intersection before each step, by the thread owning the intersection,
+     * and adds vehicles with {@link Node#addVehicle}. To keep runs
+     * deterministic it may only depend on the intersection and the step.
+     */
+    @FunctionalInterface
+    public interface Demand {
+        void generate(Node node, int step);
+    }
+
+    /**
+     * Transfer of vehicles between networks holding different parts of a
+     * grid, see {@link #setExchange}.
+     */
+    @FunctionalInterface
+    interface Exchange {
+        /**
+         * Called once every intersection of this network has finished
+         * {@code step} and before any starts the next one, by one of the
+         * threads of {@link #run}. Drains the exported roads and fills the
+         * imported ones with the vehicles leaving the other parts during
+         * {@code step}.
+         */
+        void afterStep(int step);
+    }
+
+    /**
+     * Build a grid of {@code width} by {@code height} intersections, all
+     * configured by {@code config} and governed by the controllers built by
+     * {@code controllers}.
+     *
+     * @param travelTime steps a vehicle needs from one intersection to the
+     *                   next, at least 1
+     * @throws IllegalArgumentException if a dimension or the travel time is
+     *                                  invalid
+     */
+    public Network(int width, int height, int travelTime, RunConfig config,
+                   Function<Intersection, TrafficLightController> controllers) {
+        this(width, height, travelTime, config, controllers, 0, width * height);
+    }
+
+    /**
+     * Build the intersections {@code from} (inclusive) to {@code to}
+     * (exclusive), in row-major order, of a grid of {@code width} by
+     * {@code height} intersections, exporting and importing the roads that
+     * connect them to the others.
+     *
+     * @throws IllegalArgumentException if a dimension, the travel time or the
+     *                                  range is invalid
+     */
+    public Network(int width, int height, int travelTime, RunConfig config,
+                   Function<Intersection, TrafficLightController> controllers, int from, int to) {
+        if (width < 1 || height < 1 || travelTime < 1) {
+            throw new IllegalArgumentException("Invalid network: " + width + "x" + height
+                    + ", travel time " + travelTime);
+        }
+        if (from < 0 || to > width * height || from >= to) {
+            throw new IllegalArgumentException("Invalid range of intersections: " + from + " to " + to);
+        }
+        this.width = width;
+        this.height = height;
+        this.travelTime = travelTime;
+        this.config = config;
+        this.laneCount = config.getPhaseTable().getLanes().size();
+        this.first = from;
+        List<Node> owned = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Intersection intersection = new Intersection(null, config);
+            intersection.setController(controllers.apply(intersection));
+            owned.add(new Node(i, intersection));
+        }
+        this.nodes = Collections.unmodifiableList(owned);
+        for (int i = 0; i < width * height; i++) {
+            for (Direction d : DIRECTIONS) {
+                int neighbour = neighbour(i, d);
+                if (neighbour < 0) continue;
+                Node upstream = owned(i);
+                Node downstream = owned(neighbour);
+                if (upstream == null && downstream == null) continue;
+                Edge edge = new Edge(i, d, neighbour, capacity());
+                if (upstream != null) {
+                    upstream.outgoing[d.ordinal()] = edge;
+                    if (downstream == null) exports.add(edge);
+                }
+                if (downstream != null) {
+                    downstream.incoming[d.opposite().ordinal()] = edge;
+                    if (upstream == null) imports.add(edge);
+                }
+            }
+        }
+    }
+
+    /**
+     * Grid of intersections governed by {@link ActuatedController}s.
+     */
+    public static Network grid(int width, int height, int travelTime, RunConfig config) {
+        return new Network(width, height, travelTime, config,
+                intersection -> new ActuatedController(intersection.getRoads(), config));
+    }
+
+    /**
+     * East-west corridor of {@code length} intersections governed by
+     * {@link ActuatedController}s.
+     */
+    public static Network corridor(int length, int travelTime, RunConfig config) {
+        return grid(length, 1, travelTime, config);
+    }
+
+    /**
+     * Most vehicles a road can hold: everything the upstream intersection can
+     * release during the travel time plus the step in which the oldest are
+     * admitted downstream. Roads never fill up, so a producer never waits for
+     * a consumer parked at the barrier.
+     */
+    private int capacity() {
+        return (travelTime + 1) * laneCount * Math.max(1, config.vehiclesPerStep);
+    }
+
+    /**
+     * @return the intersection with the given index if this network holds
+     * it, {@code null} otherwise
+     */
+    private Node owned(int index) {
+        int i = index - first;
+        return i >= 0 && i < nodes.size() ? nodes.get(i) : null;
+    }
+
+    /**
+     * @return index of the neighbour of {@code node} in direction {@code d},
+     * or {@code -1} at the edge of the grid
+     */
+    int neighbour(int node, Direction d) {
+        int x = node % width;
+        int y = node / width;
+        return switch (d) {
+            case NORTH -> y > 0 ? node - width : -1;
+            case SOUTH -> y < height - 1 ? node + width : -1;
+            case WEST -> x > 0 ? node - 1 : -1;
+            case EAST -> x < width - 1 ? node + 1 : -1;
+        };
+    }
+
+    /**
+     * Road a vehicle at {@code node} takes towards its destination.
+     */
+    private Direction heading(int node, int destination, Direction exit) {
+        int dx = destination % width - node % width;
+        if (dx != 0) return dx > 0 ? Direction.EAST : Direction.WEST;
+        int dy = destination / width - node / width;
+        if (dy != 0) return dy > 0 ? Direction.SOUTH : Direction.NORTH;
+        return exit;
+    }
+
+    /**
+     * @return whether road {@code d} of intersection {@code node} leads out
+     * of the grid
+     */
+    public boolean isBoundary(int node, Direction d) {
+        return neighbour(node, d) < 0;
+    }
+
+    /**
+     * Generate vehicles from {@code demand} before every step, or stop
+     * generating with {@code null}.
+     */
+    public void setDemand(Demand demand) {
+        this.demand = demand;
+    }
+
+    /**
+     * Transfer vehicles on exported and imported roads with {@code exchange}
+     * after every step.
+     */
+    void setExchange(Exchange exchange) {
+        this.exchange = exchange;
+    }
+
+    /**
+     * Advance every intersection by {@code steps} steps on {@code threads}
+     * threads, the calling one included.
+     *
+     * @throws IllegalArgumentException if either count is negative or there
+     *                                  are no threads
+     * @throws IllegalStateException    if an intersection failed to advance
+     */
+    public void run(int steps, int threads) {
+        if (steps < 0 || threads < 1) {
+            throw new IllegalArgumentException("Invalid run: " + steps + " steps on " + threads + " threads");
+        }
+        int partitions = Math.min(threads, nodes.size());
+        int first = currentStep;
+        Throwable[] failures = new Throwable[partitions + 1];
+        Phaser barrier = new Phaser(partitions) {
+            @Override
+            protected boolean onAdvance(int phase, int parties) {
+                if (exchange == null) return false;
+                try {
+                    exchange.afterStep(first + phase);
+                    return false;
+                } catch (RuntimeException | Error e) {
+                    failures[partitions] = e;
+                    return true;
+                }
+            }
+        };
+        Thread[] workers = new Thread[partitions];
+        for (int p = 1; p < partitions; p++) {
+            int partition = p;
+            workers[p] = new Thread(() -> runPartition(partition, partitions, first, steps, barrier, failures),
+                    "network-" + p);
+            workers[p].start();
+        }
+        runPartition(0, partitions, first, steps, barrier, failures);
+        for (int p = 1; p < partitions; p++) {
+            try {
+                workers[p].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                barrier.forceTermination();
+                throw new IllegalStateException("Interrupted while waiting for partition " + p, e);
+            }
+        }
+        currentStep = first + steps;
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                throw new IllegalStateException("Network step failed", failure);
+            }
+        }
+    }
+
+    /**
+     * Advance the intersections of one partition, waiting for the others
+     * after every step. A failure terminates the barrier so that the other
+     * partitions stop as well.
+     */
+    private void runPartition(int partition, int partitions, int first, int steps,
+                              Phaser barrier, Throwable[] failures) {
+        int from = partition * nodes.size() / partitions;
+        int to = (partition + 1) * nodes.size() / partitions;
+        try {
+            for (int step = first; step < first + steps; step++) {
+                for (int i = from; i < to; i++) {
+                    nodes.get(i).step(step);
+                }
+                if (barrier.arriveAndAwaitAdvance() < 0) return;
+            }
+        } catch (RuntimeException | Error e) {
+            failures[partition] = e;
+            barrier.forceTermination();
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return intersections in row-major order, north-west first
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @throws IllegalArgumentException if this network holds no such
+     *                                  intersection
+     */
+    public Node getNode(int x, int y) {
+        Node node = x < 0 || x >= width || y < 0 || y >= height ? null : owned(y * width + x);
+        if (node == null) {
+            throw new IllegalArgumentException("No intersection at " + x + "," + y);
+        }
+        return node;
+    }
+
+    /**
+     * @return roads leading from this network to intersections held
+     * elsewhere
+     */
+    List<Edge> getExports() {
+        return exports;
+    }
+
+    /**
+     * @return roads leading from intersections held elsewhere into this
+     * network
+     */
+    List<Edge> getImports() {
+        return imports;
+    }
+
+    /**
+     * @return number of steps simulated so far
+     */
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * Statistics summed over all intersections: vehicles that entered and
+     * left the network, their average trip time, and the average and maximum
+     * wait of a vehicle at one intersection.
+     */
+    public Map<String, Object> getStats() {
+        return getTotals().toStats(nodes.size(), currentStep);
+    }
+
+    /**
+     * Close every intersection, releasing their vehicle registries. The
+     * statistics stay available.
+     */
+    @Override
+    public void close() {
+        for (Node node : nodes) {
+            node.intersection.close();
+        }
+    }
+
+    /**
+     * @return counters summed over the intersections of this network
+     */
+    Totals getTotals() {
+        Totals totals = Totals.ZERO;
+        for (Node node : nodes) {
+            totals = totals.plus(new Totals(node.entered, node.exited, node.tripTime, node.passages,
+                    node.waitTime, node.maxWait));
+        }
+        return totals;
+    }
+
+    /**
+     * Counters behind {@link #getStats()}, which can be added up across
+     * networks holding parts of one grid.
+     */
+    record Totals(long entered, long exited, long tripTime, long passages, long waitTime, int maxWait) {
+        static final Totals ZERO = new Totals(0, 0, 0, 0, 0, 0);
+
+        Totals plus(Totals other) {
+            return new Totals(entered + other.entered, exited + other.exited, tripTime + other.tripTime,
+                    passages + other.passages, waitTime + other.waitTime, Math.max(maxWait, other.maxWait));
+        }
+
+        Map<String, Object> toStats(int intersections, int steps) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("intersections", intersections);
+            stats.put("totalSteps", steps);
+            stats.put("vehiclesEntered", entered);
+            stats.put("vehiclesExited", exited);
+            stats.put("vehiclesInNetwork", entered - exited);
+            stats.put("averageTripTime", exited == 0 ? 0.0 : (double) tripTime / exited);
+            stats.put("passages", passages);
+            stats.put("averageWaitTime", passages == 0 ? 0.0 : (double) waitTime / passages);
+            stats.put("maxWaitTime", maxWait);
+            return stats;
+        }
+    }
+
+    /**
+     * Vehicle on a road between two intersections.
+     *
+     * @param destination index of the destination intersection
+     * @param exit        road by which it leaves the network there
+     * @param arrivalStep step at which it reaches the downstream intersection
+     * @param entryStep   step at which it entered the network
+     */
+    record Transit(String id, VehicleType type, int destination, Direction exit,
+                   int arrivalStep, int entryStep) {
+    }
+
+    /**
+     * Road from one intersection to the next, identified by the upstream
+     * intersection and the direction it leaves that one by.
+     */
+    static final class Edge {
+        final int from;
+        final Direction direction;
+        final int to;
+        /** Road of the downstream intersection the vehicles join. */
+        final Direction side;
+        final SpscRingBuffer<Transit> queue;
+
+        Edge(int from, Direction direction, int to, int capacity) {
+            this.from = from;
+            this.direction = direction;
+            this.to = to;
+            this.side = direction.opposite();
+            this.queue = new SpscRingBuffer<>(capacity);
+        }
+    }
+
+    /**
+     * One intersection of the network with the routes of the vehicles queued
+     * on it, kept in arrays indexed by registry handle.
+     */
+    public final class Node {
+        private final int index;
+        private final Intersection intersection;
+        private final VehicleRegistry vehicles;
+        private final Edge[] incoming = new Edge[DIRECTIONS.length];
+        private final Edge[] outgoing = new Edge[DIRECTIONS.length];
+        private int[] destinations = new int[16];
+        private byte[] exits = new byte[16];
+        private int[] entrySteps = new int[16];
+        /** Step this intersection is in, or about to simulate between steps. */
+        private int clock;
+
+        private long entered;
+        private long exited;
+        private long tripTime;
+        private long passages;
+        private long waitTime;
+        private int maxWait;
+
+        private Node(int index, Intersection intersection) {
+            this.index = index;
+            this.intersection = intersection;
+            this.vehicles = intersection.getVehicles();
+        }
+
+        /**
+         * Let a vehicle enter the network at this intersection in the current
+         * step, either between runs or from the {@link Demand} during one.
+         *
+         * @param start       road the vehicle arrives by
+         * @param destination index of the intersection the vehicle heads for
+         * @param exit        road by which it leaves the network there,
+         *                    which must lead out of the grid
+         * @throws IllegalArgumentException if the route is invalid
+         */
+        public void addVehicle(String id, Direction start, int destination, Direction exit, VehicleType type) {
+            if (destination < 0 || destination >= width * height) {
+                throw new IllegalArgumentException("No intersection " + destination);
+            }
+            if (!Network.this.isBoundary(destination, exit)) {
+                throw new IllegalArgumentException("Exit " + exit + " of intersection " + destination
+                        + " does not leave the network");
+            }
+            admit(id, type, start, destination, exit, clock, clock);
+            entered++;
+        }
+
+        private void admit(String id, VehicleType type, Direction start, int destination, Direction exit,
+                           int step, int entryStep) {
+            Direction end = heading(index, destination, exit);
+            if (end == start) {
+                throw new IllegalArgumentException("Vehicle " + id + " would turn back at intersection " + index);
+            }
+            int handle = vehicles.register(id, step, start, end, type);
+            if (handle >= destinations.length) {
+                int size = Math.max(handle + 1, destinations.length * 2);
+                destinations = Arrays.copyOf(destinations, size);
+                exits = Arrays.copyOf(exits, size);
+                entrySteps = Arrays.copyOf(entrySteps, size);
+            }
+            destinations[handle] = destination;
+            exits[handle] = (byte) exit.ordinal();
+            entrySteps[handle] = entryStep;
+            intersection.addVehicle(handle);
+        }
+
+        /**
+         * Admit the vehicles due from upstream, generate new ones, advance
+         * the intersection and hand departures on to the next roads.
+         */
+        private void step(int step) {
+            clock = step;
+            for (Edge edge : incoming) {
+                if (edge == null) continue;
+                for (Transit t = edge.queue.peek(); t != null && t.arrivalStep() <= step; t = edge.queue.peek()) {
+                    edge.queue.poll();
+                    admit(t.id(), t.type(), edge.side, t.destination(), t.exit(), step, t.entryStep());
+                }
+            }
+            if (demand != null) {
+                demand.generate(this, step);
+            }
+
+            int count = intersection.advance();
+            int[] departed = intersection.getDepartedHandles();
+            for (int i = 0; i < count; i++) {
+                int handle = departed[i];
+                int wait = (step + 1) - vehicles.arrivalStep(handle);
+                passages++;
+                waitTime += wait;
+                if (wait > maxWait) maxWait = wait;
+                Edge next = outgoing[vehicles.end(handle).ordinal()];
+                if (next == null) {
+                    exited++;
+                    tripTime += (step + 1) - entrySteps[handle];
+                } else {
+                    next.queue.put(new Transit(vehicles.id(handle), vehicles.type(handle), destinations[handle],
+                            DIRECTIONS[exits[handle]], step + travelTime, entrySteps[handle]));
+                }
+                vehicles.release(handle);
+            }
+            clock = step + 1;
+        }
+
+        /**
+         * @return position in {@link Network#getNodes()}
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public int getX() {
+            return index % width;
+        }
+
+        public int getY() {
+            return index / width;
+        }
+
+        public Intersection getIntersection() {
+            return intersection;
+        }
+
+        /**
+         * @return whether road {@code d} leads out of the network
+         */
+        public boolean isBoundary(Direction d) {
+            return Network.this.isBoundary(index, d);
+        }
+
+        /**
+         * @return number of vehicles that passed this intersection
+         */
+        public long getPassages() {
+            return passages;
+        }
+
+        /**
+         * @return total steps vehicles waited at this intersection
+         */
+        public long getWaitTime() {
+            return waitTime;
+        }
+
+        /**
+         * @return number of vehicles queued at this intersection
+         */
+        public int getQueued() {
+            return vehicles.size();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package sim;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Command line driver simulating a grid or corridor of intersections under
+ * random demand and reporting throughput in intersection steps per second.
+ */
+public class NetworkRunner {
+    private static final int SCALING_ROUNDS = 5;
+
+    private NetworkRunner() {
+    }
+
+    /**
+     * Demand letting a vehicle enter on every road leading into the network
+     * with probability {@code rate} per step, bound for a random exit road of
+     * the network. Each intersection draws from its own generator split off
+     * {@code seed}, so the vehicles generated do not depend on which thread
+     * or process advances the intersection.
+     */
+    public static Network.Demand randomDemand(Network network, double rate, long seed) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Invalid arrival rate: " + rate);
+        }
+        int size = network.getWidth() * network.getHeight();
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] random = new SplittableRandom[size];
+        long[] counters = new long[size];
+        List<Integer> exitNodes = new ArrayList<>();
+        List<Direction> exits = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            random[i] = root.split();
+            for (Direction d : Direction.values()) {
+                if (network.isBoundary(i, d)) {
+                    exitNodes.add(i);
+                    exits.add(d);
+                }
+            }
+        }
+        return (node, step) -> {
+            SplittableRandom r = random[node.getIndex()];
+            for (Direction start : Direction.values()) {
+                if (!node.isBoundary(start) || r.nextDouble() >= rate) continue;
+                int exit;
+                do {
+                    exit = r.nextInt(exits.size());
+                } while (exitNodes.get(exit) == node.getIndex() && exits.get(exit) == start);
+                node.addVehicle("n" + node.getIndex() + "-" + counters[node.getIndex()]++, start,
+                        exitNodes.get(exit), exits.get(exit), VehicleType.NORMAL);
+            }
+        };
+    }
+
+    private static Network build(int width, int height, int travelTime, RunConfig config, double rate, long seed) {
+        Network network = Network.grid(width, height, travelTime, config);
+        network.setDemand(randomDemand(network, rate, seed));
+        return network;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.NetworkRunner [--width n] [--height n]"
+                    + " [--steps n] [--travel-time n] [--rate p] [--seed n] [--config config.json]"
+                    + " [--threads n] [--scaling true|false]");
+            return;
+        }
+        int width = 20;
+        int height = 1;
+        int steps = 1000;
+        int travelTime = 5;
+        double rate = 0.1;
+        long seed = 1;
+        String configFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean scaling = false;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--width" -> width = Integer.parseInt(args[i + 1]);
+                case "--height" -> height = Integer.parseInt(args[i + 1]);
+                case "--steps" -> steps = Integer.parseInt(args[i + 1]);
+                case "--travel-time" -> travelTime = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--config" -> configFile = args[i + 1];
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--scaling" -> scaling = Boolean.parseBoolean(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (threads < 1) {
+            System.err.println("Invalid number of threads: " + threads);
+            return;
+        }
+
+        RunConfig config = RunConfig.of(configFile == null ? new Config() : Config.read(configFile), false);
+        Network network;
+        try {
+            network = build(width, height, travelTime, config, rate, seed);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        long start = System.nanoTime();
+        network.run(steps, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d intersections, %d steps on %d threads in %.2f s (%.0f intersection steps/s)%n",
+                network.getNodes().size(), steps, threads, seconds, network.getNodes().size() * steps / seconds);
+        System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(network.getStats()));
+        network.close();
+
+        if (scaling) {
+            reportScaling(width, height, travelTime, config, rate, seed, steps, threads);
+        }
+    }
+
+    /**
+     * Time fresh networks at 1, 2, 4, ... threads up to {@code maxThreads},
+     * taking turns over {@link #SCALING_ROUNDS} rounds and keeping the best
+     * time of each count, and print the speedup relative to one thread.
+     */
+    private static void reportScaling(int width, int height, int travelTime, RunConfig config, double rate,
+                                      long seed, int steps, int maxThreads) {
+        System.out.printf("Scaling over %d steps (%d processors available):%n",
+                steps, Runtime.getRuntime().availableProcessors());
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(maxThreads);
+        double[] best = new double[counts.size()];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for (int round = 0; round < SCALING_ROUNDS; round++) {
+            for (int i = 0; i < counts.size(); i++) {
+                try (Network network = build(width, height, travelTime, config, rate, seed)) {
+                    long start = System.nanoTime();
+                    network.run(steps, counts.get(i));
+                    best[i] = Math.min(best[i], (System.nanoTime() - start) / 1e9);
+                }
+            }
+        }
+        for (int i = 0; i < counts.size(); i++) {
+            double speedup = best[0] / best[i];
+            System.out.printf("  %2d threads: %.2f s, speedup %.2f, efficiency %.0f%%%n",
+                    counts.get(i), best[i], speedup, 100 * speedup / counts.get(i));
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package sim;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Searches the parameter space of a {@link SweepRunner} by successive
+ * halving instead of evaluating the whole grid. A random sample of grid
+ * points is run on a short prefix of the scenario; the best {@code 1/eta} of
+ * them are promoted to a prefix {@code eta} times longer, and so on until the
+ * survivors run the full scenario. Each round runs its candidates in
+ * parallel on a {@link ForkJoinPool}.
+ *
+ * <p>Candidates are ranked by an {@link Objective}, a weighted sum of
+ * {@link SimulationEngine#getStats()} fields to minimise. The search stops
+ * early once its wall-clock or CPU time budget is spent; the best candidate
+ * of the longest round completed so far is then reported.</p>
+ */
+public class ParameterOptimizer {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Weighted sum of statistics to minimise, e.g.
+     * {@code averageWaitTime=1,maxWaitTime.left=0.1}. Fields are named as in
+     * the {@link SweepRunner} table; negative weights reward a field.
+     */
+    public record Objective(Map<String, Double> weights) {
+        public Objective {
+            if (weights.isEmpty()) {
+                throw new IllegalArgumentException("Objective has no terms");
+            }
+            weights = Map.copyOf(weights);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the text is not a list of
+         *                                  {@code field=weight} terms
+         */
+        public static Objective parse(String text) {
+            Map<String, Double> weights = new LinkedHashMap<>();
+            for (String term : text.split(",")) {
+                int eq = term.indexOf('=');
+                try {
+                    if (eq <= 0) throw new NumberFormatException();
+                    weights.put(term.substring(0, eq).trim(), Double.parseDouble(term.substring(eq + 1).trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Expected field=weight: " + term);
+                }
+            }
+            return new Objective(weights);
+        }
+
+        /**
+         * @throws IllegalArgumentException if a field is not a numeric
+         *                                  statistic
+         */
+        public double score(Map<String, Object> stats) {
+            Map<String, Object> flat = SweepRunner.flatten(stats);
+            double score = 0.0;
+            for (Map.Entry<String, Double> term : weights.entrySet()) {
+                if (!(flat.get(term.getKey()) instanceof Number value)) {
+                    throw new IllegalArgumentException("Unknown statistic: " + term.getKey());
+                }
+                score += term.getValue() * value.doubleValue();
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Time limits of a search; {@code 0} means no limit.
+     */
+    public record Budget(long wallNanos, long cpuNanos) {
+        public static Budget unlimited() {
+            return new Budget(0, 0);
+        }
+    }
+
+    /**
+     * A candidate and its score on the first {@code steps} steps.
+     */
+    public record Candidate(Map<String, Double> parameters, double score, long steps) {
+    }
+
+    /**
+     * One halving round.
+     *
+     * @param steps      scenario prefix the candidates ran on
+     * @param candidates number of candidates that finished within the budget
+     * @param best       best of them
+     */
+    public record Round(long steps, int candidates, Candidate best) {
+    }
+
+    /**
+     * Result of a search.
+     *
+     * @param best        best candidate of the longest round completed
+     * @param baseline    the base configuration on the full scenario
+     * @param rounds      rounds that finished at least one candidate, in order
+     * @param evaluations number of runs, the baseline included
+     * @param complete    whether the search finished within its budget
+     */
+    public record Outcome(Candidate best, Candidate baseline, List<Round> rounds, int evaluations,
+                          boolean complete, double wallSeconds, double cpuSeconds) {
+        public Outcome {
+            rounds = List.copyOf(rounds);
+        }
+    }
+
+    private final Path scenario;
+    private final Supplier<Config> base;
+    private final List<SweepRunner.Parameter> parameters;
+    private final SweepRunner grid;
+    private final Objective objective;
+    private final long totalSteps;
+
+    /**
+     * @param scenario   compiled scenario, see {@link ScenarioCache}
+     * @param base       supplier of a fresh copy of the configuration the
+     *                   parameters are applied to
+     * @param parameters parameters to tune and the values they may take
+     * @param objective  what to minimise
+     * @throws IllegalArgumentException if the objective names unknown
+     *                                  statistics
+     */
+    public ParameterOptimizer(Path scenario, Supplier<Config> base, List<SweepRunner.Parameter> parameters,
+                              Objective objective) throws IOException {
+        this.scenario = scenario;
+        this.base = base;
+        this.parameters = List.copyOf(parameters);
+        this.grid = new SweepRunner(scenario, base, parameters);
+        this.objective = objective;
+        this.totalSteps = countSteps(scenario);
+        try (SimulationEngine engine = engine(RunConfig.of(base.get(), false))) {
+            objective.score(engine.getStats());
+        }
+    }
+
+    /**
+     * Engine for one run, with the controller every candidate is scored with,
+     * so the statistics include the per-phase entries.
+     */
+    private static SimulationEngine engine(RunConfig config) {
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        return new SimulationEngine(intersection, new DiscardResultSink());
+    }
+
+    private static long countSteps(Path scenario) throws IOException {
+        long steps = 0;
+        try (ScenarioFile file = ScenarioFile.open(scenario)) {
+            while (file.hasNext()) {
+                if (file.next() instanceof Command.Step step) {
+                    steps += step.count();
+                }
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * @return number of steps of the full scenario
+     */
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    /**
+     * Run the search.
+     *
+     * @param pool       pool running the candidates of a round
+     * @param candidates number of grid points sampled for the first round;
+     *                   the whole grid if it is smaller
+     * @param eta        reduction factor between rounds, at least 2
+     * @param budget     time limits
+     * @param seed       seed of the candidate sample
+     */
+    public Outcome optimize(ForkJoinPool pool, int candidates, int eta, Budget budget, long seed) {
+        if (candidates < 1 || eta < 2) {
+            throw new IllegalArgumentException("Invalid search: " + candidates + " candidates, eta " + eta);
+        }
+        if (budget.cpuNanos() > 0 && !THREADS.isCurrentThreadCpuTimeSupported()) {
+            throw new IllegalArgumentException("CPU time is not measurable on this JVM");
+        }
+        Search search = new Search(budget);
+        List<Map<String, Double>> survivors = sample(candidates, new Random(seed));
+
+        Candidate baseline = search.evaluate(pool, List.of(Map.of()), totalSteps).get(0);
+        int rounds = 1;
+        while (Math.pow(eta, rounds) <= survivors.size()) rounds++;
+
+        Candidate best = null;
+        List<Round> completed = new ArrayList<>();
+        boolean complete = baseline != null;
+        for (int round = 0; round < rounds && complete; round++) {
+            long steps = Math.max(1, (long) Math.ceil(totalSteps / Math.pow(eta, rounds - 1 - round)));
+            List<Candidate> scored = new ArrayList<>();
+            for (Candidate c : search.evaluate(pool, survivors, steps)) {
+                if (c == null) {
+                    complete = false;
+                } else {
+                    scored.add(c);
+                }
+            }
+            if (scored.isEmpty()) break;
+            scored.sort(Comparator.comparingDouble(Candidate::score));
+            best = scored.get(0);
+            completed.add(new Round(steps, scored.size(), best));
+            int keep = Math.max(1, scored.size() / eta);
+            survivors = new ArrayList<>();
+            for (Candidate c : scored.subList(0, keep)) {
+                survivors.add(c.parameters());
+            }
+        }
+        return new Outcome(best, baseline, completed, search.evaluations.intValue(), complete,
+                (System.nanoTime() - search.start) / 1e9, search.cpuNanos.get() / 1e9);
+    }
+
+    /**
+     * Distinct grid points chosen at random, or the whole grid if it has at
+     * most {@code count} points.
+     */
+    private List<Map<String, Double>> sample(int count, Random random) {
+        int size = grid.size();
+        List<Map<String, Double>> points = new ArrayList<>();
+        if (size <= count) {
+            for (int i = 0; i < size; i++) {
+                points.add(grid.point(i));
+            }
+            return points;
+        }
+        Set<Integer> chosen = new HashSet<>();
+        while (points.size() < count) {
+            int index = random.nextInt(size);
+            if (chosen.add(index)) {
+                points.add(grid.point(index));
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return the base configuration with the parameters of {@code point}
+     */
+    public Config configOf(Map<String, Double> point) {
+        return SweepRunner.apply(base.get(), point.isEmpty() ? List.of() : parameters, point);
+    }
+
+    /**
+     * Time accounting of one search.
+     */
+    private final class Search {
+        private final long start = System.nanoTime();
+        private final long deadline;
+        private final long cpuBudget;
+        private final AtomicLong cpuNanos = new AtomicLong();
+        private final AtomicLong evaluations = new AtomicLong();
+
+        Search(Budget budget) {
+            this.deadline = budget.wallNanos() > 0 ? start + budget.wallNanos() : 0;
+            this.cpuBudget = budget.cpuNanos();
+        }
+
+        private boolean exhausted(long taskCpu) {
+            return (deadline != 0 && System.nanoTime() - deadline > 0)
+                    || (cpuBudget > 0 && cpuNanos.get() + taskCpu > cpuBudget);
+        }
+
+        /**
+         * Score the given points on the first {@code steps} steps.
+         *
+         * @return candidates in point order, {@code null} where the budget ran
+         * out before the run finished
+         */
+        List<Candidate> evaluate(ForkJoinPool pool, List<Map<String, Double>> points, long steps) {
+            List<Callable<Candidate>> tasks = new ArrayList<>(points.size());
+            for (Map<String, Double> point : points) {
+                RunConfig config = RunConfig.of(configOf(point), false);
+                tasks.add(() -> run(point, config, steps));
+            }
+            List<Candidate> results = new ArrayList<>(points.size());
+            for (Future<Candidate> future : pool.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Search interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Candidate run failed", e.getCause());
+                }
+            }
+            return results;
+        }
+
+        private Candidate run(Map<String, Double> point, RunConfig config, long steps) throws IOException {
+            long cpuStart = cpuTime();
+            if (exhausted(0)) return null;
+            long done = 0;
+            boolean finished = true;
+            try (SimulationEngine engine = engine(config)) {
+                try (ScenarioFile file = ScenarioFile.open(scenario)) {
+                    while (done < steps && file.hasNext()) {
+                        Command command = file.next();
+                        if (command instanceof Command.Step step) {
+                            if (exhausted(cpuTime() - cpuStart)) {
+                                finished = false;
+                                break;
+                            }
+                            int n = (int) Math.min(step.count(), steps - done);
+                            engine.step(n);
+                            done += n;
+                        } else {
+                            engine.execute(command);
+                        }
+                    }
+                } finally {
+                    cpuNanos.addAndGet(cpuTime() - cpuStart);
+                }
+                if (!finished) return null;
+                engine.finish();
+                evaluations.incrementAndGet();
+                return new Candidate(point, objective.score(engine.getStats()), steps);
+            }
+        }
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.ParameterOptimizer input.json best_config.json"
+                    + " --vary alpha=0.5:4:0.5 [--vary ...] [--objective averageWaitTime=1]"
+                    + " [--config config.json] [--candidates 81] [--eta 3] [--budget-seconds s]"
+                    + " [--cpu-seconds s] [--threads n] [--seed n] [--cache-dir dir]");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        List<SweepRunner.Parameter> parameters = new ArrayList<>();
+        Objective objective = Objective.parse("averageWaitTime=1");
+        String configFile = null;
+        int candidates = 81;
+        int eta = 3;
+        double budgetSeconds = 0;
+        double cpuSeconds = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        Path cacheDir = ScenarioCache.defaultDirectory();
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--vary" -> parameters.add(SweepRunner.Parameter.parse(value));
+                    case "--objective" -> objective = Objective.parse(value);
+                    case "--config" -> configFile = value;
+                    case "--candidates" -> candidates = Integer.parseInt(value);
+                    case "--eta" -> eta = Integer.parseInt(value);
+                    case "--budget-seconds" -> budgetSeconds = Double.parseDouble(value);
+                    case "--cpu-seconds" -> cpuSeconds = Double.parseDouble(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--cache-dir" -> cacheDir = Path.of(value);
+                    default -> {
+                        System.err.println("Unknown option: " + args[i]);
+                        return;
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        if (parameters.isEmpty() || threads < 1) {
+            System.err.println(parameters.isEmpty() ? "Nothing to optimise; give --vary" : "Invalid number of threads");
+            return;
+        }
+
+        String baseFile = configFile;
+        Supplier<Config> base = () -> {
+            try {
+                return baseFile == null ? new Config() : Config.read(baseFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        Path compiled = ScenarioFile.isCompiled(input) ? input : new ScenarioCache(cacheDir).compiled(input);
+        ParameterOptimizer optimizer;
+        try {
+            optimizer = new ParameterOptimizer(compiled, base, parameters, objective);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        Budget budget = new Budget((long) (budgetSeconds * TimeUnit.SECONDS.toNanos(1)),
+                (long) (cpuSeconds * TimeUnit.SECONDS.toNanos(1)));
+
+        Outcome outcome;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            outcome = optimizer.optimize(pool, candidates, eta, budget, seed);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < outcome.rounds().size(); i++) {
+            Round round = outcome.rounds().get(i);
+            System.out.printf("Round %d: %d candidates on %d steps, best %.4f %s%n", i + 1, round.candidates(),
+                    round.steps(), round.best().score(), round.best().parameters());
+        }
+        System.out.printf("%d runs in %.1f s wall, %.1f s CPU%s%n", outcome.evaluations(), outcome.wallSeconds(),
+                outcome.cpuSeconds(), outcome.complete() ? "" : " (budget exhausted)");
+        if (outcome.baseline() != null) {
+            System.out.printf("Base configuration: %.4f%n", outcome.baseline().score());
+        }
+        if (outcome.best() == null) {
+            System.err.println("Budget exhausted before any candidate finished");
+            return;
+        }
+        System.out.printf("Best: %.4f on %d of %d steps %s%n", outcome.best().score(), outcome.best().steps(),
+                optimizer.getTotalSteps(), outcome.best().parameters());
+        Map<String, Double> chosen = outcome.best().parameters();
+        if (outcome.baseline() != null && outcome.best().steps() == optimizer.getTotalSteps()
+                && outcome.baseline().score() <= outcome.best().score()) {
+            System.out.println("No candidate beats the base configuration, keeping it");
+            chosen = Map.of();
+        }
+        new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValue(FileStreams.openOutput(output), optimizer.configOf(chosen));
+    }
+}
@@ -0,0 +1,251 @@
+package sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * {@link Network.Exchange} shipping vehicles to and from the networks holding
+ * the neighbouring parts of a grid in other processes. After every step one
+ * {@code STEP} frame goes to every peer, holding the vehicles that left
+ * towards it, and one is awaited from every peer; as peers do the same, the
+ * exchange doubles as the step barrier between processes. Channels are
+ * multiplexed on a {@link Selector}, so large frames flowing both ways
+ * cannot deadlock.
+ *
+ * <p>Frames are a length, a type byte and the payload, see
+ * {@link DistributedNetwork}. A {@code STEP} payload is the step and the
+ * number of vehicles, then per vehicle the upstream intersection and
+ * direction of its road, its id as UTF-8 bytes after their length, its type,
+ * destination intersection, exit road, and arrival and entry steps.</p>
+ */
+final class PeerExchange implements Network.Exchange {
+    private static final int TRANSIT_BYTES = 4 + 1 + 2 + 1 + 4 + 1 + 4 + 4;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+
+    private final Selector selector;
+    private final List<Peer> peers = new ArrayList<>();
+    /** Imported roads by {@link #key upstream intersection and direction}. */
+    private final Map<Long, Network.Edge> imports = new HashMap<>();
+    private long exchangeNanos;
+    private long bytesSent;
+    private long bytesReceived;
+
+    private static final class Peer {
+        final int partition;
+        final SocketChannel channel;
+        final List<Network.Edge> exports = new ArrayList<>();
+        ByteBuffer out = ByteBuffer.allocate(0);
+        ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        boolean received;
+
+        Peer(int partition, SocketChannel channel) {
+            this.partition = partition;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * @param network  part of the grid held by this process
+     * @param channels connected channels by peer partition
+     * @param owner    partition holding a given intersection
+     */
+    PeerExchange(Network network, Map<Integer, SocketChannel> channels, IntUnaryOperator owner) throws IOException {
+        this.selector = Selector.open();
+        Map<Integer, Peer> byPartition = new HashMap<>();
+        for (Map.Entry<Integer, SocketChannel> entry : channels.entrySet()) {
+            Peer peer = new Peer(entry.getKey(), entry.getValue());
+            entry.getValue().configureBlocking(false);
+            entry.getValue().register(selector, 0, peer);
+            byPartition.put(entry.getKey(), peer);
+            peers.add(peer);
+        }
+        for (Network.Edge edge : network.getExports()) {
+            Peer peer = byPartition.get(owner.applyAsInt(edge.to));
+            if (peer == null) {
+                throw new IllegalArgumentException("No channel to partition " + owner.applyAsInt(edge.to));
+            }
+            peer.exports.add(edge);
+        }
+        for (Network.Edge edge : network.getImports()) {
+            imports.put(key(edge.from, edge.direction), edge);
+        }
+    }
+
+    private static long key(int from, Direction direction) {
+        return (long) from * DIRECTIONS.length + direction.ordinal();
+    }
+
+    @Override
+    public void afterStep(int step) {
+        long start = System.nanoTime();
+        try {
+            int pending = 0;
+            for (Peer peer : peers) {
+                peer.out = encode(step, peer.exports);
+                peer.received = receive(peer, step);
+                if (peer.out.hasRemaining() || !peer.received) pending++;
+            }
+            while (pending > 0) {
+                for (Peer peer : peers) {
+                    peer.channel.keyFor(selector).interestOps((peer.out.hasRemaining() ? SelectionKey.OP_WRITE : 0)
+                            | (peer.received ? 0 : SelectionKey.OP_READ));
+                }
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Peer peer = (Peer) key.attachment();
+                    boolean wasPending = peer.out.hasRemaining() || !peer.received;
+                    if (key.isWritable()) {
+                        bytesSent += peer.channel.write(peer.out);
+                    }
+                    if (key.isReadable()) {
+                        if (!peer.in.hasRemaining()) {
+                            peer.in = grow(peer.in, peer.in.capacity() * 2);
+                        }
+                        int read = peer.channel.read(peer.in);
+                        if (read < 0) {
+                            throw new IOException("Partition " + peer.partition + " closed the connection");
+                        }
+                        bytesReceived += read;
+                        peer.received = receive(peer, step);
+                    }
+                    if (wasPending && !peer.out.hasRemaining() && peer.received) pending--;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            exchangeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Drain the roads towards one peer into a {@code STEP} frame.
+     */
+    private static ByteBuffer encode(int step, List<Network.Edge> exports) {
+        List<Network.Transit> transits = new ArrayList<>();
+        List<Network.Edge> roads = new ArrayList<>();
+        List<byte[]> ids = new ArrayList<>();
+        int size = 1 + 4 + 4;
+        for (Network.Edge edge : exports) {
+            for (Network.Transit t = edge.queue.poll(); t != null; t = edge.queue.poll()) {
+                byte[] id = t.id() == null ? null : t.id().getBytes(StandardCharsets.UTF_8);
+                transits.add(t);
+                roads.add(edge);
+                ids.add(id);
+                size += TRANSIT_BYTES + (id == null ? 0 : id.length);
+            }
+        }
+        ByteBuffer frame = ByteBuffer.allocate(4 + size);
+        frame.putInt(size).put(DistributedNetwork.STEP).putInt(step).putInt(transits.size());
+        for (int i = 0; i < transits.size(); i++) {
+            Network.Transit t = transits.get(i);
+            byte[] id = ids.get(i);
+            frame.putInt(roads.get(i).from).put((byte) roads.get(i).direction.ordinal());
+            frame.putShort((short) (id == null ? -1 : id.length));
+            if (id != null) frame.put(id);
+            frame.put((byte) t.type().ordinal()).putInt(t.destination()).put((byte) t.exit().ordinal())
+                    .putInt(t.arrivalStep()).putInt(t.entryStep());
+        }
+        return frame.flip();
+    }
+
+    /**
+     * Decode the peer's frame for {@code step} if it has fully arrived,
+     * queuing its vehicles on the imported roads. Bytes of later frames stay
+     * buffered.
+     *
+     * @return whether the frame was complete
+     */
+    private boolean receive(Peer peer, int step) throws IOException {
+        ByteBuffer in = peer.in.flip();
+        try {
+            if (in.remaining() < 4) return false;
+            int size = in.getInt(in.position());
+            if (in.remaining() < 4 + size) {
+                if (4 + size > in.capacity()) {
+                    in.compact();
+                    peer.in = grow(peer.in, 4 + size);
+                    return false;
+                }
+                return false;
+            }
+            in.getInt();
+            byte type = in.get();
+            int frameStep = in.getInt();
+            if (type != DistributedNetwork.STEP || frameStep != step) {
+                throw new IOException("Expected step " + step + " from partition " + peer.partition
+                        + ", got frame " + type + " for step " + frameStep);
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                int from = in.getInt();
+                Direction direction = DIRECTIONS[in.get()];
+                int length = in.getShort();
+                String id = null;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    in.get(bytes);
+                    id = new String(bytes, StandardCharsets.UTF_8);
+                }
+                Network.Transit transit = new Network.Transit(id, VEHICLE_TYPES[in.get()], in.getInt(),
+                        DIRECTIONS[in.get()], in.getInt(), in.getInt());
+                Network.Edge edge = imports.get(key(from, direction));
+                if (edge == null) {
+                    throw new IOException("Partition " + peer.partition + " sent a vehicle on unknown road "
+                            + from + " " + direction);
+                }
+                edge.queue.put(transit);
+            }
+            return true;
+        } finally {
+            if (peer.in == in) in.compact();
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * @return time spent exchanging frames, waiting for slower peers included
+     */
+    long getExchangeNanos() {
+        return exchangeNanos;
+    }
+
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Close the selector and every peer channel.
+     */
+    void close() throws IOException {
+        selector.close();
+        for (Peer peer : peers) {
+            peer.channel.close();
+        }
+    }
+}
@@ -28,6 +28,18 @@ public class Phase {
     }
 
 
+    /**
+     * Take over the timer and statistics of another phase, e.g. the
+     * corresponding phase of a forked controller.
+     */
+    void copyStateFrom(Phase other) {
+        timeGreen = other.timeGreen;
+        timesActivated = other.timesActivated;
+        totalDuration = other.totalDuration;
+        totalWaitTime = other.totalWaitTime;
+        vehiclesPassed = other.vehiclesPassed;
+    }
+
     public void resetTimer() {
         timeGreen = 0;
     }
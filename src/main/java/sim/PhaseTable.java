@@ -0,0 +1,111 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled form of a {@link Geometry}: its lanes by index, their conflict
+ * matrix and the phases, i.e. the maximal sets of lanes that may be green
+ * together. Phases are the maximal cliques of the compatibility graph,
+ * enumerated with Bron–Kerbosch over lane bitmasks.
+ *
+ * <p>Tables are immutable and cached by lane layout and conflict matrix, so
+ * repeated runs and intersections sharing a geometry compile it once.</p>
+ *
+ * <p>Phases are ordered by their lanes, straight lanes before left turns
+ * before right turns and then by road in {@link Direction} order. For the
+ * default geometry this gives the classic order: north–south straight,
+ * east–west straight, north–south left, east–west left.</p>
+ */
+public final class PhaseTable {
+    private static final Map<Key, PhaseTable> CACHE = new ConcurrentHashMap<>();
+    private static final List<LaneType> PHASE_ORDER = List.of(LaneType.STRAIGHT, LaneType.LEFT, LaneType.RIGHT);
+
+    private record Key(List<Geometry.LaneKey> lanes, ConflictMatrix conflicts) {
+    }
+
+    private final List<Geometry.LaneKey> lanes;
+    private final ConflictMatrix conflicts;
+    private final long[] phases;
+
+    private PhaseTable(List<Geometry.LaneKey> lanes, ConflictMatrix conflicts) {
+        this.lanes = List.copyOf(lanes);
+        this.conflicts = conflicts;
+        List<Long> cliques = new ArrayList<>();
+        long all = lanes.size() == SignalBank.MAX_SIGNALS ? -1L : (1L << lanes.size()) - 1;
+        long[] compatible = new long[lanes.size()];
+        for (int i = 0; i < compatible.length; i++) {
+            compatible[i] = all & ~conflicts.conflictsOf(i) & ~(1L << i);
+        }
+        enumerate(compatible, 0L, all, 0L, cliques);
+        cliques.sort(Comparator.comparing(this::sortKey, Arrays::compare));
+        this.phases = cliques.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return the compiled table of {@code geometry}, shared with every
+     * geometry of the same layout and conflicts
+     * @throws IllegalArgumentException if the geometry is invalid
+     */
+    public static PhaseTable of(Geometry geometry) {
+        Key key = new Key(geometry.lanes(), geometry.conflictMatrix());
+        return CACHE.computeIfAbsent(key, k -> new PhaseTable(k.lanes(), k.conflicts()));
+    }
+
+    /**
+     * Bron–Kerbosch with pivoting. {@code r} is the clique being built,
+     * {@code p} the lanes that may still extend it and {@code x} those already
+     * covered by earlier cliques.
+     */
+    private static void enumerate(long[] compatible, long r, long p, long x, List<Long> out) {
+        if (p == 0) {
+            if (x == 0 && r != 0) out.add(r);
+            return;
+        }
+        int pivot = Long.numberOfTrailingZeros(p | x);
+        for (long m = p & ~compatible[pivot]; m != 0; m &= m - 1) {
+            int v = Long.numberOfTrailingZeros(m);
+            long bit = 1L << v;
+            enumerate(compatible, r | bit, p & compatible[v], x & compatible[v], out);
+            p &= ~bit;
+            x |= bit;
+        }
+    }
+
+    private int[] sortKey(long phase) {
+        int[] key = new int[Long.bitCount(phase)];
+        int n = 0;
+        for (long m = phase; m != 0; m &= m - 1) {
+            Geometry.LaneKey lane = lanes.get(Long.numberOfTrailingZeros(m));
+            key[n++] = PHASE_ORDER.indexOf(lane.type()) * Direction.values().length + lane.start().ordinal();
+        }
+        Arrays.sort(key);
+        return key;
+    }
+
+    /**
+     * @return lanes of the intersection by index
+     */
+    public List<Geometry.LaneKey> getLanes() {
+        return lanes;
+    }
+
+    public ConflictMatrix getConflicts() {
+        return conflicts;
+    }
+
+    public int getPhaseCount() {
+        return phases.length;
+    }
+
+    /**
+     * @return bitmask of the lanes green in phase {@code index}
+     */
+    public long getPhase(int index) {
+        return phases[index];
+    }
+}
@@ -0,0 +1,262 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a simulation as three pipelined stages on separate threads: a parser
+ * thread decoding commands, the calling thread executing them on a
+ * {@link SimulationEngine}, and a writer thread passing step results to the
+ * output sink. Stages exchange batches through bounded
+ * {@link SpscRingBuffer}s. The engine itself still runs on one thread, so
+ * results are identical to a sequential run.
+ */
+public class PipelinedRunner {
+    /** Default number of commands or steps per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    /** Default number of batches buffered between two stages. */
+    public static final int DEFAULT_RING_CAPACITY = 64;
+
+    private static final Command[] END_OF_COMMANDS = new Command[0];
+
+    private final int batchSize;
+    private final int ringCapacity;
+    private final List<StageStats> stageStats = new ArrayList<>();
+
+    /**
+     * Throughput figures of one pipeline stage.
+     *
+     * @param stage        stage name
+     * @param items        number of items the stage processed
+     * @param unit         what an item is, e.g. {@code commands}
+     * @param elapsedNanos wall time from stage start to end
+     * @param stallNanos   time spent waiting on a full output or empty input
+     */
+    public record StageStats(String stage, long items, String unit, long elapsedNanos, long stallNanos) {
+        public double itemsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : items * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %,14d %-9s %8.3f s %,14.0f/s  stalled %8.3f s (%4.1f%%)",
+                    stage, items, unit, elapsedNanos / 1e9, itemsPerSecond(),
+                    stallNanos / 1e9, elapsedNanos == 0 ? 0.0 : 100.0 * stallNanos / elapsedNanos);
+        }
+    }
+
+    public PipelinedRunner() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * @param batchSize    commands or steps handed over per ring slot
+     * @param ringCapacity batches buffered between two stages
+     */
+    public PipelinedRunner(int batchSize, int ringCapacity) {
+        this.batchSize = batchSize;
+        this.ringCapacity = ringCapacity;
+    }
+
+    /**
+     * Execute all commands against the intersection, writing step statuses to
+     * the output sink. The iterator is consumed on the parser thread and the
+     * sink is only used by the writer thread; neither is closed.
+     *
+     * @return engine holding the statistics of the finished run
+     */
+    public SimulationEngine run(Iterator<? extends Command> commands, Intersection intersection, ResultSink output) {
+        SpscRingBuffer<Command[]> commandRing = new SpscRingBuffer<>(ringCapacity);
+        SpscRingBuffer<StepBatch> resultRing = new SpscRingBuffer<>(ringCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] parsed = new long[1];
+        long[] parseNanos = new long[1];
+        long[] written = new long[1];
+        long[] writeNanos = new long[1];
+
+        Thread parser = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                Command[] batch = new Command[batchSize];
+                int n = 0;
+                while (commands.hasNext()) {
+                    batch[n++] = commands.next();
+                    if (n == batchSize) {
+                        commandRing.put(batch);
+                        parsed[0] += n;
+                        batch = new Command[batchSize];
+                        n = 0;
+                    }
+                }
+                if (n > 0) {
+                    commandRing.put(Arrays.copyOf(batch, n));
+                    parsed[0] += n;
+                }
+                commandRing.put(END_OF_COMMANDS);
+            } catch (Throwable t) {
+                fail(failure, t, commandRing, resultRing);
+            }
+            parseNanos[0] = System.nanoTime() - start;
+        }, "sim-parser");
+
+        Thread writer = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                StepBatch batch;
+                while (!(batch = resultRing.take()).last) {
+                    batch.replay(output);
+                    written[0] += batch.stepCount;
+                }
+            } catch (Throwable t) {
+                fail(failure, t, commandRing, resultRing);
+            }
+            writeNanos[0] = System.nanoTime() - start;
+        }, "sim-writer");
+
+        parser.start();
+        writer.start();
+
+        long simStart = System.nanoTime();
+        BatchingSink batching = new BatchingSink(resultRing);
+        SimulationEngine engine = new SimulationEngine(intersection, batching);
+        try {
+            Command[] batch;
+            while ((batch = commandRing.take()) != END_OF_COMMANDS) {
+                for (Command command : batch) {
+                    engine.execute(command);
+                }
+            }
+            engine.finish();
+            batching.flush(true);
+        } catch (Throwable t) {
+            fail(failure, t, commandRing, resultRing);
+        }
+        long simNanos = System.nanoTime() - simStart;
+
+        join(parser);
+        join(writer);
+
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException re) throw re;
+        if (error instanceof Error err) throw err;
+        if (error != null) throw new IllegalStateException("Pipelined run failed", error);
+
+        stageStats.clear();
+        stageStats.add(new StageStats("parse", parsed[0], "commands", parseNanos[0],
+                commandRing.getProducerStallNanos()));
+        stageStats.add(new StageStats("simulate", batching.steps, "steps", simNanos,
+                commandRing.getConsumerStallNanos() + resultRing.getProducerStallNanos()));
+        stageStats.add(new StageStats("write", written[0], "steps", writeNanos[0],
+                resultRing.getConsumerStallNanos()));
+        return engine;
+    }
+
+    /**
+     * @return per-stage throughput and stall times of the last run
+     */
+    public List<StageStats> getStageStats() {
+        return stageStats;
+    }
+
+    private static void fail(AtomicReference<Throwable> failure, Throwable t,
+                             SpscRingBuffer<?> commandRing, SpscRingBuffer<?> resultRing) {
+        failure.compareAndSet(null, t);
+        commandRing.abort();
+        resultRing.abort();
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Step statuses of consecutive steps: the ids of all departed vehicles and
+     * the end offset of each step within them.
+     */
+    private static final class StepBatch {
+        String[] ids;
+        final int[] stepEnds;
+        int idCount;
+        int stepCount;
+        final boolean last;
+
+        StepBatch(int steps, int ids, boolean last) {
+            this.ids = new String[ids];
+            this.stepEnds = new int[steps];
+            this.last = last;
+        }
+
+        void replay(ResultSink sink) {
+            int id = 0;
+            for (int s = 0; s < stepCount; s++) {
+                sink.beginStep();
+                for (int end = stepEnds[s]; id < end; id++) {
+                    sink.vehicleLeft(ids[id]);
+                }
+                sink.endStep();
+            }
+        }
+    }
+
+    /**
+     * Engine-side sink collecting step statuses into {@link StepBatch}es for
+     * the writer thread.
+     */
+    private final class BatchingSink implements ResultSink {
+        private final SpscRingBuffer<StepBatch> ring;
+        private StepBatch batch = newBatch(false);
+        long steps;
+
+        BatchingSink(SpscRingBuffer<StepBatch> ring) {
+            this.ring = ring;
+        }
+
+        private StepBatch newBatch(boolean last) {
+            return new StepBatch(batchSize, batchSize * 4, last);
+        }
+
+        @Override
+        public void beginStep() {
+        }
+
+        @Override
+        public void vehicleLeft(String vehicleId) {
+            if (batch.idCount == batch.ids.length) {
+                // grow rather than split a step across batches
+                batch.ids = Arrays.copyOf(batch.ids, batch.ids.length * 2);
+            }
+            batch.ids[batch.idCount++] = vehicleId;
+        }
+
+        @Override
+        public void endStep() {
+            batch.stepEnds[batch.stepCount++] = batch.idCount;
+            steps++;
+            if (batch.stepCount == batch.stepEnds.length || batch.idCount >= batch.ids.length - batchSize) {
+                flush(false);
+            }
+        }
+
+        void flush(boolean last) {
+            if (batch.stepCount > 0) {
+                ring.put(batch);
+                batch = newBatch(false);
+            }
+            if (last) {
+                ring.put(newBatch(true));
+            }
+        }
+    }
+}
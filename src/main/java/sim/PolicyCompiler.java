@@ -0,0 +1,384 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compiles the decisions of {@link ActuatedController} under the current
+ * {@link Config} into a {@link PolicyTable} for {@link PolicyTableController}.
+ *
+ * <p>Compilation has two passes. First every cell gets the decision the
+ * actuated policy makes for a representative state of the cell: bucket
+ * midpoints for queue lengths and idle times, and waiting times estimated
+ * from how long each lane has been red. Then the training scenarios are run
+ * with the actuated controller and every cell visited there takes the
+ * decision the controller made most often in it, which replaces the estimate
+ * for the states that actually occur.</p>
+ *
+ * <p>The tool reports how often the table agrees with the actuated
+ * controller along the actuated controller's own trajectory, the resulting
+ * average waiting times, and the cost of a decision of either controller.</p>
+ */
+public class PolicyCompiler {
+    private static final int BENCH_DECISIONS = 2_000_000;
+    /** Receives the benchmark's decisions so the JIT cannot drop the loop. */
+    private static volatile long benchmarkSink;
+
+    private final RunConfig cfg;
+    private final PhaseTable phaseTable;
+    private final List<Geometry.LaneKey> laneKeys;
+    private final PolicyTable table;
+
+    /**
+     * Create a compiler for the configuration in {@link Config#current}.
+     *
+     * @param queueThresholds bucket thresholds for lane queue lengths
+     * @param idleThresholds  bucket thresholds for steps since a phase was
+     *                        green
+     */
+    public PolicyCompiler(int[] queueThresholds, int[] idleThresholds) {
+        this(queueThresholds, idleThresholds, RunConfig.current());
+    }
+
+    /**
+     * @param queueThresholds bucket thresholds for lane queue lengths
+     * @param idleThresholds  bucket thresholds for steps since a phase was
+     *                        green
+     * @param config          configuration the table is compiled for
+     */
+    public PolicyCompiler(int[] queueThresholds, int[] idleThresholds, RunConfig config) {
+        this.cfg = config;
+        this.phaseTable = config.getPhaseTable();
+        this.laneKeys = phaseTable.getLanes();
+        this.table = new PolicyTable(phaseTable.getPhaseCount(), laneKeys.size(), queueThresholds, idleThresholds);
+    }
+
+    /**
+     * Default idle thresholds: half the fairness cap and the cap itself, so
+     * the fairness rule is exact.
+     */
+    public static int[] defaultIdleThresholds(int fairnessCap) {
+        int cap = Math.max(fairnessCap, 1);
+        return cap / 2 > 0 && cap / 2 < cap ? new int[]{cap / 2, cap} : new int[]{cap};
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> training = new ArrayList<>();
+        int i = 1;
+        while (i < args.length && !args[i].startsWith("--")) {
+            training.add(Path.of(args[i++]));
+        }
+        if (args.length < 2 || training.isEmpty() || (args.length - i) % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.PolicyCompiler table.policy scenario.json..."
+                    + " [--config config.json] [--eval scenario.json] [--queue-thresholds 1,3,8]"
+                    + " [--idle-thresholds 15,30]");
+            return;
+        }
+        Config config = Config.current;
+        List<Path> evaluation = new ArrayList<>();
+        int[] queueThresholds = {1, 3, 8};
+        int[] idleThresholds = null;
+        for (; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--config" -> config = Config.load(args[i + 1]);
+                case "--eval" -> evaluation.add(Path.of(args[i + 1]));
+                case "--queue-thresholds" -> queueThresholds = parseInts(args[i + 1]);
+                case "--idle-thresholds" -> idleThresholds = parseInts(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        RunConfig run = RunConfig.of(config, false);
+        if (idleThresholds == null) {
+            idleThresholds = defaultIdleThresholds(run.fairnessCap);
+        }
+
+        PolicyCompiler compiler = new PolicyCompiler(queueThresholds, idleThresholds, run);
+        long start = System.nanoTime();
+        int visited = compiler.compile(training);
+        PolicyTable table = compiler.getTable();
+        table.save(Path.of(args[0]));
+        System.out.printf("Compiled %d cells (%d visited in training) in %d ms%n",
+                table.size(), visited, (System.nanoTime() - start) / 1_000_000);
+
+        boolean inSample = evaluation.isEmpty();
+        Agreement agreement = compiler.measure(inSample ? training : evaluation);
+        System.out.printf("Agreement (%s): %.2f%% of %d decisions%n",
+                inSample ? "training scenarios" : "evaluation scenarios",
+                100.0 * agreement.rate(), agreement.decisions());
+        System.out.printf("Average wait: actuated %.2f, table %.2f%n",
+                agreement.actuatedWait(), agreement.tableWait());
+        System.out.printf("Decision cost: actuated %.1f ns, table %.1f ns%n",
+                compiler.nsPerDecision(false), compiler.nsPerDecision(true));
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    public PolicyTable getTable() {
+        return table;
+    }
+
+    /**
+     * Compile the table: fill every cell from the model, then override the
+     * cells visited in the training scenarios with the decision taken most
+     * often in them.
+     *
+     * @return number of cells visited in training
+     */
+    public int compile(List<Path> training) throws IOException {
+        int options = table.getPhaseCount() + 1;
+        Map<Integer, int[]> votes = new HashMap<>();
+        for (Path scenario : training) {
+            run(scenario, (cell, decision) -> votes.computeIfAbsent(cell, c -> new int[options])[decision + 1]++);
+        }
+        fillFromModel();
+        votes.forEach((cell, counts) -> {
+            int best = 0;
+            for (int o = 1; o < counts.length; o++) {
+                if (counts[o] > counts[best]) best = o;
+            }
+            table.setDecision(cell, best - 1);
+        });
+        return votes.size();
+    }
+
+    /**
+     * Set every cell to the actuated decision for a representative state:
+     * bucket midpoints for queue lengths and idle times, with vehicles on a
+     * lane having waited for half the time it has been red, or for the green
+     * time so far on lanes of the current phase.
+     */
+    private void fillFromModel() {
+        int phases = table.getPhaseCount();
+        int lanes = table.getLaneCount();
+        int queueRadix = table.queueRadix();
+        int idleRadix = table.idleRadix();
+        int[] queueThresholds = table.getQueueThresholds();
+        int[] idleThresholds = table.getIdleThresholds();
+        double[] lanePriority = new double[lanes];
+        for (int l = 0; l < lanes; l++) {
+            lanePriority[l] = cfg.getLanePriority(l);
+        }
+
+        int[] queueDigits = new int[lanes];
+        int[] otherIdle = new int[phases - 1];
+        int[] idleDigits = new int[phases];
+        double[] queue = new double[lanes];
+        double[] wait = new double[lanes];
+        int[] steps = new int[phases];
+        boolean[] occupied = new boolean[phases];
+        double[] pressures = new double[phases];
+        double[] priorities = new double[phases];
+        for (int cell = 0; cell < table.size(); cell++) {
+            // digits from least significant: idle buckets, lane buckets, max flag, phase
+            int rest = cell;
+            for (int d = otherIdle.length - 1; d >= 0; d--) {
+                otherIdle[d] = rest % idleRadix;
+                rest /= idleRadix;
+            }
+            for (int l = lanes - 1; l >= 0; l--) {
+                queueDigits[l] = rest % queueRadix;
+                rest /= queueRadix;
+            }
+            boolean maxReached = (rest & 1) != 0;
+            int current = rest >> 1;
+            for (int p = 0, d = 0; p < phases; p++) {
+                idleDigits[p] = p == current ? 0 : otherIdle[d++];
+                steps[p] = p == current ? 0 : representative(idleDigits[p], idleThresholds);
+            }
+
+            int timer = maxReached
+                    ? cfg.getMaxGreen(current)
+                    : (cfg.getMinGreen(current) + cfg.getMaxGreen(current)) / 2;
+            for (int l = 0; l < lanes; l++) {
+                queue[l] = representative(queueDigits[l], queueThresholds);
+                int red = redBucket(l, current, idleDigits);
+                wait[l] = queue[l] * (red < 0 ? timer : (representative(red, idleThresholds) + 1) / 2.0);
+            }
+            for (int p = 0; p < phases; p++) {
+                double waiting = 0.0;
+                double pressure = 0.0;
+                boolean any = false;
+                for (long m = phaseTable.getPhase(p); m != 0; m &= m - 1) {
+                    int l = Long.numberOfTrailingZeros(m);
+                    waiting += queue[l] * lanePriority[l];
+                    pressure += wait[l] * lanePriority[l];
+                    any |= queueDigits[l] > 0;
+                }
+                occupied[p] = any;
+                pressures[p] = any ? pressure : 0.0;
+                priorities[p] = cfg.alpha * pressures[p] + cfg.beta * waiting + cfg.gamma * steps[p];
+            }
+            int target = ActuatedController.fairnessCandidate(steps, occupied, pressures, cfg.fairnessCap);
+            if (target == -1) {
+                target = ActuatedController.priorityCandidate(current, priorities, true, maxReached);
+            }
+            table.setDecision(cell, target == current ? -1 : target);
+        }
+    }
+
+    /**
+     * @return smallest idle bucket of the phases of a lane, or {@code -1} if
+     * the lane belongs to the current phase
+     */
+    private int redBucket(int lane, int current, int[] idleDigits) {
+        long bit = 1L << lane;
+        if ((phaseTable.getPhase(current) & bit) != 0) {
+            return -1;
+        }
+        int bucket = Integer.MAX_VALUE;
+        for (int p = 0; p < idleDigits.length; p++) {
+            if ((phaseTable.getPhase(p) & bit) != 0) {
+                bucket = Math.min(bucket, idleDigits[p]);
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Midpoint of a bucket; the open last bucket is represented by one and a
+     * half times its lower bound.
+     */
+    private static int representative(int bucket, int[] thresholds) {
+        int lower = bucket == 0 ? 0 : thresholds[bucket - 1];
+        int upper = bucket < thresholds.length ? thresholds[bucket] - 1 : lower + lower / 2;
+        return (lower + upper) / 2;
+    }
+
+    /**
+     * Agreement of the table with the actuated controller and the average
+     * waiting time under either controller.
+     */
+    public record Agreement(long decisions, long agreed, double actuatedWait, double tableWait) {
+        public double rate() {
+            return decisions == 0 ? 1.0 : (double) agreed / decisions;
+        }
+    }
+
+    /**
+     * Compare the table with the actuated controller on the given scenarios.
+     * Decisions are compared at every step the actuated controller could
+     * switch, along its own run.
+     */
+    public Agreement measure(List<Path> scenarios) throws IOException {
+        long[] tally = new long[2];
+        double actuatedWait = 0;
+        double tableWait = 0;
+        for (Path scenario : scenarios) {
+            actuatedWait += run(scenario, (cell, decision) -> {
+                tally[0]++;
+                if (table.decision(cell) == decision) tally[1]++;
+            });
+            tableWait += run(scenario, null);
+        }
+        return new Agreement(tally[0], tally[1], actuatedWait / scenarios.size(), tableWait / scenarios.size());
+    }
+
+    private interface DecisionObserver {
+        void decided(int cell, int decision);
+    }
+
+    /**
+     * Replay a scenario, with the actuated controller reporting its decisions
+     * to {@code observer}, or with the table controller if it is
+     * {@code null}.
+     *
+     * @return average waiting time of the vehicles that left
+     */
+    private double run(Path scenario, DecisionObserver observer) throws IOException {
+        Intersection intersection = new Intersection(null, cfg);
+        intersection.setController(observer == null
+                ? new PolicyTableController(intersection.getRoads(), table, cfg)
+                : new Recorder(intersection.getRoads(), observer));
+        try (SimulationEngine engine = new SimulationEngine(intersection, new DiscardResultSink())) {
+            if (ScenarioFile.isCompiled(scenario)) {
+                ScenarioFile.replay(scenario, engine);
+            } else {
+                try (CommandReader commands = new CommandReader(scenario.toFile())) {
+                    engine.executeCommands(commands);
+                }
+            }
+            return (Double) engine.getStats().get("averageWaitTime");
+        }
+    }
+
+    /**
+     * Time decisions of either controller on an intersection with fixed,
+     * randomly filled queues.
+     *
+     * @return nanoseconds per decision
+     */
+    public double nsPerDecision(boolean useTable) {
+        Intersection intersection = new Intersection(null, cfg);
+        Random random = new Random(42);
+        int id = 0;
+        for (Geometry.LaneKey key : laneKeys) {
+            Direction end = switch (key.type()) {
+                case LEFT -> key.start().left();
+                case RIGHT -> key.start().right();
+                case STRAIGHT -> key.start().opposite();
+            };
+            for (int n = random.nextInt(12); n > 0; n--) {
+                intersection.addVehicle(new Vehicle("b" + id++, key.start(), end, 0, VehicleType.NORMAL));
+            }
+        }
+        Map<Direction, Road> roads = intersection.getRoads();
+        TrafficLightController controller = useTable
+                ? new PolicyTableController(roads, table, cfg)
+                : new ActuatedController(roads, cfg);
+        long sink = 0;
+        long best = Long.MAX_VALUE;
+        // the first round warms up the JIT; the fastest later round counts
+        for (int round = 0; round < 4; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCH_DECISIONS; i++) {
+                sink += controller.getGreenMask(roads);
+            }
+            if (round > 0) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        benchmarkSink = sink;
+        return (double) best / BENCH_DECISIONS;
+    }
+
+    /**
+     * Actuated controller reporting the cell and decision of every step in
+     * which it could switch phases.
+     */
+    private final class Recorder extends ActuatedController {
+        private final DecisionObserver observer;
+        private final Lane[] lanes;
+
+        Recorder(Map<Direction, Road> roads, DecisionObserver observer) {
+            super(roads, cfg);
+            this.observer = observer;
+            this.lanes = new Lane[laneKeys.size()];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = roads.get(laneKeys.get(i).start()).getLane(laneKeys.get(i).type());
+            }
+        }
+
+        @Override
+        protected int selectPhase() {
+            int decision = super.selectPhase();
+            int current = getCurrentPhaseIndex();
+            Phase phase = getPhases().get(current);
+            if (phase.isMinTimeReached()) {
+                int cell = table.cellOf(current, phase.isMaxTimeExceeded(), lanes, this);
+                observer.decided(cell, decision == current ? -1 : decision);
+            }
+            return decision;
+        }
+    }
+}
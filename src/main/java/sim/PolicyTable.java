@@ -0,0 +1,233 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Phase decisions of an {@link ActuatedController} precomputed over a
+ * quantised controller state, as produced by {@link PolicyCompiler} and used
+ * by {@link PolicyTableController}.
+ *
+ * <p>A state is quantised into the current phase, whether it has exceeded
+ * its maximum green time, a queue-length bucket per lane and an idle-time
+ * bucket per other phase. Buckets are given by ascending thresholds: a value
+ * falls into the bucket of the number of thresholds it reaches, so
+ * {@code {1, 5}} separates empty lanes, 1-4 vehicles and 5 or more. The cells
+ * are laid out in that order as mixed-radix digits, one byte each holding the
+ * phase to switch to or {@code -1} to stay.</p>
+ */
+public final class PolicyTable {
+    private static final int MAGIC = 0x504f4c31; // "POL1"
+    /** Largest number of cells a table may have. */
+    public static final int MAX_CELLS = 1 << 28;
+    /** Largest bucket threshold. */
+    public static final int MAX_THRESHOLD = 1 << 16;
+
+    private final int phaseCount;
+    private final int laneCount;
+    private final int[] queueThresholds;
+    private final int[] idleThresholds;
+    private final byte[] queueBuckets;
+    private final byte[] idleBuckets;
+    private final byte[] decisions;
+
+    /**
+     * Create a table with every cell set to stay.
+     *
+     * @throws IllegalArgumentException if the thresholds are not positive and
+     *                                  ascending or the table would be too
+     *                                  large
+     */
+    public PolicyTable(int phaseCount, int laneCount, int[] queueThresholds, int[] idleThresholds) {
+        this(phaseCount, laneCount, queueThresholds, idleThresholds, null);
+    }
+
+    private PolicyTable(int phaseCount, int laneCount, int[] queueThresholds, int[] idleThresholds,
+                        byte[] decisions) {
+        if (phaseCount < 1 || laneCount < 1) {
+            throw new IllegalArgumentException("Invalid table shape: " + phaseCount + " phases, " + laneCount + " lanes");
+        }
+        this.phaseCount = phaseCount;
+        this.laneCount = laneCount;
+        this.queueThresholds = queueThresholds.clone();
+        this.idleThresholds = idleThresholds.clone();
+        this.queueBuckets = bucketLookup(this.queueThresholds);
+        this.idleBuckets = bucketLookup(this.idleThresholds);
+        long cells = 2L * phaseCount;
+        for (int i = 0; i < laneCount; i++) {
+            cells *= queueThresholds.length + 1;
+            if (cells > MAX_CELLS) break;
+        }
+        for (int i = 1; i < phaseCount && cells <= MAX_CELLS; i++) {
+            cells *= idleThresholds.length + 1;
+        }
+        if (cells > MAX_CELLS) {
+            throw new IllegalArgumentException("Policy table too large; use fewer buckets");
+        }
+        if (decisions == null) {
+            decisions = new byte[(int) cells];
+            Arrays.fill(decisions, (byte) -1);
+        } else if (decisions.length != cells) {
+            throw new IllegalArgumentException("Expected " + cells + " cells, got " + decisions.length);
+        }
+        this.decisions = decisions;
+    }
+
+    /**
+     * Lookup from value to bucket for values up to the last threshold; larger
+     * values fall into the last bucket.
+     */
+    private static byte[] bucketLookup(int[] thresholds) {
+        int previous = 0;
+        for (int t : thresholds) {
+            if (t <= previous || t > MAX_THRESHOLD) {
+                throw new IllegalArgumentException("Thresholds must be ascending between 1 and " + MAX_THRESHOLD);
+            }
+            previous = t;
+        }
+        byte[] lookup = new byte[previous + 1];
+        int bucket = 0;
+        for (int v = 0; v <= previous; v++) {
+            while (bucket < thresholds.length && v >= thresholds[bucket]) bucket++;
+            lookup[v] = (byte) bucket;
+        }
+        return lookup;
+    }
+
+    public int getPhaseCount() {
+        return phaseCount;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int[] getQueueThresholds() {
+        return queueThresholds.clone();
+    }
+
+    public int[] getIdleThresholds() {
+        return idleThresholds.clone();
+    }
+
+    public int size() {
+        return decisions.length;
+    }
+
+    private int queueBucket(int size) {
+        return queueBuckets[Math.min(size, queueBuckets.length - 1)];
+    }
+
+    private int idleBucket(int steps) {
+        return idleBuckets[Math.min(steps, idleBuckets.length - 1)];
+    }
+
+    int queueRadix() {
+        return queueThresholds.length + 1;
+    }
+
+    int idleRadix() {
+        return idleThresholds.length + 1;
+    }
+
+    /**
+     * Cell of the given controller state.
+     *
+     * @param current    current phase
+     * @param maxReached whether the current phase exceeded its maximum green
+     * @param lanes      lanes in {@link PhaseTable} order
+     * @param controller source of the idle time of each phase
+     */
+    int cellOf(int current, boolean maxReached, Lane[] lanes, ActuatedController controller) {
+        int cell = current * 2 + (maxReached ? 1 : 0);
+        int queueRadix = queueRadix();
+        for (Lane lane : lanes) {
+            cell = cell * queueRadix + queueBucket(lane.size());
+        }
+        int idleRadix = idleRadix();
+        for (int p = 0; p < phaseCount; p++) {
+            if (p != current) {
+                cell = cell * idleRadix + idleBucket(controller.getStepsSinceActivation(p));
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * @return phase to switch to in the given cell, {@code -1} to stay
+     */
+    public int decision(int cell) {
+        return decisions[cell];
+    }
+
+    void setDecision(int cell, int phase) {
+        decisions[cell] = (byte) phase;
+    }
+
+    public void save(Path file) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeInt(MAGIC);
+            out.writeInt(phaseCount);
+            out.writeInt(laneCount);
+            writeInts(out, queueThresholds);
+            writeInts(out, idleThresholds);
+            out.writeInt(decisions.length);
+            out.write(decisions);
+        }
+    }
+
+    /**
+     * @throws IOException if the file is not a policy table
+     */
+    public static PolicyTable load(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a policy table: " + file);
+            }
+            int phases = in.readInt();
+            int lanes = in.readInt();
+            int[] queue = readInts(in);
+            int[] idle = readInts(in);
+            int cells = in.readInt();
+            if (cells < 0 || cells > MAX_CELLS) {
+                throw new IOException("Corrupt policy table: " + file);
+            }
+            byte[] decisions = new byte[cells];
+            in.readFully(decisions);
+            try {
+                return new PolicyTable(phases, lanes, queue, idle, decisions);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt policy table: " + file, e);
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > 64) {
+            throw new IOException("Corrupt policy table");
+        }
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
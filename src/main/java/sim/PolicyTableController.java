@@ -0,0 +1,65 @@
+package sim;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ActuatedController} deciding phase switches by lookup in a
+ * precompiled {@link PolicyTable} instead of scoring every phase. Emergency
+ * handling, yellow transitions and phase timing work as in the actuated
+ * controller; only the choice of the next phase is replaced, and it costs a
+ * few array reads per lane and phase.
+ */
+public class PolicyTableController extends ActuatedController {
+    private final PolicyTable table;
+    private final Lane[] lanes;
+
+    /**
+     * @param roads mapping of directions to their corresponding road objects
+     * @param table decisions compiled for the configured geometry
+     * @throws IllegalArgumentException if the table does not match the
+     *                                  geometry
+     */
+    public PolicyTableController(Map<Direction, Road> roads, PolicyTable table) {
+        this(roads, table, RunConfig.current());
+    }
+
+    /**
+     * @param roads  mapping of directions to their corresponding road objects
+     * @param table  decisions compiled for the configured geometry
+     * @param config configuration of the run
+     * @throws IllegalArgumentException if the table does not match the
+     *                                  geometry
+     */
+    public PolicyTableController(Map<Direction, Road> roads, PolicyTable table, RunConfig config) {
+        super(roads, config);
+        List<Geometry.LaneKey> keys = config.getPhaseTable().getLanes();
+        if (table.getLaneCount() != keys.size() || table.getPhaseCount() != getPhases().size()) {
+            throw new IllegalArgumentException("Policy table compiled for " + table.getPhaseCount() + " phases and "
+                    + table.getLaneCount() + " lanes, intersection has " + getPhases().size() + " and " + keys.size());
+        }
+        this.table = table;
+        this.lanes = new Lane[keys.size()];
+        for (int i = 0; i < lanes.length; i++) {
+            Geometry.LaneKey key = keys.get(i);
+            lanes[i] = roads.get(key.start()).getLane(key.type());
+        }
+    }
+
+    @Override
+    public PolicyTableController fork(Intersection fork) {
+        PolicyTableController copy = new PolicyTableController(fork.getRoads(), table, fork.getConfig());
+        copy.copyStateFrom(this);
+        return copy;
+    }
+
+    @Override
+    protected int selectPhase() {
+        int current = getCurrentPhaseIndex();
+        Phase phase = getPhases().get(current);
+        if (!phase.isMinTimeReached()) {
+            return -1;
+        }
+        return table.decision(table.cellOf(current, phase.isMaxTimeExceeded(), lanes, this));
+    }
+}
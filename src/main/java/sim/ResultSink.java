@@ -0,0 +1,34 @@
+package sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the per-step output of a {@link SimulationEngine}. Every executed
+ * step is reported as {@link #beginStep()}, one {@link #vehicleLeft(String)}
+ * call per departing vehicle and {@link #endStep()}, so implementations can
+ * either collect the results or write them out as the simulation runs.
+ */
+public interface ResultSink extends Closeable {
+
+    /**
+     * Start the status of the next step.
+     */
+    void beginStep();
+
+    /**
+     * Report a vehicle that left the intersection during the current step.
+     */
+    void vehicleLeft(String vehicleId);
+
+    /**
+     * Complete the status of the current step.
+     */
+    void endStep();
+
+    /**
+     * Release any resources once the simulation has finished.
+     */
+    @Override
+    default void close() throws IOException {}
+}
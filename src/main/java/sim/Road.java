@@ -4,9 +4,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A single incoming road to the intersection. Each road owns two lanes: one for
- * left turns and one for going straight or right. Helper methods manage vehicle
- * placement into the correct lane.
+ * A single incoming road to the intersection. By default a road owns two lanes:
+ * one for left turns and one for going straight or right; a {@link Geometry}
+ * may declare other lane sets, e.g. with a dedicated right-turn lane. Helper
+ * methods manage vehicle placement into the correct lane.
  */
 public class Road {
     private final Direction direction;
@@ -18,9 +19,60 @@ public class Road {
      * @param direction compass direction that vehicles travel from
      */
     public Road(Direction direction) {
+        this(direction, new VehicleRegistry());
+    }
+
+    /**
+     * Create a road whose lanes share the given vehicle registry.
+     *
+     * @param direction compass direction that vehicles travel from
+     * @param registry  registry holding the vehicles queued on the lanes
+     */
+    public Road(Direction direction, VehicleRegistry registry) {
+        this(direction, List.of(LaneType.LEFT, LaneType.STRAIGHT), registry);
+    }
+
+    /**
+     * Create a road with the given lanes sharing the given vehicle registry.
+     *
+     * @param direction compass direction that vehicles travel from
+     * @param types     types of the lanes, in lane order
+     * @param registry  registry holding the vehicles queued on the lanes
+     */
+    public Road(Direction direction, List<LaneType> types, VehicleRegistry registry) {
         this.direction = direction;
-        lanes.add(new Lane(direction, LaneType.LEFT));
-        lanes.add(new Lane(direction, LaneType.STRAIGHT));
+        for (LaneType type : types) {
+            lanes.add(new Lane(direction, type, registry));
+        }
+    }
+
+    /**
+     * Create a road of an intersection run with the given configuration.
+     *
+     * @param direction compass direction that vehicles travel from
+     * @param types     types of the lanes, in lane order
+     * @param registry  registry holding the vehicles queued on the lanes
+     * @param config    configuration of the run
+     */
+    public Road(Direction direction, List<LaneType> types, VehicleRegistry registry, RunConfig config) {
+        this.direction = direction;
+        for (LaneType type : types) {
+            lanes.add(new Lane(direction, type, registry, config));
+        }
+    }
+
+    private Road(Road other, SignalBank signals) {
+        this.direction = other.direction;
+        for (Lane lane : other.lanes) {
+            lanes.add(lane.fork(signals));
+        }
+    }
+
+    /**
+     * Copy this road for a forked intersection, see {@link Lane}.
+     */
+    Road fork(SignalBank signals) {
+        return new Road(this, signals);
     }
 
     /**
@@ -30,12 +82,28 @@ public class Road {
      * @return lane that the vehicle was added to
      */
     public Lane addVehicle(Vehicle vehicle) {
-        LaneType type = determineLaneType(vehicle.getEnd());
-        Lane lane = getLane(type);
+        Lane lane = laneFor(vehicle.getEnd());
         lane.addVehicle(vehicle);
         return lane;
     }
 
+    /**
+     * Lane used by vehicles heading to the given destination. Turning vehicles
+     * use the straight lane when the road has no lane for their turn.
+     *
+     * @throws IllegalArgumentException if the road has no suitable lane
+     */
+    public Lane laneFor(Direction end) {
+        Lane lane = findLane(determineLaneType(end));
+        if (lane == null) {
+            lane = findLane(LaneType.STRAIGHT);
+        }
+        if (lane == null) {
+            throw new IllegalArgumentException("No lane on " + direction + " road towards " + end);
+        }
+        return lane;
+    }
+
     /**
      * Remove the next vehicle from the given lane, if any.
      */
@@ -50,6 +118,9 @@ public class Road {
         if (end == direction.left()) {
             return LaneType.LEFT;
         }
+        if (end == direction.right()) {
+            return LaneType.RIGHT;
+        }
         return LaneType.STRAIGHT;
     }
 
@@ -60,14 +131,22 @@ public class Road {
      * @return lane matching the type
      */
     public Lane getLane(LaneType type) {
+        Lane lane = findLane(type);
+        if (lane == null) {
+            throw new IllegalArgumentException("No lane of type " + type);
+        }
+        return lane;
+    }
+
+    private Lane findLane(LaneType type) {
         for (Lane l : lanes) {
             if (l.getType() == type) return l;
         }
-        throw new IllegalArgumentException("No lane of type " + type);
+        return null;
     }
 
     /**
-     * Total number of vehicles waiting on this road across both lanes.
+     * Total number of vehicles waiting on this road across all lanes.
      */
     public int size() {
         int total = 0;
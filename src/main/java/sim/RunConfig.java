@@ -0,0 +1,164 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a {@link Config} for one simulation run. Every
+ * component of a run reads its parameters from the snapshot it was built
+ * with instead of {@link Config#current}, so runs with different settings
+ * can proceed concurrently in one JVM and a run is unaffected by later
+ * changes to the global configuration.
+ *
+ * <p>Settings that depend on the intersection layout are resolved once: the
+ * geometry is compiled into its {@link PhaseTable}, and lane priorities and
+ * phase timings are held in arrays indexed by lane and phase.</p>
+ */
+public final class RunConfig {
+    public final int yellowDuration;
+    public final double alpha;
+    public final double beta;
+    public final double gamma;
+    public final int fairnessCap;
+    public final double busPriority;
+    public final int vehiclesPerStep;
+    public final int lookaheadHorizon;
+    public final long lookaheadBudgetMicros;
+    public final long vehicleStoreMemoryMB;
+    public final String vehicleStoreSpillDir;
+    /** Whether the run prints its state on every step. */
+    public final boolean debug;
+
+    private final PhaseTable phaseTable;
+    private final Map<Direction, List<LaneType>> approaches = new EnumMap<>(Direction.class);
+    private final double[] lanePriorities;
+    private final int[] minGreen;
+    private final int[] maxGreen;
+
+    private RunConfig(Config config, boolean debug) {
+        this.yellowDuration = config.yellowDuration;
+        this.alpha = config.alpha;
+        this.beta = config.beta;
+        this.gamma = config.gamma;
+        this.fairnessCap = config.fairnessCap;
+        this.busPriority = config.busPriority;
+        this.vehiclesPerStep = config.vehiclesPerStep;
+        this.lookaheadHorizon = config.lookaheadHorizon;
+        this.lookaheadBudgetMicros = config.lookaheadBudgetMicros;
+        this.vehicleStoreMemoryMB = config.vehicleStoreMemoryMB;
+        this.vehicleStoreSpillDir = config.vehicleStoreSpillDir;
+        this.debug = debug;
+
+        this.phaseTable = PhaseTable.of(config.geometry);
+        List<Geometry.LaneKey> lanes = phaseTable.getLanes();
+        this.lanePriorities = new double[lanes.size()];
+        for (int i = 0; i < lanes.size(); i++) {
+            Geometry.LaneKey lane = lanes.get(i);
+            approaches.computeIfAbsent(lane.start(), d -> new ArrayList<>()).add(lane.type());
+            lanePriorities[i] = basePriority(config, lane);
+        }
+        approaches.replaceAll((d, types) -> List.copyOf(types));
+        this.minGreen = new int[phaseTable.getPhaseCount()];
+        this.maxGreen = new int[phaseTable.getPhaseCount()];
+        for (int i = 0; i < minGreen.length; i++) {
+            Config.PhaseTime time = config.getPhaseTime(i);
+            minGreen[i] = time.minGreen;
+            maxGreen[i] = time.maxGreen;
+        }
+    }
+
+    private RunConfig(RunConfig other, boolean debug) {
+        this.yellowDuration = other.yellowDuration;
+        this.alpha = other.alpha;
+        this.beta = other.beta;
+        this.gamma = other.gamma;
+        this.fairnessCap = other.fairnessCap;
+        this.busPriority = other.busPriority;
+        this.vehiclesPerStep = other.vehiclesPerStep;
+        this.lookaheadHorizon = other.lookaheadHorizon;
+        this.lookaheadBudgetMicros = other.lookaheadBudgetMicros;
+        this.vehicleStoreMemoryMB = other.vehicleStoreMemoryMB;
+        this.vehicleStoreSpillDir = other.vehicleStoreSpillDir;
+        this.debug = debug;
+        this.phaseTable = other.phaseTable;
+        this.approaches.putAll(other.approaches);
+        this.lanePriorities = other.lanePriorities;
+        this.minGreen = other.minGreen;
+        this.maxGreen = other.maxGreen;
+    }
+
+    /**
+     * @return this snapshot with {@link #debug} off, for forks whose steps
+     * must not show up in the trace of the run
+     */
+    RunConfig withoutDebug() {
+        return debug ? new RunConfig(this, false) : this;
+    }
+
+    /**
+     * Configured priority of a lane. Lanes missing from
+     * {@link Config#lanePriorities} get a base priority of 0: a partial map in
+     * a configuration file replaces the defaults instead of merging with them.
+     */
+    private static double basePriority(Config config, Geometry.LaneKey lane) {
+        Map<LaneType, Double> priorities = config.lanePriorities.get(lane.start());
+        Double priority = priorities == null ? null : priorities.get(lane.type());
+        return priority == null ? 0.0 : priority;
+    }
+
+    /**
+     * Snapshot the given configuration.
+     *
+     * @throws IllegalArgumentException if its geometry is invalid
+     */
+    public static RunConfig of(Config config, boolean debug) {
+        return new RunConfig(config, debug);
+    }
+
+    /**
+     * Snapshot of {@link Config#current} and {@link Config#debug}, used by
+     * the constructors that take no explicit configuration.
+     */
+    public static RunConfig current() {
+        return new RunConfig(Config.current, Config.debug);
+    }
+
+    /**
+     * @return the compiled intersection geometry
+     */
+    public PhaseTable getPhaseTable() {
+        return phaseTable;
+    }
+
+    /**
+     * @return lane types of the road starting at {@code start} in lane order,
+     * empty if there is no such road
+     */
+    public List<LaneType> lanesOf(Direction start) {
+        return approaches.getOrDefault(start, Collections.emptyList());
+    }
+
+    /**
+     * @return base priority of the lane with the given dense index
+     */
+    public double getLanePriority(int lane) {
+        return lanePriorities[lane];
+    }
+
+    /**
+     * @return minimum green time [steps] of phase {@code index}
+     */
+    public int getMinGreen(int index) {
+        return minGreen[index];
+    }
+
+    /**
+     * @return maximum green time [steps] of phase {@code index}
+     */
+    public int getMaxGreen(int index) {
+        return maxGreen[index];
+    }
+}
@@ -0,0 +1,77 @@
+package sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Directory of compiled scenarios keyed by the SHA-256 of their JSON source.
+ * Re-running the same input only pays for hashing the file instead of parsing
+ * it again.
+ */
+public class ScenarioCache {
+    private final Path directory;
+
+    /**
+     * @param directory where compiled scenarios are stored; created on demand
+     */
+    public ScenarioCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Default cache location inside the system temporary directory.
+     */
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "intersection-scenarios");
+    }
+
+    /**
+     * Return the compiled form of the given JSON command file, compiling and
+     * storing it first if this content has not been seen before.
+     *
+     * @param json JSON command file
+     * @return path of the compiled scenario
+     */
+    public Path compiled(Path json) throws IOException {
+        String key = hash(json);
+        Path target = directory.resolve(key + ".v" + ScenarioFile.VERSION + ".scn");
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (CommandReader commands = new CommandReader(json.toFile())) {
+                ScenarioCompiler.compile(commands, tmp);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return target;
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
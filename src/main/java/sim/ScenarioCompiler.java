@@ -0,0 +1,169 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Converts a command sequence into the binary {@link ScenarioFile} format.
+ * Consecutive steps are run-length encoded, bulk arrivals stay a single
+ * record and vehicle ids are stored as a dictionary-encoded prefix plus a
+ * numeric suffix, so the usual {@code "car123"}-style ids cost a few bytes
+ * each.
+ */
+public class ScenarioCompiler implements Closeable {
+    private final OutputStream out;
+    private final Map<String, Integer> prefixes = new HashMap<>();
+    private long pendingSteps = 0;
+
+    /**
+     * Start writing a compiled scenario to the given stream.
+     */
+    public ScenarioCompiler(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(ScenarioFile.MAGIC);
+        out.write(ScenarioFile.VERSION);
+    }
+
+    /**
+     * Compile all commands into the given file.
+     *
+     * @param commands source of decoded commands
+     * @param target   file to create or overwrite
+     */
+    public static void compile(Iterator<? extends Command> commands, Path target) throws IOException {
+        try (ScenarioCompiler compiler = new ScenarioCompiler(
+                new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            while (commands.hasNext()) {
+                compiler.write(commands.next());
+            }
+        }
+    }
+
+    /**
+     * Append a single command.
+     */
+    public void write(Command command) throws IOException {
+        if (command instanceof Command.Step step) {
+            pendingSteps += step.count();
+            return;
+        }
+        flushSteps();
+        switch (command) {
+            case Command.AddVehicle add -> {
+                out.write(ScenarioFile.OP_ADD);
+                writeId(add.vehicleId());
+                out.write(add.startRoad().ordinal()
+                        | add.endRoad().ordinal() << 2
+                        | add.vehicleType().ordinal() << 4);
+            }
+            case Command.AddVehicles add -> {
+                out.write(ScenarioFile.OP_ADD_BATCH);
+                writeString(add.idPrefix());
+                writeVarLong((add.startIndex() << 1) ^ (add.startIndex() >> 63));
+                writeVarLong(add.count());
+                out.write(add.startRoad().ordinal()
+                        | add.endRoad().ordinal() << 2
+                        | add.vehicleType().ordinal() << 4);
+            }
+            case Command.Unknown unknown -> {
+                out.write(ScenarioFile.OP_UNKNOWN);
+                writeString(unknown.type());
+            }
+            case Command.Step step -> throw new IllegalStateException();
+        }
+    }
+
+    private void flushSteps() throws IOException {
+        if (pendingSteps > 0) {
+            out.write(ScenarioFile.OP_STEP);
+            writeVarLong(pendingSteps);
+            pendingSteps = 0;
+        }
+    }
+
+    /**
+     * Write a vehicle id as a dictionary reference to its prefix followed by
+     * its numeric suffix, split as described in {@link VehicleIds}.
+     */
+    private void writeId(String id) throws IOException {
+        if (id == null) {
+            writeVarLong(0);
+            writeVarLong(0);
+            writeVarLong(0);
+            return;
+        }
+        int end = id.length();
+        int split = VehicleIds.suffixStart(id);
+        String prefix = id.substring(0, split);
+        long suffix = split == end ? 0 : Long.parseLong(id, split, end, 10) + 1;
+
+        Integer ref = prefixes.get(prefix);
+        if (ref != null) {
+            writeVarLong(ref + 1);
+        } else {
+            writeVarLong(0);
+            writeString(prefix);
+            if (prefixes.size() < ScenarioFile.MAX_PREFIXES) {
+                prefixes.put(prefix, prefixes.size());
+            }
+        }
+        writeVarLong(suffix);
+    }
+
+    /**
+     * Write a UTF-8 string preceded by its length plus one; {@code null} is
+     * written as length {@code 0}.
+     */
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Flush pending steps, terminate the scenario and close the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushSteps();
+            out.write(ScenarioFile.OP_END);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Command-line converter from a JSON command file to a compiled scenario.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java -cp simulator.jar sim.ScenarioCompiler input.json scenario.bin");
+            return;
+        }
+        try (CommandReader commands = new CommandReader(new File(args[0]))) {
+            compile(commands, Path.of(args[1]));
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact binary form of a command sequence produced by {@link ScenarioCompiler}.
+ * The file is memory-mapped and replayed straight into a
+ * {@link SimulationEngine}, without building {@link Command} objects. When
+ * commands are needed as objects, e.g. to hand them to another thread, an
+ * opened file also iterates over them.
+ *
+ * <p>Layout: the {@link #MAGIC} bytes and a version byte, followed by records
+ * that each start with an opcode:</p>
+ * <ul>
+ *     <li>{@code STEP count} – {@code count} consecutive steps (varint)</li>
+ *     <li>{@code ADD prefix suffix roads} – one vehicle. Ids are split into a
+ *     prefix and an optional numeric suffix; {@code prefix} is a varint
+ *     dictionary reference where {@code 0} introduces a new prefix written
+ *     inline as a UTF-8 string preceded by its length plus one (a length of
+ *     {@code 0} stands for a missing id), {@code suffix} is the varint
+ *     number plus one or {@code 0} when the id has no numeric suffix, and
+ *     {@code roads} packs the start road, end road and vehicle type ordinals
+ *     into one byte</li>
+ *     <li>{@code ADD_BATCH prefix start count roads} – a bulk arrival of
+ *     {@code count} vehicles (varint) whose ids are the inline {@code prefix}
+ *     string followed by consecutive numbers from {@code start} (zigzag
+ *     varint), with {@code roads} packed as for {@code ADD}</li>
+ *     <li>{@code UNKNOWN type} – an unrecognised command type as a UTF-8 string
+ *     preceded by its length plus one, kept so replays report it the same way
+ *     as the JSON path</li>
+ *     <li>{@code END}</li>
+ * </ul>
+ */
+public final class ScenarioFile implements CommandSource {
+    static final byte[] MAGIC = {'I', 'S', 'C', 'N'};
+    static final int VERSION = 1;
+
+    static final int OP_END = 0;
+    static final int OP_STEP = 1;
+    static final int OP_ADD = 2;
+    static final int OP_UNKNOWN = 3;
+    static final int OP_ADD_BATCH = 4;
+
+    /** Maximum number of id prefixes kept in the dictionary. */
+    static final int MAX_PREFIXES = 1 << 16;
+
+    /** Size of the window mapped at a time, keeping files over 2 GB readable. */
+    private static final long WINDOW = 1L << 28;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private String[] prefixes = new String[64];
+    private int prefixCount;
+    private long pendingSteps;
+    private Command next;
+    private boolean ended;
+
+    private ScenarioFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        map(0);
+        readHeader();
+    }
+
+    /**
+     * Open a compiled scenario for iteration over its commands.
+     */
+    public static ScenarioFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ScenarioFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether the given file starts with the compiled scenario header.
+     */
+    public static boolean isCompiled(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(MAGIC.length);
+            return Arrays.equals(head, MAGIC);
+        }
+    }
+
+    /**
+     * Replay a compiled scenario into the engine and finalise its statistics.
+     *
+     * @param file   compiled scenario
+     * @param engine engine receiving the commands
+     */
+    public static void replay(Path file, SimulationEngine engine) throws IOException {
+        try (ScenarioFile scenario = open(file)) {
+            scenario.replayInto(engine);
+        }
+        engine.finish();
+    }
+
+    private void readHeader() throws IOException {
+        ensure(MAGIC.length + 1);
+        byte[] head = new byte[MAGIC.length];
+        buffer.get(head);
+        if (!Arrays.equals(head, MAGIC)) {
+            throw new IOException("Not a compiled scenario file");
+        }
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported scenario version " + version);
+        }
+    }
+
+    private void replayInto(SimulationEngine engine) throws IOException {
+        while (true) {
+            ensure(1);
+            int op = buffer.get();
+            switch (op) {
+                case OP_STEP -> {
+                    long count = readVarLong();
+                    for (long i = 0; i < count; i++) {
+                        engine.step();
+                    }
+                }
+                case OP_ADD -> {
+                    String id = readId();
+                    ensure(1);
+                    int roads = buffer.get();
+                    engine.addVehicle(id,
+                            DIRECTIONS[roads & 0x3],
+                            DIRECTIONS[(roads >>> 2) & 0x3],
+                            VEHICLE_TYPES[(roads >>> 4) & 0x3]);
+                }
+                case OP_ADD_BATCH -> {
+                    Command.AddVehicles add = readBatch();
+                    engine.addVehicles(add.idPrefix(), add.startIndex(), add.count(),
+                            add.startRoad(), add.endRoad(), add.vehicleType());
+                }
+                case OP_UNKNOWN -> {
+                    int len = (int) readVarLong();
+                    String type = len == 0 ? null : readString(len - 1);
+                    engine.execute(new Command.Unknown(type));
+                }
+                case OP_END -> {
+                    return;
+                }
+                default -> throw new IOException("Corrupt scenario file, opcode " + op);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (pendingSteps > 0) {
+            next = nextStepRun();
+            return true;
+        }
+        if (ended) return false;
+        try {
+            next = readCommand();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return next != null;
+    }
+
+    @Override
+    public Command next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Command command = next;
+        next = null;
+        return command;
+    }
+
+    /**
+     * Take the next part of the current step run that fits into a single
+     * {@link Command.Step}.
+     */
+    private Command.Step nextStepRun() {
+        int count = (int) Math.min(pendingSteps, Integer.MAX_VALUE);
+        pendingSteps -= count;
+        return count == 1 ? Command.STEP : new Command.Step(count);
+    }
+
+    /**
+     * Decode the next record into a command. Step runs are returned as
+     * {@link Command.Step} commands of the same count.
+     *
+     * @return next command, or {@code null} at the end of the scenario
+     */
+    private Command readCommand() throws IOException {
+        ensure(1);
+        int op = buffer.get();
+        switch (op) {
+            case OP_STEP -> {
+                pendingSteps = readVarLong();
+                return nextStepRun();
+            }
+            case OP_ADD -> {
+                String id = readId();
+                ensure(1);
+                int roads = buffer.get();
+                return new Command.AddVehicle(id,
+                        DIRECTIONS[roads & 0x3],
+                        DIRECTIONS[(roads >>> 2) & 0x3],
+                        VEHICLE_TYPES[(roads >>> 4) & 0x3]);
+            }
+            case OP_ADD_BATCH -> {
+                return readBatch();
+            }
+            case OP_UNKNOWN -> {
+                int len = (int) readVarLong();
+                return new Command.Unknown(len == 0 ? null : readString(len - 1));
+            }
+            case OP_END -> {
+                ended = true;
+                return null;
+            }
+            default -> throw new IOException("Corrupt scenario file, opcode " + op);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Command.AddVehicles readBatch() throws IOException {
+        int len = (int) readVarLong();
+        String prefix = readString(len - 1);
+        long zigzag = readVarLong();
+        long start = (zigzag >>> 1) ^ -(zigzag & 1);
+        int count = (int) readVarLong();
+        ensure(1);
+        int roads = buffer.get();
+        return new Command.AddVehicles(prefix, start, count,
+                DIRECTIONS[roads & 0x3],
+                DIRECTIONS[(roads >>> 2) & 0x3],
+                VEHICLE_TYPES[(roads >>> 4) & 0x3]);
+    }
+
+    private String readId() throws IOException {
+        int ref = (int) readVarLong();
+        String prefix;
+        if (ref == 0) {
+            int len = (int) readVarLong();
+            if (len == 0) {
+                readVarLong();
+                return null;
+            }
+            prefix = readString(len - 1);
+            if (prefixCount < MAX_PREFIXES) {
+                if (prefixCount == prefixes.length) {
+                    prefixes = Arrays.copyOf(prefixes, prefixCount * 2);
+                }
+                prefixes[prefixCount++] = prefix;
+            }
+        } else {
+            prefix = prefixes[ref - 1];
+        }
+        long suffix = readVarLong();
+        return suffix == 0 ? prefix : prefix + (suffix - 1);
+    }
+
+    private String readString(int len) throws IOException {
+        ensure(len);
+        byte[] bytes = new byte[len];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long readVarLong() throws IOException {
+        ensure(10);
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+
+    /**
+     * Make sure at least {@code n} bytes are available in the mapped window,
+     * remapping at the current position if the window ends too early.
+     */
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() >= n) return;
+        long position = windowStart + buffer.position();
+        if (position + buffer.remaining() < size) {
+            map(position);
+        }
+        if (buffer.remaining() < Math.min(n, size - position)) {
+            throw new IOException("Truncated scenario file");
+        }
+    }
+
+    private void map(long position) throws IOException {
+        long length = Math.min(WINDOW, size - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        windowStart = position;
+    }
+}
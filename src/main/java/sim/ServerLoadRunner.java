@@ -0,0 +1,255 @@
+package sim;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for a {@link SimulationServer}. One virtual thread per session
+ * opens its session, waits until every session is open, then posts a number
+ * of command batches, each adding a few random vehicles and stepping once,
+ * before reading the statistics and closing the session. Batches are sent
+ * every {@code --interval} milliseconds from a random offset, as a backend
+ * advancing each intersection in real time would; an interval of 0 sends
+ * them back to back. Batch latencies are measured from the time the batch
+ * was due, so a client falling behind schedule counts against the server.
+ * The statistics are read in the slot after the last batch. Failed requests
+ * are counted as errors and left out of the percentiles.
+ * Latencies are reported as percentiles per kind of request and per round of
+ * command batches, so rounds late in the run can be compared with early ones.
+ */
+public class ServerLoadRunner {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client;
+    private final URI base;
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private ServerLoadRunner(URI base, ExecutorService executor) {
+        this.base = base;
+        this.client = HttpClient.newBuilder().executor(executor).build();
+    }
+
+    /**
+     * @return the {@code p}-quantile of the given latencies, sorting them in
+     *         place
+     */
+    static long percentile(long[] nanos, double p) {
+        Arrays.sort(nanos);
+        if (nanos.length == 0) return 0;
+        int index = (int) Math.ceil(p * nanos.length) - 1;
+        return nanos[Math.max(0, Math.min(nanos.length - 1, index))];
+    }
+
+    /**
+     * Send a request and return its body, or count an error and return
+     * {@code null} if it fails or its status is not 2xx.
+     */
+    private String send(String method, String path, String body) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve(path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 == 2) {
+                return response.body();
+            }
+        } catch (IOException e) {
+            // counted below
+        }
+        errors.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Send a request and return its latency measured from {@code due}, or
+     * {@code -1} if it failed.
+     */
+    private long timed(String method, String path, String body, long due) throws InterruptedException {
+        return send(method, path, body) == null ? -1 : System.nanoTime() - due;
+    }
+
+    private static String commands(SplittableRandom random, int session, int round, int vehicles) {
+        StringBuilder json = new StringBuilder("{\"commands\":[");
+        for (int v = 0; v < vehicles; v++) {
+            Direction start = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            Direction end;
+            do {
+                end = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            } while (end == start);
+            json.append("{\"type\":\"addVehicle\",\"vehicleId\":\"s").append(session).append('-').append(round)
+                    .append('-').append(v).append("\",\"startRoad\":\"").append(start.name().toLowerCase())
+                    .append("\",\"endRoad\":\"").append(end.name().toLowerCase()).append("\"},");
+        }
+        return json.append("{\"type\":\"step\"}]}").toString();
+    }
+
+    private static void sleepUntil(long nanoTime) throws InterruptedException {
+        long wait = nanoTime - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+    }
+
+    /**
+     * Print the percentiles of the latencies, leaving out the {@code -1}
+     * slots of requests that failed or were never sent.
+     */
+    private static void report(String label, long[] nanos) {
+        long[] sorted = Arrays.stream(nanos).filter(n -> n >= 0).toArray();
+        if (sorted.length == 0) {
+            System.out.printf("  %-12s no successful requests%n", label);
+            return;
+        }
+        System.out.printf("  %-12s p50 %7.2f ms  p90 %7.2f ms  p99 %7.2f ms  max %7.2f ms  (%d requests)%n", label,
+                percentile(sorted, 0.5) / 1e6, percentile(sorted, 0.9) / 1e6,
+                percentile(sorted, 0.99) / 1e6, percentile(sorted, 1.0) / 1e6, sorted.length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.ServerLoadRunner [--sessions n] [--rounds n]"
+                    + " [--vehicles n] [--interval ms] [--seed n] [--url http://host:port/]");
+            return;
+        }
+        int sessions = 2000;
+        int rounds = 20;
+        int vehicles = 4;
+        long interval = 4000;
+        long seed = 1;
+        String url = null;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sessions" -> sessions = Integer.parseInt(args[i + 1]);
+                case "--rounds" -> rounds = Integer.parseInt(args[i + 1]);
+                case "--vehicles" -> vehicles = Integer.parseInt(args[i + 1]);
+                case "--interval" -> interval = Long.parseLong(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--url" -> url = args[i + 1];
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (sessions < 1 || rounds < 1 || vehicles < 0 || interval < 0) {
+            System.err.println("Sessions and rounds must be positive, vehicles and interval non-negative");
+            return;
+        }
+
+        SimulationServer server = null;
+        if (url == null) {
+            SimulationServer.raiseIdleConnectionLimit();
+            server = new SimulationServer(new InetSocketAddress("localhost", 0), RunConfig.of(new Config(), false));
+            server.start();
+            url = "http://localhost:" + server.getPort() + "/";
+        }
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        ServerLoadRunner runner = new ServerLoadRunner(URI.create(url), executor);
+
+        long[] create = new long[sessions];
+        long[][] batches = new long[rounds][sessions];
+        long[] stats = new long[sessions];
+        long[] close = new long[sessions];
+        Arrays.fill(create, -1);
+        for (long[] round : batches) {
+            Arrays.fill(round, -1);
+        }
+        Arrays.fill(stats, -1);
+        Arrays.fill(close, -1);
+        CountDownLatch opened = new CountDownLatch(sessions);
+        SplittableRandom root = new SplittableRandom(seed);
+        List<SplittableRandom> randoms = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            randoms.add(root.split());
+        }
+        AtomicLong origin = new AtomicLong();
+        long intervalNanos = interval * 1_000_000L;
+        int roundCount = rounds;
+        int vehicleCount = vehicles;
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int s = 0; s < sessions; s++) {
+                int session = s;
+                clients.submit(() -> {
+                    String path = null;
+                    try {
+                        long t = System.nanoTime();
+                        String created = runner.send("POST", "sessions", null);
+                        if (created != null) {
+                            String id = MAPPER.readTree(created).path("sessionId").asText();
+                            if (id.isEmpty()) {
+                                runner.errors.incrementAndGet();
+                            } else {
+                                create[session] = System.nanoTime() - t;
+                                path = "sessions/" + id;
+                            }
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        runner.errors.incrementAndGet();
+                    } finally {
+                        opened.countDown();
+                    }
+                    if (path == null) return;
+                    try {
+                        opened.await();
+                        origin.compareAndSet(0, System.nanoTime());
+                        SplittableRandom random = randoms.get(session);
+                        long next = origin.get() + (intervalNanos == 0 ? 0 : random.nextLong(intervalNanos));
+                        for (int r = 0; r < roundCount; r++) {
+                            String body = commands(random, session, r, vehicleCount);
+                            sleepUntil(next);
+                            batches[r][session] = runner.timed("POST", path + "/commands", body,
+                                    intervalNanos == 0 ? System.nanoTime() : next);
+                            next += intervalNanos;
+                        }
+                        sleepUntil(next);
+                        stats[session] = runner.timed("GET", path + "/stats", null, System.nanoTime());
+                        close[session] = runner.timed("DELETE", path, null, System.nanoTime());
+                    } catch (InterruptedException e) {
+                        runner.errors.incrementAndGet();
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long requests = (long) sessions * (rounds + 3);
+        System.out.printf("%d sessions, %d requests in %.2f s (%.0f requests/s), %d errors%n",
+                sessions, requests, seconds, requests / seconds, runner.errors.get());
+        report("create", create);
+        long[] all = new long[rounds * sessions];
+        for (int r = 0; r < rounds; r++) {
+            System.arraycopy(batches[r], 0, all, r * sessions, sessions);
+        }
+        report("commands", all);
+        report("stats", stats);
+        report("close", close);
+        System.out.println("Commands by round:");
+        for (int r = 0; r < rounds; r++) {
+            report("round " + (r + 1), batches[r]);
+        }
+
+        executor.close();
+        if (server != null) {
+            server.close();
+        }
+    }
+}
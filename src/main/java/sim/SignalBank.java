@@ -0,0 +1,174 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * Light states of up to 64 signals, addressed by dense lane index. The green,
+ * yellow and blinking states are each held as a bitmask, red being the
+ * absence of all three, with one yellow countdown per signal. Whole
+ * intersections change state with a few bitwise operations per step;
+ * {@link TrafficLight} offers the per-light view of a single slot.
+ */
+public final class SignalBank {
+    /** Maximum number of signals in a bank. */
+    public static final int MAX_SIGNALS = Long.SIZE;
+
+    private final int size;
+    private final long all;
+    private final int yellowDuration;
+    private final int[] yellowTimers;
+    private long green;
+    private long yellow;
+    private long blinking;
+
+    /**
+     * Create a bank of {@code size} signals, all red, using the yellow
+     * duration of {@link Config#current}.
+     */
+    public SignalBank(int size) {
+        this(size, Config.current.yellowDuration);
+    }
+
+    /**
+     * Create a bank of {@code size} signals, all red.
+     *
+     * @param yellowDuration steps a signal stays yellow
+     */
+    public SignalBank(int size, int yellowDuration) {
+        if (size < 0 || size > MAX_SIGNALS) {
+            throw new IllegalArgumentException("Invalid number of signals: " + size);
+        }
+        this.size = size;
+        this.all = size == MAX_SIGNALS ? -1L : (1L << size) - 1;
+        this.yellowDuration = yellowDuration;
+        this.yellowTimers = new int[size];
+    }
+
+    private SignalBank(SignalBank other) {
+        this.size = other.size;
+        this.all = other.all;
+        this.yellowDuration = other.yellowDuration;
+        this.yellowTimers = other.yellowTimers.clone();
+        this.green = other.green;
+        this.yellow = other.yellow;
+        this.blinking = other.blinking;
+    }
+
+    /**
+     * @return independent copy of this bank
+     */
+    public SignalBank copy() {
+        return new SignalBank(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TrafficLightState getState(int index) {
+        long bit = 1L << index;
+        if ((green & bit) != 0) return TrafficLightState.GREEN;
+        if ((yellow & bit) != 0) return TrafficLightState.YELLOW;
+        if ((blinking & bit) != 0) return TrafficLightState.BLINKING;
+        return TrafficLightState.RED;
+    }
+
+    /**
+     * @return bitmask of the signals currently green
+     */
+    public long getGreenMask() {
+        return green;
+    }
+
+    public void setGreen(int index) {
+        set(index, TrafficLightState.GREEN);
+    }
+
+    public void setYellow(int index) {
+        set(index, TrafficLightState.YELLOW);
+    }
+
+    public void setRed(int index) {
+        set(index, TrafficLightState.RED);
+    }
+
+    public void setBlinking(int index) {
+        set(index, TrafficLightState.BLINKING);
+    }
+
+    private void set(int index, TrafficLightState state) {
+        long bit = 1L << index;
+        green &= ~bit;
+        yellow &= ~bit;
+        blinking &= ~bit;
+        switch (state) {
+            case GREEN -> green |= bit;
+            case YELLOW -> yellow |= bit;
+            case BLINKING -> blinking |= bit;
+            case RED -> { }
+        }
+        yellowTimers[index] = state == TrafficLightState.YELLOW ? yellowDuration : 0;
+    }
+
+    public boolean isYellowExpired(int index) {
+        return (yellow & 1L << index) != 0 && yellowTimers[index] <= 0;
+    }
+
+    /**
+     * Advance the yellow countdown of a single signal, turning it red once
+     * expired.
+     */
+    public void step(int index) {
+        if ((yellow & 1L << index) != 0 && --yellowTimers[index] <= 0) {
+            yellow &= ~(1L << index);
+            yellowTimers[index] = 0;
+        }
+    }
+
+    /**
+     * Advance the yellow countdown of every yellow signal.
+     */
+    public void step() {
+        for (long m = yellow; m != 0; m &= m - 1) {
+            step(Long.numberOfTrailingZeros(m));
+        }
+    }
+
+    /**
+     * Apply the controller's decision: green signals outside {@code mask}
+     * turn yellow and red signals inside it turn green. Yellow and blinking
+     * signals are left alone.
+     *
+     * @param mask bitmask of the signals that should be green
+     */
+    public void apply(long mask) {
+        mask &= all;
+        long toYellow = green & ~mask;
+        long toGreen = mask & ~(green | yellow | blinking);
+        green = (green & mask) | toGreen;
+        yellow |= toYellow;
+        if (toYellow != 0) {
+            for (long m = toYellow; m != 0; m &= m - 1) {
+                yellowTimers[Long.numberOfTrailingZeros(m)] = yellowDuration;
+            }
+        }
+    }
+
+    /**
+     * Turn every signal red.
+     */
+    public void setAllRed() {
+        green = 0;
+        yellow = 0;
+        blinking = 0;
+        Arrays.fill(yellowTimers, 0);
+    }
+
+    /**
+     * Put every signal into blinking mode.
+     */
+    public void setAllBlinking() {
+        setAllRed();
+        blinking = all;
+    }
+}
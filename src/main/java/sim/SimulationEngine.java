@@ -6,10 +6,11 @@ import java.util.*;
  * Core engine that drives the simulation by coordinating the intersection and
  * tracking statistics. Each command supplied to the engine represents an action
  * such as adding a vehicle or advancing the simulation by one step.
+ * Closing the engine closes its intersection.
  */
-public class SimulationEngine {
+public class SimulationEngine implements AutoCloseable {
     private final Intersection intersection;
-    private final List<Map<String, Object>> stepStatuses = new ArrayList<>();
+    private final ResultSink results;
 
     private int currentStep = 0;
     private int totalVehicles = 0;
@@ -17,81 +18,150 @@ public class SimulationEngine {
     private long totalWaitTimeLeft = 0;
     private int maxWaitTimeLeft = 0;
     private int maxWaitTimeRemaining = 0;
-    private final Map<Direction, Integer> vehiclesPerDirection = new EnumMap<>(Direction.class);
-    private final Map<String, Vehicle> vehicles = new HashMap<>();
+    private final int[] vehiclesPerDirection = new int[Direction.values().length];
+    private final VehicleRegistry vehicles;
+    private int[] batchHandles = new int[0];
 
     /**
-     * Create a new engine bound to the given intersection.
+     * Create a new engine bound to the given intersection. Step statuses are
+     * kept in memory and available through {@link #getResult()}.
      *
      * @param intersection intersection to be simulated
      */
     public SimulationEngine(Intersection intersection) {
+        this(intersection, new InMemoryResultSink());
+    }
+
+    /**
+     * Create a new engine reporting each step status to the given sink.
+     *
+     * @param intersection intersection to be simulated
+     * @param results      receiver of the per-step output
+     */
+    public SimulationEngine(Intersection intersection, ResultSink results) {
         this.intersection = intersection;
-        for (Direction d : Direction.values()) {
-            vehiclesPerDirection.put(d, 0);
-        }
+        this.results = results;
+        this.vehicles = intersection.getVehicles();
     }
 
 
     /**
      * Execute a sequence of simulation commands. Supported commands include
      * adding vehicles and advancing the simulation clock with {@code step}
-     * operations.
+     * operations. Each map is decoded into a {@link Command} before execution.
      *
      * @param commands list of command maps describing the simulation input
      */
     public void executeCommands(List<Map<String, Object>> commands) {
         for (Map<String, Object> command : commands) {
-            String type = (String) command.get("type");
-            switch (type) {
-                case "addVehicle": {
-                    String id = (String) command.get("vehicleId");
-                    Direction start = Direction.valueOf(((String) command.get("startRoad")).toUpperCase());
-                    Direction end = Direction.valueOf(((String) command.get("endRoad")).toUpperCase());
-                    VehicleType vType = VehicleType.NORMAL;
-                    Object vtObj = command.get("vehicleType");
-                    if (vtObj instanceof String vtStr) {
-                        vType = VehicleType.valueOf(vtStr.toUpperCase());
-                    }
-                    Vehicle v = new Vehicle(id, start, end, currentStep, vType);
-                    intersection.addVehicle(v);
-                    vehicles.put(id, v);
-                    totalVehicles++;
-                    vehiclesPerDirection.put(start, vehiclesPerDirection.get(start) + 1);
-                    break;
-                }
-                case "step": {
-                    List<Vehicle> leftVehicles = intersection.step();
-                    int phaseIndex = -1;
-                    TrafficLightController ctrl = intersection.getController();
-                    if (ctrl instanceof ActuatedController ac) {
-                        phaseIndex = ac.getCurrentPhaseIndex();
-                    }
-
-                    Map<String, Object> status = new HashMap<>();
-                    List<String> ids = new ArrayList<>();
-                    for (Vehicle v : leftVehicles) {
-                        ids.add(v.getId());
-                        vehiclesLeft++;
-                        int wait = (currentStep + 1) - v.getArrivalStep();
-                        totalWaitTimeLeft += wait;
-                        if (wait > maxWaitTimeLeft) maxWaitTimeLeft = wait;
-                        vehicles.remove(v.getId());
-                        if (phaseIndex >= 0 && ctrl instanceof ActuatedController ac) {
-                            ac.getPhases().get(phaseIndex).recordWaitTime(wait);
-
-                        }
-                    }
-                    status.put("leftVehicles", ids);
-                    stepStatuses.add(status);
-                    currentStep++;
-                    break;
-                }
-                default:
-                    System.err.println("Unknown command type: " + type);
+            execute(Command.fromMap(command));
+        }
+        finish();
+    }
+
+    /**
+     * Execute decoded commands pulled one at a time from the given iterator,
+     * e.g. a {@link CommandReader} streaming them from disk. Statistics are
+     * finalised once the iterator is exhausted.
+     *
+     * @param commands source of decoded commands
+     */
+    public void executeCommands(Iterator<? extends Command> commands) {
+        while (commands.hasNext()) {
+            execute(commands.next());
+        }
+        finish();
+    }
+
+    /**
+     * Execute a single decoded command.
+     */
+    public void execute(Command command) {
+        switch (command) {
+            case Command.AddVehicle add ->
+                    addVehicle(add.vehicleId(), add.startRoad(), add.endRoad(), add.vehicleType());
+            case Command.AddVehicles add -> addVehicles(add.idPrefix(), add.startIndex(), add.count(),
+                    add.startRoad(), add.endRoad(), add.vehicleType());
+            case Command.Step step -> step(step.count());
+            case Command.Unknown unknown -> System.err.println("Unknown command type: " + unknown.type());
+        }
+    }
+
+    /**
+     * Place a new vehicle arriving at the current step on its start road.
+     */
+    public void addVehicle(String id, Direction start, Direction end, VehicleType vType) {
+        intersection.addVehicle(vehicles.register(id, currentStep, start, end, vType));
+        totalVehicles++;
+        vehiclesPerDirection[start.ordinal()]++;
+    }
+
+    /**
+     * Place {@code count} vehicles arriving at the current step on their start
+     * road in one go. Ids are {@code idPrefix} followed by consecutive numbers
+     * from {@code startIndex}; the result is identical to adding the vehicles
+     * one by one, but the lane is looked up once and appended to in bulk.
+     */
+    public void addVehicles(String idPrefix, long startIndex, int count,
+                            Direction start, Direction end, VehicleType vType) {
+        if (count == 0) return;
+        if (batchHandles.length < count) {
+            batchHandles = new int[Math.max(count, batchHandles.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            batchHandles[i] = vehicles.register(idPrefix + (startIndex + i), currentStep, start, end, vType);
+        }
+        intersection.addVehicles(batchHandles, count);
+        totalVehicles += count;
+        vehiclesPerDirection[start.ordinal()] += count;
+    }
+
+    /**
+     * Advance the simulation by {@code count} steps, reporting each one.
+     */
+    public void step(int count) {
+        for (int i = 0; i < count; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Advance the intersection by one step and record the vehicles that left.
+     */
+    public void step() {
+        int count = intersection.advance();
+        int[] departed = intersection.getDepartedHandles();
+        int phaseIndex = -1;
+        TrafficLightController ctrl = intersection.getController();
+        if (ctrl instanceof ActuatedController ac) {
+            phaseIndex = ac.getCurrentPhaseIndex();
+        }
+
+        results.beginStep();
+        for (int i = 0; i < count; i++) {
+            int handle = departed[i];
+            results.vehicleLeft(vehicles.id(handle));
+            int arrival = vehicles.arrivalStep(handle);
+            vehicles.release(handle);
+            vehiclesLeft++;
+            int wait = (currentStep + 1) - arrival;
+            totalWaitTimeLeft += wait;
+            if (wait > maxWaitTimeLeft) maxWaitTimeLeft = wait;
+            if (phaseIndex >= 0 && ctrl instanceof ActuatedController ac) {
+                ac.getPhases().get(phaseIndex).recordWaitTime(wait);
+
             }
         }
+        results.endStep();
+        currentStep++;
+    }
 
+    /**
+     * Finalise statistics once all commands have been executed. Called by
+     * {@link #executeCommands}; callers driving {@link #execute} directly must
+     * invoke it themselves after the last command.
+     */
+    public void finish() {
         // after processing all commands, finalise stats
         TrafficLightController ctrl = intersection.getController();
         if (ctrl instanceof ActuatedController ac) {
@@ -99,21 +169,30 @@ public class SimulationEngine {
         }
 
         // compute remaining vehicles wait times
-        for (Vehicle v : vehicles.values()) {
-            int wait = currentStep - v.getArrivalStep();
-            if (wait > maxWaitTimeRemaining) maxWaitTimeRemaining = wait;
-        }
+        maxWaitTimeRemaining = Math.max(maxWaitTimeRemaining, vehicles.maxWaitTime(currentStep));
     }
 
 
+    /**
+     * Close the intersection, releasing its vehicle registry. Results and
+     * statistics stay available; no further commands may be executed.
+     */
+    @Override
+    public void close() {
+        intersection.close();
+    }
+
     /**
      * Return the raw step-by-step output of the simulation.
      * @return map containing status information for each executed step
+     * @throws IllegalStateException if step statuses were streamed to a sink
+     *                               other than an {@link InMemoryResultSink}
      */
     public Map<String, Object> getResult() {
-        Map<String, Object> result = new HashMap<>();
-        result.put("stepStatuses", stepStatuses);
-        return result;
+        if (results instanceof InMemoryResultSink memory) {
+            return memory.getResult();
+        }
+        throw new IllegalStateException("Step statuses were streamed to " + results.getClass().getSimpleName());
     }
 
     /**
@@ -152,7 +231,7 @@ public class SimulationEngine {
 
         Map<String, Integer> dirMap = new LinkedHashMap<>();
         for (Direction d : Direction.values()) {
-            dirMap.put(d.name(), vehiclesPerDirection.get(d));
+            dirMap.put(d.name(), vehiclesPerDirection[d.ordinal()]);
         }
         stats.put("vehiclesPerDirection", dirMap);
 
@@ -0,0 +1,308 @@
+package sim;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded HTTP service running live simulation sessions. Each session wraps
+ * its own {@link Intersection}, {@link ActuatedController} and
+ * {@link SimulationEngine}, which are only ever touched by the session's
+ * owner thread: request handlers hand their work to that thread and wait for
+ * the answer, so commands of one session run in the order they arrive while
+ * sessions proceed independently. Requests and owners run on virtual threads,
+ * so thousands of open sessions and blocked handlers cost little memory.
+ *
+ * <p>Endpoints, all exchanging JSON:</p>
+ * <ul>
+ *   <li>{@code POST /sessions} creates a session and returns its
+ *       {@code sessionId}. An optional body in the format of
+ *       {@code config.json} overrides the server's configuration.</li>
+ *   <li>{@code POST /sessions/{id}/commands} executes a
+ *       {@code {"commands": [...]}} body in the input file format and returns
+ *       the {@code currentStep} and the {@code stepStatuses} of the steps it
+ *       executed.</li>
+ *   <li>{@code GET /sessions/{id}/result} returns every step status so far,
+ *       as {@link SimulationEngine#getResult()}.</li>
+ *   <li>{@code GET /sessions/{id}/stats} returns the statistics so far, as
+ *       {@link SimulationEngine#getStats()}. The running phase's duration is
+ *       only counted once the session is closed.</li>
+ *   <li>{@code DELETE /sessions/{id}} closes the session and returns its
+ *       final statistics.</li>
+ * </ul>
+ * Unknown sessions are answered with 404, invalid input with 400 and an
+ * {@code error} message.
+ */
+public class SimulationServer implements Closeable {
+    private static final int BACKLOG = 4096;
+
+    private final HttpServer server;
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+    private final RunConfig config;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * One simulation and the thread owning it.
+     */
+    private static final class Session {
+        final String id;
+        final ExecutorService owner;
+        final InMemoryResultSink results = new InMemoryResultSink();
+        final SimulationEngine engine;
+
+        Session(String id, RunConfig config) {
+            this.id = id;
+            this.owner = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("session-" + id).factory());
+            Intersection intersection = new Intersection(null, config);
+            intersection.setController(new ActuatedController(intersection.getRoads(), config));
+            this.engine = new SimulationEngine(intersection, results);
+        }
+
+        /**
+         * Run a task on the owner thread and wait for its result.
+         */
+        <T> T call(Callable<T> task) throws IOException {
+            try {
+                return owner.submit(task).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for session " + id, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException r) throw r;
+                if (e.getCause() instanceof IOException io) throw io;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Bind a server to the given address; it accepts requests once
+     * {@link #start() started}.
+     *
+     * @param address address to listen on, port 0 choosing a free one
+     * @param config  configuration of sessions created without their own
+     */
+    public SimulationServer(InetSocketAddress address, RunConfig config) throws IOException {
+        this.config = config;
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(requests);
+        server.createContext("/sessions", this::handle);
+    }
+
+    /**
+     * Raise the JDK server's limit of 200 idle connections, beyond which it
+     * closes connections and makes thousands of polling clients reconnect
+     * for every request, unless {@code -Dsun.net.httpserver.maxIdleConnections}
+     * was given. The setting is read once per JVM, so command line entry
+     * points call this before creating the first server.
+     */
+    static void raiseIdleConnectionLimit() {
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stop accepting requests and discard every open session.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        requests.close();
+        for (Session session : sessions.values()) {
+            session.owner.close();
+            session.engine.close();
+        }
+        sessions.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // path[0] is empty and path[1] is "sessions"
+            try {
+                if (path.length < 2 || !path[1].equals("sessions")) {
+                    respond(exchange, 404, error("Unknown endpoint " + exchange.getRequestURI().getPath()));
+                    return;
+                }
+                if (path.length == 2) {
+                    if (!method.equals("POST")) {
+                        respond(exchange, 405, error("Use POST to create a session"));
+                    } else {
+                        respond(exchange, 201, create(body));
+                    }
+                    return;
+                }
+                Session session = sessions.get(path[2]);
+                if (session == null || path.length > 4) {
+                    respond(exchange, 404, error("No session " + path[2]));
+                    return;
+                }
+                String action = path.length == 4 ? path[3] : "";
+                String expected = switch (action) {
+                    case "" -> "DELETE";
+                    case "commands" -> "POST";
+                    case "result", "stats" -> "GET";
+                    default -> null;
+                };
+                if (expected == null) {
+                    respond(exchange, 404, error("Unknown endpoint " + action));
+                } else if (!method.equals(expected)) {
+                    respond(exchange, 405, error("Use " + expected + " for " + exchange.getRequestURI().getPath()));
+                } else {
+                    byte[] response = switch (action) {
+                        case "commands" -> execute(session, body);
+                        case "result" -> session.call(() -> mapper.writeValueAsBytes(session.engine.getResult()));
+                        case "stats" -> session.call(() -> mapper.writeValueAsBytes(session.engine.getStats()));
+                        default -> delete(session);
+                    };
+                    respond(exchange, response == null ? 404 : 200,
+                            response == null ? error("No session " + path[2]) : response);
+                }
+            } catch (JsonProcessingException e) {
+                respond(exchange, 400, error("Invalid JSON: " + e.getOriginalMessage()));
+            } catch (IllegalArgumentException | ClassCastException e) {
+                respond(exchange, 400, error(e.getMessage()));
+            } catch (RejectedExecutionException e) {
+                respond(exchange, 404, error("Session " + path[2] + " was closed"));
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error(e.toString()));
+            }
+        }
+    }
+
+    private byte[] create(byte[] body) throws IOException {
+        RunConfig sessionConfig = config;
+        if (body.length > 0) {
+            Config custom = new Config();
+            mapper.readerForUpdating(custom).readValue(body);
+            sessionConfig = RunConfig.of(custom, false);
+        }
+        String id = Long.toString(nextId.getAndIncrement());
+        sessions.put(id, new Session(id, sessionConfig));
+        return mapper.writeValueAsBytes(Map.of("sessionId", id));
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] execute(Session session, byte[] body) throws IOException {
+        Map<String, Object> input = mapper.readValue(body, Map.class);
+        if (!(input.get("commands") instanceof List<?> list)) {
+            throw new IllegalArgumentException("Expected a commands array");
+        }
+        List<Command> commands = new ArrayList<>(list.size());
+        for (Object command : list) {
+            if (!(command instanceof Map<?, ?> map)) {
+                throw new IllegalArgumentException("Expected command objects");
+            }
+            commands.add(Command.fromMap((Map<String, Object>) map));
+        }
+        return session.call(() -> {
+            List<Object> statuses = (List<Object>) session.results.getResult().get("stepStatuses");
+            int before = statuses.size();
+            for (Command command : commands) {
+                session.engine.execute(command);
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("currentStep", statuses.size());
+            response.put("stepStatuses", statuses.subList(before, statuses.size()));
+            return mapper.writeValueAsBytes(response);
+        });
+    }
+
+    /**
+     * Close a session, returning its final statistics, or {@code null} if a
+     * concurrent request closed it first.
+     */
+    private byte[] delete(Session session) throws IOException {
+        if (!sessions.remove(session.id, session)) return null;
+        try {
+            return session.call(() -> {
+                try (session.engine) {
+                    session.engine.finish();
+                    return mapper.writeValueAsBytes(session.engine.getStats());
+                }
+            });
+        } finally {
+            session.owner.shutdown();
+        }
+    }
+
+    private byte[] error(String message) throws JsonProcessingException {
+        return mapper.writeValueAsBytes(Map.of("error", String.valueOf(message)));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.SimulationServer [--port 8080] [--config config.json]");
+            return;
+        }
+        int port = 8080;
+        String configFile = null;
+        for (int i = 0; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--config" -> configFile = args[i + 1];
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        RunConfig config = RunConfig.of(configFile == null ? new Config() : Config.read(configFile), false);
+        raiseIdleConnectionLimit();
+        SimulationServer server = new SimulationServer(new InetSocketAddress(port), config);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,165 @@
+package sim;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring buffer connecting exactly one producer thread with
+ * exactly one consumer thread. Blocking calls back off from spinning to
+ * parking while the buffer is full or empty; the time spent waiting is
+ * recorded on each side so pipeline stalls can be reported.
+ *
+ * @param <T> element type
+ */
+public class SpscRingBuffer<T> {
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 200;
+    private static final long PARK_NANOS = 20_000;
+
+    private final Object[] slots;
+    private final int mask;
+    /** Next position to read, written by the consumer only. */
+    private final AtomicLong head = new AtomicLong();
+    /** Next position to write, written by the producer only. */
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean aborted;
+
+    // producer-local state
+    private long cachedHead;
+    private long producerStallNanos;
+    // consumer-local state
+    private long cachedTail;
+    private long consumerStallNanos;
+
+    /**
+     * @param capacity maximum number of buffered elements, rounded up to a
+     *                 power of two
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        slots = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Append an element, waiting while the buffer is full. Producer only.
+     *
+     * @throws CancellationException if the buffer was aborted
+     */
+    public void put(T item) {
+        long t = tail.get();
+        if (t - cachedHead == slots.length) {
+            cachedHead = head.get();
+            if (t - cachedHead == slots.length) {
+                long start = System.nanoTime();
+                int idle = 0;
+                while (t - (cachedHead = head.get()) == slots.length) {
+                    idle = backOff(idle);
+                }
+                producerStallNanos += System.nanoTime() - start;
+            }
+        }
+        slots[(int) (t & mask)] = item;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Remove the oldest element, waiting while the buffer is empty. Consumer
+     * only.
+     *
+     * @throws CancellationException if the buffer was aborted
+     */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        long h = head.get();
+        if (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h == cachedTail) {
+                long start = System.nanoTime();
+                int idle = 0;
+                while (h == (cachedTail = tail.get())) {
+                    idle = backOff(idle);
+                }
+                consumerStallNanos += System.nanoTime() - start;
+            }
+        }
+        int index = (int) (h & mask);
+        T item = (T) slots[index];
+        slots[index] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    /**
+     * Oldest element without removing it, or {@code null} if the buffer is
+     * empty. Consumer only; never waits.
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        long h = head.get();
+        if (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h == cachedTail) return null;
+        }
+        return (T) slots[(int) (h & mask)];
+    }
+
+    /**
+     * Remove the oldest element, or return {@code null} if the buffer is
+     * empty. Consumer only; never waits.
+     */
+    public T poll() {
+        T item = peek();
+        if (item != null) {
+            long h = head.get();
+            slots[(int) (h & mask)] = null;
+            head.lazySet(h + 1);
+        }
+        return item;
+    }
+
+    private int backOff(int idle) {
+        if (aborted) {
+            throw new CancellationException("Ring buffer aborted");
+        }
+        if (idle < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (idle < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    /**
+     * Wake up and fail any thread blocked on this buffer, e.g. after the other
+     * side has crashed.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return total time the producer spent waiting for free space
+     */
+    public long getProducerStallNanos() {
+        return producerStallNanos;
+    }
+
+    /**
+     * @return total time the consumer spent waiting for elements
+     */
+    public long getConsumerStallNanos() {
+        return consumerStallNanos;
+    }
+}
@@ -0,0 +1,509 @@
+package sim;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Parameter sweep: evaluates the actuated controller on one scenario for
+ * every combination of a grid of configuration values and collects the
+ * statistics of each run into one table.
+ *
+ * <p>The scenario is compiled once (see {@link ScenarioCache}) and every run
+ * replays the same read-only compiled file. Runs are independent tasks on a
+ * {@link ForkJoinPool}, each with its own {@link Intersection},
+ * {@link SimulationEngine} and {@link RunConfig}, so they share no mutable
+ * state and give the same results at any parallelism.</p>
+ *
+ * <p>Parameters are {@code alpha}, {@code beta}, {@code gamma},
+ * {@code busPriority}, {@code fairnessCap}, {@code yellowDuration},
+ * {@code vehiclesPerStep} and {@code minGreen}/{@code maxGreen}, the latter
+ * for every phase or for phase {@code i} as {@code minGreen.i}. Values are a
+ * comma-separated list or an inclusive range {@code from:to:step}.</p>
+ */
+public class SweepRunner {
+    private static final int SCALING_ROUNDS = 8;
+    private static final int MAX_RANGE_VALUES = 1_000_000;
+    private static final Set<String> INT_PARAMETERS = Set.of(
+            "fairnessCap", "yellowDuration", "vehiclesPerStep", "minGreen", "maxGreen");
+    private static final Set<String> PARAMETERS = Set.of(
+            "alpha", "beta", "gamma", "busPriority",
+            "fairnessCap", "yellowDuration", "vehiclesPerStep", "minGreen", "maxGreen");
+
+    /**
+     * A swept parameter and the values it takes.
+     */
+    public record Parameter(String name, double[] values) {
+        /**
+         * Parse {@code name=values}, values being {@code a,b,c} or
+         * {@code from:to:step}.
+         *
+         * @throws IllegalArgumentException if the name or values are invalid
+         */
+        public static Parameter parse(String spec) {
+            int eq = spec.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected name=values: " + spec);
+            }
+            String name = spec.substring(0, eq).trim();
+            String values = spec.substring(eq + 1).trim();
+            double[] parsed;
+            try {
+                if (values.contains(":")) {
+                    String[] range = values.split(":");
+                    if (range.length != 3) {
+                        throw new IllegalArgumentException("Expected from:to:step: " + values);
+                    }
+                    parsed = range(new BigDecimal(range[0].trim()), new BigDecimal(range[1].trim()),
+                            new BigDecimal(range[2].trim()));
+                } else {
+                    String[] list = values.split(",");
+                    parsed = new double[list.length];
+                    for (int i = 0; i < list.length; i++) {
+                        parsed[i] = Double.parseDouble(list[i].trim());
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid values for " + name + ": " + values, e);
+            }
+            Parameter parameter = new Parameter(name, parsed);
+            parameter.validate();
+            return parameter;
+        }
+
+        /**
+         * Values {@code from, from + step, ...} up to {@code to} inclusive,
+         * counted and computed in decimal so that e.g. {@code 0.1:0.3:0.1}
+         * gives exactly 0.1, 0.2 and 0.3.
+         */
+        private static double[] range(BigDecimal from, BigDecimal to, BigDecimal step) {
+            if (step.signum() <= 0 || to.compareTo(from) < 0) {
+                throw new IllegalArgumentException("Invalid range " + from + ":" + to + ":" + step);
+            }
+            BigDecimal steps = to.subtract(from).divideToIntegralValue(step);
+            if (steps.compareTo(BigDecimal.valueOf(MAX_RANGE_VALUES)) >= 0) {
+                throw new IllegalArgumentException("Range " + from + ":" + to + ":" + step + " has too many values");
+            }
+            int n = steps.intValue() + 1;
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = from.add(step.multiply(BigDecimal.valueOf(i))).doubleValue();
+            }
+            return values;
+        }
+
+        private String baseName() {
+            int dot = name.indexOf('.');
+            return dot < 0 ? name : name.substring(0, dot);
+        }
+
+        private int phase() {
+            int dot = name.indexOf('.');
+            return dot < 0 ? -1 : Integer.parseInt(name.substring(dot + 1));
+        }
+
+        private void validate() {
+            String base = baseName();
+            boolean perPhase = base.equals("minGreen") || base.equals("maxGreen");
+            if (!PARAMETERS.contains(base) || (!perPhase && !base.equals(name))) {
+                throw new IllegalArgumentException("Unknown sweep parameter: " + name);
+            }
+            if (!base.equals(name) && !name.substring(base.length() + 1).matches("\\d{1,4}")) {
+                throw new IllegalArgumentException("Invalid phase index in " + name);
+            }
+            if (values.length == 0) {
+                throw new IllegalArgumentException("No values for " + name);
+            }
+            for (double v : values) {
+                if (INT_PARAMETERS.contains(base) && v != Math.rint(v)) {
+                    throw new IllegalArgumentException(name + " takes whole numbers, got " + v);
+                }
+            }
+        }
+
+        /**
+         * Set this parameter to {@code value} in {@code config}.
+         *
+         * @param phaseCount number of phases of the configured geometry
+         */
+        void apply(Config config, double value, int phaseCount) {
+            switch (baseName()) {
+                case "alpha" -> config.alpha = value;
+                case "beta" -> config.beta = value;
+                case "gamma" -> config.gamma = value;
+                case "busPriority" -> config.busPriority = value;
+                case "fairnessCap" -> config.fairnessCap = (int) value;
+                case "yellowDuration" -> config.yellowDuration = (int) value;
+                case "vehiclesPerStep" -> config.vehiclesPerStep = (int) value;
+                default -> {
+                    int phase = phase();
+                    int last = phase < 0 ? phaseCount - 1 : phase;
+                    while (config.phases.size() <= last) {
+                        config.phases.add(new Config.PhaseTime(Config.DEFAULT_PHASE_TIME.minGreen,
+                                Config.DEFAULT_PHASE_TIME.maxGreen));
+                    }
+                    for (int p = phase < 0 ? 0 : phase; p <= last; p++) {
+                        Config.PhaseTime time = config.phases.get(p);
+                        if (baseName().equals("minGreen")) {
+                            time.minGreen = (int) value;
+                        } else {
+                            time.maxGreen = (int) value;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Statistics of the run of one grid point.
+     *
+     * @param parameters parameter values of the point, in parameter order
+     * @param stats      statistics as returned by
+     *                   {@link SimulationEngine#getStats()}
+     */
+    public record Result(Map<String, Double> parameters, Map<String, Object> stats) {
+    }
+
+    private final Path scenario;
+    private final Supplier<Config> base;
+    private final List<Parameter> parameters;
+
+    /**
+     * @param scenario   compiled scenario, see {@link ScenarioCache}
+     * @param base       supplier of a fresh copy of the configuration the
+     *                   parameters are applied to
+     * @param parameters swept parameters; the grid is their cartesian product
+     * @throws IllegalArgumentException if a parameter is given twice, or
+     *                                  some grid point would give a phase a
+     *                                  minimum green above its maximum green
+     */
+    public SweepRunner(Path scenario, Supplier<Config> base, List<Parameter> parameters) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Parameter p : parameters) {
+            if (!names.add(p.name())) {
+                throw new IllegalArgumentException("Parameter given twice: " + p.name());
+            }
+        }
+        checkGreenTimes(base.get(), parameters);
+        this.scenario = scenario;
+        this.base = base;
+        this.parameters = List.copyOf(parameters);
+    }
+
+    /**
+     * Check that no combination of swept values gives a phase a minimum
+     * green above its maximum green, so an invalid grid is rejected before
+     * any of it runs. For each phase, the values are those of the last
+     * parameter setting it, as in {@link #apply}, or else those of
+     * {@code config}.
+     *
+     * @throws IllegalArgumentException if some point has minimum green above
+     *                                  maximum green
+     */
+    private static void checkGreenTimes(Config config, List<Parameter> parameters) {
+        int phaseCount = PhaseTable.of(config.geometry).getPhaseCount();
+        int phases = phaseCount;
+        for (Parameter p : parameters) {
+            phases = Math.max(phases, p.phase() + 1);
+        }
+        for (int phase = 0; phase < phases; phase++) {
+            Config.PhaseTime time = config.getPhaseTime(phase);
+            double highestMin = time.minGreen;
+            double lowestMax = time.maxGreen;
+            for (Parameter p : parameters) {
+                String name = p.baseName();
+                boolean sets = p.phase() == phase || (p.phase() < 0 && phase < phaseCount);
+                if (!sets || !(name.equals("minGreen") || name.equals("maxGreen"))) continue;
+                if (name.equals("minGreen")) {
+                    highestMin = Arrays.stream(p.values()).max().getAsDouble();
+                } else {
+                    lowestMax = Arrays.stream(p.values()).min().getAsDouble();
+                }
+            }
+            if (highestMin > lowestMax) {
+                throw new IllegalArgumentException("Sweep gives phase " + phase + " minGreen "
+                        + (int) highestMin + " above maxGreen " + (int) lowestMax);
+            }
+        }
+    }
+
+    /**
+     * @return number of points in the grid
+     */
+    public int size() {
+        int size = 1;
+        for (Parameter p : parameters) {
+            size = Math.multiplyExact(size, p.values().length);
+        }
+        return size;
+    }
+
+    /**
+     * @return parameter values of grid point {@code index}; the last
+     * parameter varies fastest
+     */
+    public Map<String, Double> point(int index) {
+        double[] values = new double[parameters.size()];
+        int rest = index;
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            double[] choices = parameters.get(i).values();
+            values[i] = choices[rest % choices.length];
+            rest /= choices.length;
+        }
+        Map<String, Double> point = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            point.put(parameters.get(i).name(), values[i]);
+        }
+        return point;
+    }
+
+    /**
+     * Configuration of grid point {@code index}.
+     *
+     * @throws IllegalArgumentException if the resulting configuration is
+     *                                  invalid
+     */
+    public RunConfig config(int index) {
+        return RunConfig.of(apply(base.get(), parameters, point(index)), false);
+    }
+
+    /**
+     * Set the given parameters of {@code config} to their values in
+     * {@code point}.
+     *
+     * @return {@code config}
+     */
+    static Config apply(Config config, List<Parameter> parameters, Map<String, Double> point) {
+        int phaseCount = PhaseTable.of(config.geometry).getPhaseCount();
+        for (Parameter p : parameters) {
+            p.apply(config, point.get(p.name()), phaseCount);
+        }
+        return config;
+    }
+
+    /**
+     * Evaluate the whole grid on {@code pool}.
+     *
+     * @return results in grid order
+     */
+    public List<Result> run(ForkJoinPool pool) throws IOException {
+        int size = size();
+        List<Callable<Result>> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Double> point = point(i);
+            RunConfig config = config(i);
+            tasks.add(() -> new Result(point, simulate(scenario, config)));
+        }
+        List<Result> results = new ArrayList<>(size);
+        for (Future<Result> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Sweep interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw new IllegalStateException("Sweep run failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Run the actuated controller on a compiled scenario with the given
+     * configuration.
+     *
+     * @return statistics of the run
+     */
+    public static Map<String, Object> simulate(Path scenario, RunConfig config) {
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        try (SimulationEngine engine = new SimulationEngine(intersection, new DiscardResultSink())) {
+            ScenarioFile.replay(scenario, engine);
+            return engine.getStats();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write results as CSV: one column per parameter followed by the
+     * statistics, nested ones named by their path, e.g.
+     * {@code phases.Phase0.avgWaitTime}.
+     */
+    public static void writeTable(List<Result> results, Writer out) throws IOException {
+        Set<String> columns = new LinkedHashSet<>();
+        List<Map<String, Object>> rows = new ArrayList<>(results.size());
+        for (Result result : results) {
+            Map<String, Object> row = new LinkedHashMap<>(result.parameters());
+            row.putAll(flatten(result.stats()));
+            columns.addAll(row.keySet());
+            rows.add(row);
+        }
+        out.write(String.join(",", columns));
+        out.write('\n');
+        for (Map<String, Object> row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (String column : columns) {
+                if (!line.isEmpty()) line.append(',');
+                Object value = row.get(column);
+                if (value != null) line.append(value);
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    /**
+     * @return statistics with nested maps replaced by their entries, named by
+     * their path such as {@code maxWaitTime.left}
+     */
+    static Map<String, Object> flatten(Map<String, Object> stats) {
+        Map<String, Object> flat = new LinkedHashMap<>();
+        flatten("", stats, flat);
+        return flat;
+    }
+
+    private static void flatten(String prefix, Map<?, ?> map, Map<String, Object> row) {
+        map.forEach((key, value) -> {
+            String name = prefix + key;
+            if (value instanceof Map<?, ?> nested) {
+                flatten(name + ".", nested, row);
+            } else {
+                row.put(name, value);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length % 2 != 0) {
+            System.err.println("Usage: java -cp simulator.jar sim.SweepRunner input.json results.csv"
+                    + " --vary alpha=1,2,3 [--vary minGreen.0=1:3:1 ...] [--config config.json]"
+                    + " [--threads n] [--scaling true|false] [--cache-dir dir]");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        List<Parameter> parameters = new ArrayList<>();
+        String configFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean scaling = false;
+        Path cacheDir = ScenarioCache.defaultDirectory();
+        for (int i = 2; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--vary" -> {
+                    try {
+                        parameters.add(Parameter.parse(args[i + 1]));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                        return;
+                    }
+                }
+                case "--config" -> configFile = args[i + 1];
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--scaling" -> scaling = Boolean.parseBoolean(args[i + 1]);
+                case "--cache-dir" -> cacheDir = Path.of(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (threads < 1) {
+            System.err.println("Invalid number of threads: " + threads);
+            return;
+        }
+
+        String baseFile = configFile;
+        Supplier<Config> base = () -> {
+            try {
+                return baseFile == null ? new Config() : Config.read(baseFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        Path compiled = ScenarioFile.isCompiled(input) ? input : new ScenarioCache(cacheDir).compiled(input);
+        SweepRunner sweep;
+        try {
+            sweep = new SweepRunner(compiled, base, parameters);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        List<Result> results;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long start = System.nanoTime();
+            results = sweep.run(pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d runs on %d threads in %.2f s (%.1f runs/s)%n",
+                    results.size(), threads, seconds, results.size() / seconds);
+        } finally {
+            pool.shutdown();
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(FileStreams.openOutput(output),
+                StandardCharsets.UTF_8))) {
+            writeTable(results, out);
+        }
+
+        if (scaling) {
+            reportScaling(sweep, threads);
+        }
+    }
+
+    /**
+     * Time the grid at 1, 2, 4, ... threads up to {@code maxThreads} and
+     * print the speedup and parallel efficiency relative to one thread. The
+     * thread counts take turns over {@link #SCALING_ROUNDS} rounds and each
+     * keeps its best time, so JIT warm-up during the first rounds does not
+     * favour the counts measured last.
+     */
+    private static void reportScaling(SweepRunner sweep, int maxThreads) throws IOException {
+        System.out.printf("Scaling over %d runs (%d processors available):%n",
+                sweep.size(), Runtime.getRuntime().availableProcessors());
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(maxThreads);
+        double[] best = new double[counts.size()];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for (int round = 0; round < SCALING_ROUNDS; round++) {
+            for (int i = 0; i < counts.size(); i++) {
+                ForkJoinPool pool = new ForkJoinPool(counts.get(i));
+                try {
+                    long start = System.nanoTime();
+                    sweep.run(pool);
+                    best[i] = Math.min(best[i], (System.nanoTime() - start) / 1e9);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+        for (int i = 0; i < counts.size(); i++) {
+            double speedup = best[0] / best[i];
+            System.out.printf("  %2d threads: %.2f s, speedup %.2f, efficiency %.0f%%%n",
+                    counts.get(i), best[i], speedup, 100 * speedup / counts.get(i));
+        }
+    }
+}
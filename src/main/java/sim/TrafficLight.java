@@ -4,46 +4,53 @@ package sim;
 /**
  * State machine representing a single traffic light with green, yellow, blinking
  * and red states. The light transitions from yellow to red automatically after
- * the configured duration.
+ * the configured duration. The state lives in one slot of a {@link SignalBank},
+ * shared with the other lights of an intersection.
  */
 public class TrafficLight {
-    private TrafficLightState state = TrafficLightState.RED;
-    private int yellowTimer = 0;
+    private final SignalBank bank;
+    private final int index;
+
+    /**
+     * Create a stand-alone light, initially red.
+     */
+    public TrafficLight() {
+        this(new SignalBank(1), 0);
+    }
+
+    /**
+     * Create a view of slot {@code index} of the given bank.
+     */
+    public TrafficLight(SignalBank bank, int index) {
+        this.bank = bank;
+        this.index = index;
+    }
 
     public TrafficLightState getState() {
-        return state;
+        return bank.getState(index);
     }
 
     public void setGreen() {
-        state = TrafficLightState.GREEN;
-        yellowTimer = 0;
+        bank.setGreen(index);
     }
 
     public void setYellow() {
-        state = TrafficLightState.YELLOW;
-        yellowTimer = Config.current.yellowDuration;
+        bank.setYellow(index);
     }
 
     public void setRed() {
-        state = TrafficLightState.RED;
-        yellowTimer = 0;
+        bank.setRed(index);
     }
 
     public void setBlinking() {
-        state = TrafficLightState.BLINKING;
-        yellowTimer = 0;
+        bank.setBlinking(index);
     }
 
     public boolean isYellowExpired() {
-        return state == TrafficLightState.YELLOW && yellowTimer <= 0;
+        return bank.isYellowExpired(index);
     }
 
     public void step() {
-        if (state == TrafficLightState.YELLOW) {
-            yellowTimer--;
-            if (yellowTimer <= 0) {
-                setRed();
-            }
-        }
-    }
-}
\ No newline at end of file
+        bank.step(index);
+    }
+}
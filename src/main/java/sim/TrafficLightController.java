@@ -17,11 +17,41 @@ public interface TrafficLightController {
      */
     Set<Lane> getGreenLanes(Map<Direction, Road> roads);
 
+    /**
+     * Variant of {@link #getGreenLanes} returning the green lanes as a bitmask
+     * of their {@link Lane#getIndex() indices}, used by {@link Intersection}
+     * on every step. The default converts the lane set; controllers should
+     * override it to avoid building sets.
+     *
+     * @param roads mapping of all roads feeding the intersection
+     * @return bitmask of the lanes that are allowed to proceed
+     */
+    default long getGreenMask(Map<Direction, Road> roads) {
+        long mask = 0;
+        for (Lane lane : getGreenLanes(roads)) {
+            if (lane.getIndex() >= 0) {
+                mask |= 1L << lane.getIndex();
+            }
+        }
+        return mask;
+    }
+
     /**
      * Notification that an emergency vehicle has entered a lane. Controllers may
      * override to provide priority handling.
      */
     default void emergencyVehicleArrived(Lane lane) {}
 
+    /**
+     * Copy this controller, including its internal state, to drive a forked
+     * intersection (see {@link Intersection#fork()}).
+     *
+     * @param fork the forked intersection, with its roads in place
+     * @return the copy, or {@code null} if this controller cannot be forked
+     */
+    default TrafficLightController fork(Intersection fork) {
+        return null;
+    }
+
 
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package sim;
 
-
+import java.util.Objects;
 
 /**
- * Representation of a vehicle travelling through the intersection.
+ * Representation of a vehicle travelling through the intersection. Lanes only
+ * queue vehicle handles, so vehicles taken from a lane are rebuilt from the
+ * {@link VehicleRegistry}; two vehicles are equal when all their fields are.
  */
 public class Vehicle {
     private final String id;
@@ -28,4 +30,19 @@ public class Vehicle {
     public Direction getEnd() { return end; }
     public int getArrivalStep() { return arrivalStep; }
     public VehicleType getType() { return type; }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Vehicle v
+                && arrivalStep == v.arrivalStep
+                && Objects.equals(id, v.id)
+                && start == v.start
+                && end == v.end
+                && type == v.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, start, end, arrivalStep, type);
+    }
 }
@@ -0,0 +1,35 @@
+package sim;
+
+/**
+ * Splitting of vehicle ids into a text prefix and a numeric suffix, so the
+ * usual {@code "car123"}-style ids can be stored as a shared prefix plus a
+ * number. Leading zeros of the suffix stay in the prefix, so
+ * {@code prefix + suffix} always rebuilds the id exactly.
+ */
+final class VehicleIds {
+    /** Longest numeric suffix that still fits into a {@code long}. */
+    static final int MAX_SUFFIX_DIGITS = 18;
+
+    private VehicleIds() {
+    }
+
+    /**
+     * @return index at which the numeric suffix of {@code id} starts, or
+     * {@code id.length()} if it has none
+     */
+    static int suffixStart(String id) {
+        int end = id.length();
+        int split = end;
+        while (split > 0 && end - split < MAX_SUFFIX_DIGITS && isDigit(id.charAt(split - 1))) {
+            split--;
+        }
+        while (split < end - 1 && id.charAt(split) == '0') {
+            split++;
+        }
+        return split;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,367 @@
+package sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of the vehicles currently in the simulation, addressed by dense
+ * integer handles. Handles are assigned when a vehicle arrives and recycled
+ * once it has left, so storage stays as large as the peak number of queued
+ * vehicles. Lane queues only hold handles; the id and route of a vehicle are
+ * looked up here when it departs.
+ *
+ * <p>Vehicles are kept off the Java heap as fixed-width records in pages of
+ * direct memory, the handle being the record index. A record holds the
+ * arrival step, the start road, end road and type packed into one byte, and
+ * the id as a reference to a shared text prefix plus its numeric suffix (see
+ * {@link VehicleIds}). Departed records form an intrusive free list. Ids that
+ * do not fit that scheme, e.g. once the prefix dictionary is full, are kept on
+ * the heap. Once the direct memory in use would exceed the configured budget,
+ * further pages are mapped from a temporary spill file instead.</p>
+ *
+ * <p>{@link #close() Closing} the registry closes and deletes the spill file
+ * and drops every page; the registry cannot be used afterwards.</p>
+ */
+public class VehicleRegistry implements AutoCloseable {
+    private static final int FREE = -1;
+    private static final byte NO_ROUTE = -1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+
+    // record layout: id suffix (or next free handle), arrival step, id prefix, route
+    private static final int SUFFIX = 0;
+    private static final int ARRIVAL = 8;
+    private static final int PREFIX = 12;
+    private static final int ROUTE = 16;
+    private static final int RECORD_BYTES = 24;
+
+    /** Prefix reference of an id kept in {@link #heapIds}. */
+    private static final int HEAP_ID = -1;
+    /** Prefix reference of a missing id. */
+    private static final int NULL_ID = -2;
+    /** Maximum number of distinct id prefixes kept in the dictionary. */
+    private static final int MAX_PREFIXES = 1 << 16;
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_RECORDS = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_RECORDS - 1;
+    private static final int PAGE_BYTES = PAGE_RECORDS * RECORD_BYTES;
+    private static final int INITIAL_RECORDS = 64;
+
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private ByteBuffer[] pages = new ByteBuffer[1];
+    private long directBytes;
+    private FileChannel spill;
+    private long spillBytes;
+
+    private final Map<String, Integer> prefixIndex = new HashMap<>();
+    private final List<String> prefixes = new ArrayList<>();
+    private final Map<Integer, String> heapIds = new HashMap<>();
+
+    private int highWater = 0;
+    private int freeHead = FREE;
+    private int size = 0;
+    private boolean closed;
+
+    /**
+     * Create a registry keeping all records in direct memory.
+     */
+    public VehicleRegistry() {
+        this(0, null);
+    }
+
+    /**
+     * Create a registry that spills to a memory-mapped file once its records
+     * would occupy more than {@code memoryBudget} bytes of direct memory.
+     *
+     * @param memoryBudget   direct memory budget in bytes, {@code 0} for no limit
+     * @param spillDirectory directory of the spill file, {@code null} for the
+     *                       system temporary directory
+     */
+    public VehicleRegistry(long memoryBudget, Path spillDirectory) {
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        pages[0] = allocateDirect(INITIAL_RECORDS * RECORD_BYTES);
+    }
+
+    /**
+     * Create a registry using the vehicle store settings of the given
+     * configuration.
+     */
+    public static VehicleRegistry fromConfig(RunConfig config) {
+        return new VehicleRegistry(config.vehicleStoreMemoryMB << 20,
+                config.vehicleStoreSpillDir == null ? null : Path.of(config.vehicleStoreSpillDir));
+    }
+
+    /**
+     * Register an arriving vehicle without route information, for callers that
+     * only need ids and waiting times.
+     *
+     * @param id          external vehicle id
+     * @param arrivalStep step at which the vehicle arrived
+     * @return handle identifying the vehicle until it is released
+     */
+    public int register(String id, int arrivalStep) {
+        int handle = allocate(id, arrivalStep);
+        page(handle).put(offset(handle) + ROUTE, NO_ROUTE);
+        return handle;
+    }
+
+    /**
+     * Register an arriving vehicle together with its route and type.
+     *
+     * @param id          external vehicle id
+     * @param arrivalStep step at which the vehicle arrived
+     * @return handle identifying the vehicle until it is released
+     */
+    public int register(String id, int arrivalStep, Direction start, Direction end, VehicleType type) {
+        int handle = allocate(id, arrivalStep);
+        page(handle).put(offset(handle) + ROUTE,
+                (byte) (start.ordinal() | end.ordinal() << 2 | type.ordinal() << 4));
+        return handle;
+    }
+
+    private int allocate(String id, int arrivalStep) {
+        if (closed) {
+            throw new IllegalStateException("Vehicle registry is closed");
+        }
+        int handle;
+        if (freeHead != FREE) {
+            handle = freeHead;
+            freeHead = (int) page(handle).getLong(offset(handle) + SUFFIX);
+        } else {
+            handle = highWater++;
+            ensurePage(handle);
+        }
+        ByteBuffer page = page(handle);
+        int off = offset(handle);
+        page.putInt(off + ARRIVAL, arrivalStep);
+        encodeId(handle, page, off, id);
+        size++;
+        return handle;
+    }
+
+    private void encodeId(int handle, ByteBuffer page, int off, String id) {
+        if (id == null) {
+            page.putInt(off + PREFIX, NULL_ID);
+            return;
+        }
+        int split = VehicleIds.suffixStart(id);
+        String prefix = id.substring(0, split);
+        Integer ref = prefixIndex.get(prefix);
+        if (ref == null && prefixes.size() < MAX_PREFIXES) {
+            ref = prefixes.size();
+            prefixes.add(prefix);
+            prefixIndex.put(prefix, ref);
+        }
+        if (ref == null) {
+            page.putInt(off + PREFIX, HEAP_ID);
+            heapIds.put(handle, id);
+            return;
+        }
+        page.putInt(off + PREFIX, ref);
+        page.putLong(off + SUFFIX, split == id.length() ? 0 : Long.parseLong(id, split, id.length(), 10) + 1);
+    }
+
+    /**
+     * Release the handle of a vehicle that left the simulation. The handle may
+     * be returned again by a later {@link #register} call.
+     */
+    public void release(int handle) {
+        if (handle >= highWater || arrivalStep(handle) == FREE) {
+            throw new IllegalStateException("Vehicle handle " + handle + " is not registered");
+        }
+        ByteBuffer page = page(handle);
+        int off = offset(handle);
+        if (page.getInt(off + PREFIX) == HEAP_ID) {
+            heapIds.remove(handle);
+        }
+        page.putInt(off + ARRIVAL, FREE);
+        page.putLong(off + SUFFIX, freeHead);
+        freeHead = handle;
+        size--;
+    }
+
+    public String id(int handle) {
+        ByteBuffer page = page(handle);
+        int off = offset(handle);
+        int ref = page.getInt(off + PREFIX);
+        if (ref == NULL_ID) return null;
+        if (ref == HEAP_ID) return heapIds.get(handle);
+        String prefix = prefixes.get(ref);
+        long suffix = page.getLong(off + SUFFIX);
+        return suffix == 0 ? prefix : prefix + (suffix - 1);
+    }
+
+    public int arrivalStep(int handle) {
+        return page(handle).getInt(offset(handle) + ARRIVAL);
+    }
+
+    public Direction start(int handle) {
+        return DIRECTIONS[route(handle) & 0x3];
+    }
+
+    public Direction end(int handle) {
+        return DIRECTIONS[(route(handle) >>> 2) & 0x3];
+    }
+
+    public VehicleType type(int handle) {
+        return VEHICLE_TYPES[(route(handle) >>> 4) & 0x3];
+    }
+
+    private int route(int handle) {
+        byte route = page(handle).get(offset(handle) + ROUTE);
+        if (route == NO_ROUTE) {
+            throw new IllegalStateException("Vehicle handle " + handle + " has no route");
+        }
+        return route;
+    }
+
+    /**
+     * Build a {@link Vehicle} object describing a registered vehicle.
+     */
+    public Vehicle vehicle(int handle) {
+        return new Vehicle(id(handle), start(handle), end(handle), arrivalStep(handle), type(handle));
+    }
+
+    /**
+     * @return number of vehicles currently registered
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of direct memory allocated for records
+     */
+    public long getDirectBytes() {
+        return directBytes;
+    }
+
+    /**
+     * @return bytes of records mapped from the spill file
+     */
+    public long getSpilledBytes() {
+        return spillBytes;
+    }
+
+    /**
+     * Longest waiting time among the registered vehicles, scanning the arrival
+     * steps of all records page by page.
+     *
+     * @param currentStep current simulation step
+     * @return maximum of {@code currentStep - arrivalStep}, or 0 when empty
+     */
+    public int maxWaitTime(int currentStep) {
+        int max = 0;
+        for (int base = 0; base < highWater; base += PAGE_RECORDS) {
+            ByteBuffer page = pages[base >>> PAGE_SHIFT];
+            int end = Math.min(PAGE_RECORDS, highWater - base) * RECORD_BYTES;
+            for (int off = ARRIVAL; off < end; off += RECORD_BYTES) {
+                int arrival = page.getInt(off);
+                if (arrival != FREE && currentStep - arrival > max) {
+                    max = currentStep - arrival;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Close and delete the spill file, if any, and drop all records. Mapped
+     * and direct pages are freed once they are garbage collected. Closing
+     * twice has no effect.
+     *
+     * @throws UncheckedIOException if the spill file cannot be closed
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        pages = new ByteBuffer[0];
+        highWater = 0;
+        freeHead = FREE;
+        size = 0;
+        heapIds.clear();
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close vehicle spill file", e);
+            } finally {
+                spill = null;
+            }
+        }
+    }
+
+    private ByteBuffer page(int handle) {
+        return pages[handle >>> PAGE_SHIFT];
+    }
+
+    private static int offset(int handle) {
+        return (handle & PAGE_MASK) * RECORD_BYTES;
+    }
+
+    /**
+     * Make sure the record of a newly allocated handle is backed by memory.
+     * The first page starts small and doubles up to full size; later pages
+     * are allocated whole, from direct memory while within budget and from
+     * the spill file afterwards.
+     */
+    private void ensurePage(int handle) {
+        int p = handle >>> PAGE_SHIFT;
+        if (p == 0) {
+            ByteBuffer first = pages[0];
+            if ((handle + 1) * RECORD_BYTES > first.capacity()) {
+                ByteBuffer grown = allocateDirect(Math.min(PAGE_BYTES, first.capacity() * 2));
+                grown.put(0, first, 0, first.capacity());
+                directBytes -= first.capacity();
+                pages[0] = grown;
+            }
+            return;
+        }
+        if (p == pages.length) {
+            pages = Arrays.copyOf(pages, p * 2);
+        }
+        if (pages[p] == null) {
+            pages[p] = memoryBudget > 0 && directBytes + PAGE_BYTES > memoryBudget
+                    ? mapSpillPage()
+                    : allocateDirect(PAGE_BYTES);
+        }
+    }
+
+    private ByteBuffer allocateDirect(int bytes) {
+        directBytes += bytes;
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer mapSpillPage() {
+        try {
+            if (spill == null) {
+                Path dir = spillDirectory != null ? spillDirectory : Path.of(System.getProperty("java.io.tmpdir"));
+                Files.createDirectories(dir);
+                Path file = Files.createTempFile(dir, "vehicles", ".spill");
+                spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            ByteBuffer page = spill.map(FileChannel.MapMode.READ_WRITE, spillBytes, PAGE_BYTES)
+                    .order(ByteOrder.nativeOrder());
+            spillBytes += PAGE_BYTES;
+            return page;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot extend vehicle spill file", e);
+        }
+    }
+}
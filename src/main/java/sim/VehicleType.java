@@ -3,5 +3,19 @@ package sim;
 public enum VehicleType {
     NORMAL,
     BUS,
-    EMERGENCY
+    EMERGENCY;
+
+    private static final VehicleType[] VALUES = values();
+
+    /**
+     * Resolve a vehicle type name case-insensitively, e.g. {@code "bus"}.
+     *
+     * @throws IllegalArgumentException if the name matches no vehicle type
+     */
+    public static VehicleType parse(String name) {
+        for (VehicleType t : VALUES) {
+            if (t.name().equalsIgnoreCase(name)) return t;
+        }
+        throw new IllegalArgumentException("Unknown vehicle type: " + name);
+    }
 }
\ No newline at end of file
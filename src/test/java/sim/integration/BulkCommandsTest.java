@@ -0,0 +1,69 @@
+package sim.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkCommandsTest {
+    private static SimulationEngine newEngine() {
+        Intersection intersection = new Intersection(null);
+        intersection.applyLanePriorities(Config.current.lanePriorities);
+        intersection.setController(new ActuatedController(intersection.getRoads()));
+        return new SimulationEngine(intersection);
+    }
+
+    /**
+     * Rewrite bulk arrivals and multi-step commands into single-vehicle and
+     * single-step commands.
+     */
+    private static List<Map<String, Object>> expand(List<Map<String, Object>> commands) {
+        List<Map<String, Object>> expanded = new ArrayList<>();
+        for (Map<String, Object> command : commands) {
+            int count = command.get("count") instanceof Number n ? n.intValue() : 1;
+            if ("addVehicles".equals(command.get("type"))) {
+                int start = command.get("startIndex") instanceof Number n ? n.intValue() : 1;
+                for (int i = 0; i < count; i++) {
+                    Map<String, Object> add = new LinkedHashMap<>(command);
+                    add.keySet().removeAll(List.of("count", "idPrefix", "startIndex"));
+                    add.put("type", "addVehicle");
+                    add.put("vehicleId", (String) command.get("idPrefix") + (start + i));
+                    expanded.add(add);
+                }
+            } else if ("step".equals(command.get("type"))) {
+                for (int i = 0; i < count; i++) {
+                    expanded.add(Map.of("type", "step"));
+                }
+            } else {
+                expanded.add(command);
+            }
+        }
+        return expanded;
+    }
+
+    @Test
+    public void testBulkCommandsMatchExpandedForm() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> input = mapper.readValue(new File("src/test/java/sim/integration/resources/bulk_commands_input.json"), Map.class);
+        List<Map<String, Object>> commands = (List<Map<String, Object>>) input.get("commands");
+
+        SimulationEngine bulk = newEngine();
+        bulk.executeCommands(commands);
+        SimulationEngine expanded = newEngine();
+        expanded.executeCommands(expand(commands));
+
+        // Verify identical output and statistics
+        assertEquals(expanded.getResult(), bulk.getResult());
+        assertEquals(expanded.getStats(), bulk.getStats());
+        Map<String, Object> stats = bulk.getStats();
+        assertEquals(20, stats.get("totalVehicles"));
+        assertEquals(20, stats.get("totalSteps"));
+    }
+}
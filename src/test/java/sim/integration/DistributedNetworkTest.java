@@ -0,0 +1,69 @@
+package sim.integration;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Splits a grid across workers talking over local sockets and compares the
+ * result with a single-process run. Workers run as threads of the test JVM;
+ * the protocol is the same as between processes.
+ */
+public class DistributedNetworkTest {
+
+    @Test
+    public void testMatchesSingleProcess() throws Exception {
+        Config config = new Config();
+        DistributedNetwork.Settings settings = new DistributedNetwork.Settings(5, 4, 3, 300, 2, 0.3, 7, config);
+
+        Network single = Network.grid(5, 4, 3, RunConfig.of(config, false));
+        single.setDemand(NetworkRunner.randomDemand(single, 0.3, 7));
+        single.run(300, 1);
+
+        int partitions = 3;
+        DistributedNetwork.Outcome outcome;
+        List<Thread> workers = new ArrayList<>();
+        Throwable[] failures = new Throwable[partitions];
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                Thread worker = new Thread(() -> {
+                    try {
+                        DistributedNetwork.work(address, partition);
+                    } catch (Throwable t) {
+                        failures[partition] = t;
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            outcome = DistributedNetwork.coordinate(server, partitions, settings);
+        }
+        for (Thread worker : workers) {
+            worker.join(10_000);
+        }
+        for (Throwable failure : failures) {
+            assertNull(failure);
+        }
+
+        assertEquals(single.getStats(), outcome.stats());
+        assertTrue((long) outcome.stats().get("vehiclesExited") > 0);
+        assertEquals(partitions, outcome.timings().size());
+        int intersections = 0;
+        for (DistributedNetwork.Timing timing : outcome.timings()) {
+            intersections += timing.intersections();
+            assertTrue(timing.bytesSent() > 0);
+            assertTrue(timing.bytesReceived() > 0);
+        }
+        assertEquals(20, intersections);
+    }
+}
@@ -0,0 +1,111 @@
+package sim.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that every intersection of a {@link Fleet} reports the same
+ * statistics as an {@link Intersection} with an {@link ActuatedController}
+ * run by a {@link SimulationEngine} on the same arrivals.
+ */
+public class FleetTest {
+    private static final String[] SCENARIOS = {
+            "basic_flow_input.json", "bulk_commands_input.json", "emergency_priority_input.json",
+            "fairness_cap_input.json", "lane_priority_input.json", "mixed_traffic_input.json",
+            "phase_rotation_input.json"
+    };
+
+    private static SimulationEngine engine(RunConfig config) {
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        return new SimulationEngine(intersection);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testScenariosMatchEngine() throws Exception {
+        RunConfig config = RunConfig.of(new Config(), false);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (String scenario : SCENARIOS) {
+                Map<String, Object> input = new ObjectMapper().readValue(
+                        new File("src/test/java/sim/integration/resources/" + scenario), Map.class);
+                List<Map<String, Object>> commands = (List<Map<String, Object>>) input.get("commands");
+
+                SimulationEngine engine = engine(config);
+                engine.executeCommands(commands);
+
+                Fleet fleet = new Fleet(3, config);
+                for (Map<String, Object> map : commands) {
+                    switch (Command.fromMap(map)) {
+                        case Command.AddVehicle add -> {
+                            for (int i = 0; i < fleet.size(); i++) {
+                                fleet.addVehicle(i, add.startRoad(), add.endRoad(), add.vehicleType());
+                            }
+                        }
+                        case Command.AddVehicles add -> {
+                            for (int i = 0; i < fleet.size(); i++) {
+                                for (int k = 0; k < add.count(); k++) {
+                                    fleet.addVehicle(i, add.startRoad(), add.endRoad(), add.vehicleType());
+                                }
+                            }
+                        }
+                        case Command.Step step -> fleet.run(step.count(), pool);
+                        case Command.Unknown unknown -> { }
+                    }
+                }
+                fleet.finish();
+                for (int i = 0; i < fleet.size(); i++) {
+                    assertEquals(engine.getStats(), fleet.getStats(i), scenario);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRandomDemandMatchesEngines() {
+        RunConfig config = RunConfig.of(new Config(), false);
+        int size = 600;
+        Fleet fleet = new Fleet(size, config);
+        fleet.setDemand((f, i, step) -> FleetRunner.randomArrivals(f, 5, 0.3, i, step,
+                (start, end, type) -> f.addVehicle(i, start, end, type)));
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            fleet.run(200, pool);
+        } finally {
+            pool.shutdown();
+        }
+        fleet.finish();
+
+        List<SimulationEngine> engines = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            engines.add(engine(config));
+        }
+        for (int step = 0; step < 200; step++) {
+            for (int i = 0; i < size; i++) {
+                SimulationEngine engine = engines.get(i);
+                FleetRunner.randomArrivals(fleet, 5, 0.3, i, step,
+                        (start, end, type) -> engine.addVehicle("v", start, end, type));
+                engine.step();
+            }
+        }
+        long queued = 0;
+        for (int i = 0; i < size; i++) {
+            engines.get(i).finish();
+            assertEquals(engines.get(i).getStats(), fleet.getStats(i), "intersection " + i);
+            queued += fleet.getQueued(i);
+        }
+        assertTrue(queued > 0);
+    }
+}
@@ -0,0 +1,115 @@
+package sim.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the mixed traffic scenario under the {@link LookaheadController}.
+ */
+public class LookaheadControllerTest {
+    private static final Path SCENARIO = Path.of("src/test/java/sim/integration/resources/mixed_traffic_input.json");
+
+    @BeforeEach
+    public void setupConfig() {
+        Config.current = new Config();
+    }
+
+    @Test
+    public void testAllVehiclesLeave() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Intersection intersection = new Intersection(null);
+            LookaheadController controller = new LookaheadController(intersection, 10, 0, pool);
+            intersection.setController(controller);
+            SimulationEngine engine = new SimulationEngine(intersection);
+            try (CommandReader commands = new CommandReader(SCENARIO.toFile())) {
+                engine.executeCommands(commands);
+            }
+            Map<String, Object> stats = engine.getStats();
+            assertEquals(stats.get("totalVehicles"), stats.get("vehiclesLeft"));
+            assertTrue(controller.getRollouts() > 0);
+            assertEquals(0, controller.getAbandoned());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * With a budget too small for any rollout to finish, every rollout should
+     * be abandoned and every decision should fall back to the actuated one.
+     */
+    @Test
+    public void testExpiredBudgetFallsBack() throws Exception {
+        Intersection plain = new Intersection(null);
+        plain.setController(new ActuatedController(plain.getRoads()));
+        SimulationEngine expected = new SimulationEngine(plain);
+        try (CommandReader commands = new CommandReader(SCENARIO.toFile())) {
+            expected.executeCommands(commands);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Intersection intersection = new Intersection(null);
+            LookaheadController controller = new LookaheadController(intersection, 10, 1, pool);
+            intersection.setController(controller);
+            SimulationEngine engine = new SimulationEngine(intersection);
+            try (CommandReader commands = new CommandReader(SCENARIO.toFile())) {
+                engine.executeCommands(commands);
+            }
+            assertTrue(controller.getRollouts() > 0);
+            assertEquals(controller.getRollouts(), controller.getAbandoned());
+            assertEquals(expected.getStats(), engine.getStats());
+            assertEquals(expected.getResult(), engine.getResult());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run the scenario with debug output on and return what it printed.
+     */
+    private static String debugTrace(boolean lookahead, ForkJoinPool pool) throws Exception {
+        RunConfig config = RunConfig.of(new Config(), true);
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(lookahead ? new LookaheadController(intersection, 10, 0, pool)
+                : new ActuatedController(intersection.getRoads(), config));
+        SimulationEngine engine = new SimulationEngine(intersection);
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try (CommandReader commands = new CommandReader(SCENARIO.toFile())) {
+            engine.executeCommands(commands);
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Under debug, rollouts should not print: the trace should hold one
+     * intersection state per real step, as with the actuated controller.
+     */
+    @Test
+    public void testRolloutsStayOutOfDebugTrace() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            String actuated = debugTrace(false, pool);
+            String lookahead = debugTrace(true, pool);
+            assertTrue(lookahead.contains("Lookahead chose phase"), lookahead);
+            assertEquals(actuated.split("=== INTERSECTION STATE ===", -1).length,
+                    lookahead.split("=== INTERSECTION STATE ===", -1).length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package sim.integration;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs corridors and grids of intersections, checking hand-off between
+ * intersections and that results do not depend on the number of threads.
+ */
+public class NetworkTest {
+
+    @Test
+    public void testVehicleCrossesCorridor() {
+        Network network = Network.corridor(3, 4, RunConfig.of(new Config(), false));
+        network.getNode(0, 0).addVehicle("car1", Direction.WEST, 2, Direction.EAST,
+                VehicleType.NORMAL);
+        network.run(30, 2);
+
+        Map<String, Object> stats = network.getStats();
+        assertEquals(30, stats.get("totalSteps"));
+        assertEquals(1L, stats.get("vehiclesEntered"));
+        assertEquals(1L, stats.get("vehiclesExited"));
+        assertEquals(3L, stats.get("passages"));
+        // two roads of four steps and at least one step at every intersection
+        assertTrue((double) stats.get("averageTripTime") >= 2 * 4 + 3);
+        for (Network.Node node : network.getNodes()) {
+            assertEquals(1, node.getPassages());
+            assertEquals(0, node.getQueued());
+        }
+    }
+
+    @Test
+    public void testResultsIndependentOfThreads() {
+        RunConfig config = RunConfig.of(new Config(), false);
+        List<Object> reference = null;
+        for (int threads : new int[]{1, 2, 5, 12}) {
+            Network network = Network.grid(4, 3, 3, config);
+            network.setDemand(NetworkRunner.randomDemand(network, 0.3, 42));
+            network.run(150, threads);
+            network.run(150, threads);
+
+            List<Object> result = new ArrayList<>();
+            result.add(network.getStats());
+            for (Network.Node node : network.getNodes()) {
+                result.add(List.of(node.getPassages(), node.getWaitTime(), node.getQueued()));
+            }
+            if (reference == null) {
+                reference = result;
+                assertTrue((long) network.getStats().get("vehiclesExited") > 0);
+            } else {
+                assertEquals(reference, result, threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    public void testExitMustLeaveNetwork() {
+        Network network = Network.corridor(3, 2, RunConfig.of(new Config(), false));
+        assertThrows(IllegalArgumentException.class, () -> network.getNode(0, 0).addVehicle("car1",
+                Direction.WEST, 1, Direction.EAST, VehicleType.NORMAL));
+        assertThrows(IllegalArgumentException.class, () -> network.getNode(0, 0).addVehicle("car2",
+                Direction.WEST, 0, Direction.WEST, VehicleType.NORMAL));
+    }
+
+    @Test
+    public void testFailureStopsAllPartitions() {
+        int[] built = new int[1];
+        Network network = new Network(4, 1, 1, RunConfig.of(new Config(), false), intersection -> {
+            if (built[0]++ == 3) {
+                return roads -> {
+                    throw new IllegalStateException("broken controller");
+                };
+            }
+            return roads -> Set.of();
+        });
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> network.run(10, 4));
+        assertEquals("broken controller", e.getCause().getMessage());
+    }
+}
@@ -0,0 +1,84 @@
+package sim.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tunes two parameters on the mixed traffic scenario by successive halving.
+ */
+public class ParameterOptimizerTest {
+    private static final Path SCENARIO = Path.of("src/test/java/sim/integration/resources/mixed_traffic_input.json");
+
+    @BeforeEach
+    public void setupConfig() {
+        Config.current = new Config();
+    }
+
+    @Test
+    public void testSuccessiveHalving() throws Exception {
+        Path cache = Files.createTempDirectory("optimizer");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Path compiled = new ScenarioCache(cache).compiled(SCENARIO);
+            ParameterOptimizer.Objective objective = ParameterOptimizer.Objective.parse("averageWaitTime=1");
+            ParameterOptimizer optimizer = new ParameterOptimizer(compiled, Config::new, List.of(
+                    SweepRunner.Parameter.parse("alpha=1,2,3"),
+                    SweepRunner.Parameter.parse("fairnessCap=5,30")), objective);
+
+            ParameterOptimizer.Outcome outcome = optimizer.optimize(pool, 6, 2,
+                    ParameterOptimizer.Budget.unlimited(), 1);
+            assertTrue(outcome.complete());
+            // baseline, then rounds of 6, 3 and 1 candidates
+            assertEquals(1 + 6 + 3 + 1, outcome.evaluations());
+            assertEquals(List.of(6, 3, 1), outcome.rounds().stream().map(ParameterOptimizer.Round::candidates).toList());
+            assertEquals(outcome.best(), outcome.rounds().get(2).best());
+            ParameterOptimizer.Candidate best = outcome.best();
+            assertEquals(optimizer.getTotalSteps(), best.steps());
+
+            Config config = optimizer.configOf(best.parameters());
+            assertEquals((double) best.parameters().get("alpha"), config.alpha);
+            assertEquals(best.score(), objective.score(SweepRunner.simulate(compiled, RunConfig.of(config, false))));
+            assertEquals(objective.score(SweepRunner.simulate(compiled, RunConfig.of(new Config(), false))),
+                    outcome.baseline().score());
+
+            // per-phase statistics only exist with a controller attached
+            new ParameterOptimizer(compiled, Config::new, List.of(SweepRunner.Parameter.parse("alpha=1,2")),
+                    ParameterOptimizer.Objective.parse("phases.Phase0.avgWaitTime=1"));
+            assertThrows(IllegalArgumentException.class, () -> new ParameterOptimizer(compiled, Config::new,
+                    List.of(SweepRunner.Parameter.parse("alpha=1,2")),
+                    ParameterOptimizer.Objective.parse("phases.Phase9.avgWaitTime=1")));
+
+            ParameterOptimizer.Outcome late = optimizer.optimize(pool, 6, 2, new ParameterOptimizer.Budget(1, 0), 1);
+            assertFalse(late.complete());
+            assertNull(late.best());
+        } finally {
+            pool.shutdown();
+            try (var files = Files.walk(cache)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownObjectiveField() throws Exception {
+        Path cache = Files.createTempDirectory("optimizer");
+        try {
+            Path compiled = new ScenarioCache(cache).compiled(SCENARIO);
+            assertThrows(IllegalArgumentException.class, () -> new ParameterOptimizer(compiled, Config::new,
+                    List.of(SweepRunner.Parameter.parse("alpha=1,2")),
+                    ParameterOptimizer.Objective.parse("averageSpeed=1")));
+        } finally {
+            try (var files = Files.walk(cache)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
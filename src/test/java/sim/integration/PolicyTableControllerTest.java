@@ -0,0 +1,65 @@
+package sim.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiles the actuated policy into a lookup table and checks the table
+ * controller against the actuated controller.
+ */
+public class PolicyTableControllerTest {
+    private static final Path SCENARIO = Path.of("src/test/java/sim/integration/resources/mixed_traffic_input.json");
+
+    @BeforeEach
+    public void setupConfig() {
+        Config.current = new Config();
+    }
+
+    @Test
+    public void testCompiledTableFollowsActuatedPolicy() throws Exception {
+        PolicyCompiler compiler = new PolicyCompiler(new int[]{1, 4}, PolicyCompiler.defaultIdleThresholds(30));
+        int visited = compiler.compile(List.of(SCENARIO));
+        PolicyCompiler.Agreement agreement = compiler.measure(List.of(SCENARIO));
+
+        assertTrue(visited > 0);
+        assertTrue(agreement.decisions() > 0);
+        assertTrue(agreement.rate() >= 0.8, "agreement " + agreement.rate());
+        assertEquals(agreement.actuatedWait(), agreement.tableWait(), agreement.actuatedWait() * 0.25);
+    }
+
+    @Test
+    public void testTableFileRoundTrip() throws Exception {
+        PolicyCompiler compiler = new PolicyCompiler(new int[]{1, 4}, new int[]{15, 30});
+        compiler.compile(List.of(SCENARIO));
+        PolicyTable table = compiler.getTable();
+        Path file = Files.createTempFile("policy", ".bin");
+        try {
+            table.save(file);
+            PolicyTable loaded = PolicyTable.load(file);
+            assertEquals(table.size(), loaded.size());
+            assertArrayEquals(new int[]{1, 4}, loaded.getQueueThresholds());
+            for (int cell = 0; cell < table.size(); cell += 97) {
+                assertEquals(table.decision(cell), loaded.decision(cell));
+            }
+
+            Intersection intersection = new Intersection(null);
+            intersection.setController(new PolicyTableController(intersection.getRoads(), loaded));
+            SimulationEngine engine = new SimulationEngine(intersection);
+            try (CommandReader commands = new CommandReader(SCENARIO.toFile())) {
+                engine.executeCommands(commands);
+            }
+            Map<String, Object> stats = engine.getStats();
+            assertEquals(stats.get("totalVehicles"), stats.get("vehiclesLeft"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package sim.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives {@link SimulationServer} sessions over HTTP, checking them against
+ * a {@link SimulationEngine} run directly and the error responses.
+ */
+public class SimulationServerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String INPUT = "src/test/java/sim/integration/resources/mixed_traffic_input.json";
+
+    private static HttpResponse<String> send(HttpClient client, int port, String method, String path, String body)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> json(Object value) throws Exception {
+        return MAPPER.readValue(value instanceof String s ? s : MAPPER.writeValueAsString(value), Map.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> commands() throws Exception {
+        return (List<Map<String, Object>>) MAPPER.readValue(new File(INPUT), Map.class).get("commands");
+    }
+
+    /**
+     * Open a session, post the commands a few at a time and close it.
+     *
+     * @return the step statuses returned by the posts, the result, and the
+     *         final statistics
+     */
+    private static List<Object> replay(HttpClient client, int port, List<Map<String, Object>> commands)
+            throws Exception {
+        HttpResponse<String> created = send(client, port, "POST", "/sessions", null);
+        assertEquals(201, created.statusCode());
+        String path = "/sessions/" + json(created.body()).get("sessionId");
+        List<Object> statuses = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i += 3) {
+            List<Map<String, Object>> chunk = commands.subList(i, Math.min(commands.size(), i + 3));
+            HttpResponse<String> response = send(client, port, "POST", path + "/commands",
+                    MAPPER.writeValueAsString(Map.of("commands", chunk)));
+            assertEquals(200, response.statusCode(), response.body());
+            statuses.addAll((List<Object>) json(response.body()).get("stepStatuses"));
+        }
+        Map<String, Object> result = json(send(client, port, "GET", path + "/result", null).body());
+        HttpResponse<String> closed = send(client, port, "DELETE", path, null);
+        assertEquals(200, closed.statusCode());
+        assertEquals(404, send(client, port, "GET", path + "/stats", null).statusCode());
+        return List.of(statuses, result, json(closed.body()));
+    }
+
+    @Test
+    public void testSessionsMatchEngine() throws Exception {
+        List<Map<String, Object>> commands = commands();
+        RunConfig config = RunConfig.of(new Config(), false);
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        SimulationEngine engine = new SimulationEngine(intersection);
+        engine.executeCommands(commands);
+        Map<String, Object> result = json(engine.getResult());
+        Map<String, Object> stats = json(engine.getStats());
+
+        try (SimulationServer server = new SimulationServer(new InetSocketAddress("localhost", 0), config);
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.start();
+            HttpClient client = HttpClient.newBuilder().executor(clients).build();
+            List<Future<List<Object>>> replays = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                replays.add(clients.submit(() -> replay(client, server.getPort(), commands)));
+            }
+            for (Future<List<Object>> replay : replays) {
+                List<Object> outcome = replay.get();
+                assertEquals(result.get("stepStatuses"), outcome.get(0));
+                assertEquals(result, outcome.get(1));
+                assertEquals(stats, outcome.get(2));
+            }
+            assertEquals(0, server.getSessionCount());
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        try (SimulationServer server = new SimulationServer(new InetSocketAddress("localhost", 0),
+                RunConfig.of(new Config(), false))) {
+            server.start();
+            int port = server.getPort();
+            HttpClient client = HttpClient.newHttpClient();
+            assertEquals(404, send(client, port, "GET", "/sessions/42/stats", null).statusCode());
+            assertEquals(405, send(client, port, "GET", "/sessions", null).statusCode());
+            assertEquals(400, send(client, port, "POST", "/sessions", "{\"alpha\":").statusCode());
+
+            String path = "/sessions/" + json(send(client, port, "POST", "/sessions", "{\"yellowDuration\":2}").body())
+                    .get("sessionId");
+            assertEquals(405, send(client, port, "POST", path + "/stats", null).statusCode());
+            assertEquals(404, send(client, port, "GET", path + "/unknown", null).statusCode());
+            HttpResponse<String> invalid = send(client, port, "POST", path + "/commands",
+                    "{\"commands\":[{\"type\":\"addVehicle\",\"vehicleId\":\"v\",\"startRoad\":\"up\",\"endRoad\":\"south\"}]}");
+            assertEquals(400, invalid.statusCode());
+            assertTrue(json(invalid.body()).containsKey("error"));
+            assertEquals(400, send(client, port, "POST", path + "/commands", "{}").statusCode());
+            assertEquals(1, server.getSessionCount());
+        }
+    }
+}
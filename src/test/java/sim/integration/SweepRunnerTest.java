@@ -0,0 +1,105 @@
+package sim.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sweeps a small parameter grid over the mixed traffic scenario and checks
+ * the runs against ordinary single runs.
+ */
+public class SweepRunnerTest {
+    private static final Path SCENARIO = Path.of("src/test/java/sim/integration/resources/mixed_traffic_input.json");
+
+    @BeforeEach
+    public void setupConfig() {
+        Config.current = new Config();
+    }
+
+    private static List<SweepRunner.Result> sweep(SweepRunner sweep, int threads) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return sweep.run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGridMatchesSingleRuns() throws Exception {
+        Path cache = Files.createTempDirectory("sweep");
+        try {
+            Path compiled = new ScenarioCache(cache).compiled(SCENARIO);
+            SweepRunner sweep = new SweepRunner(compiled, Config::new, List.of(
+                    SweepRunner.Parameter.parse("alpha=1,3"),
+                    SweepRunner.Parameter.parse("minGreen=1:2:1")));
+            assertEquals(4, sweep.size());
+            assertEquals(Map.of("alpha", 3.0, "minGreen", 1.0), sweep.point(2));
+
+            List<SweepRunner.Result> parallel = sweep(sweep, 3);
+            List<SweepRunner.Result> sequential = sweep(sweep, 1);
+            assertEquals(sequential, parallel);
+
+            // the last point as an ordinary run configured through Config.current
+            Config.current.alpha = 3.0;
+            for (Config.PhaseTime time : Config.current.phases) {
+                time.minGreen = 2;
+            }
+            Intersection intersection = new Intersection(null);
+            intersection.applyLanePriorities(Config.current.lanePriorities);
+            intersection.setController(new ActuatedController(intersection.getRoads()));
+            SimulationEngine engine = new SimulationEngine(intersection);
+            try (CommandReader commands = new CommandReader(SCENARIO.toFile())) {
+                engine.executeCommands(commands);
+            }
+            assertEquals(engine.getStats(), parallel.get(3).stats());
+
+            StringWriter table = new StringWriter();
+            SweepRunner.writeTable(parallel, table);
+            String[] lines = table.toString().split("\n");
+            assertEquals(5, lines.length);
+            assertTrue(lines[0].startsWith("alpha,minGreen,totalVehicles,"), lines[0]);
+            assertTrue(lines[0].contains("phases.Phase0.avgWaitTime"), lines[0]);
+            assertTrue(lines[4].startsWith("3.0,2.0,"), lines[4]);
+        } finally {
+            try (var files = Files.walk(cache)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> SweepRunner.Parameter.parse("delta=1,2"));
+        assertThrows(IllegalArgumentException.class, () -> SweepRunner.Parameter.parse("fairnessCap=2.5"));
+        assertThrows(IllegalArgumentException.class, () -> SweepRunner.Parameter.parse("alpha.1=2"));
+        assertThrows(IllegalArgumentException.class, () -> SweepRunner.Parameter.parse("maxGreen.x=2"));
+        assertThrows(IllegalArgumentException.class, () -> SweepRunner.Parameter.parse("alpha=3:1:1"));
+        assertArrayEquals(new double[]{0.5, 1.0, 1.5}, SweepRunner.Parameter.parse("beta=0.5:1.5:0.5").values());
+        assertArrayEquals(new double[]{0.1, 0.2, 0.3}, SweepRunner.Parameter.parse("gamma=0.1:0.3:0.1").values());
+        assertArrayEquals(new double[]{0.1, 0.2}, SweepRunner.Parameter.parse("gamma=0.1:0.25:0.1").values());
+    }
+
+    @Test
+    public void testMinGreenAboveMaxGreen() {
+        Path scenario = Path.of("unused");
+        assertThrows(IllegalArgumentException.class, () -> new SweepRunner(scenario, Config::new,
+                List.of(SweepRunner.Parameter.parse("minGreen=2:6:2"))));
+        assertThrows(IllegalArgumentException.class, () -> new SweepRunner(scenario, Config::new, List.of(
+                SweepRunner.Parameter.parse("minGreen=1,3"), SweepRunner.Parameter.parse("maxGreen.1=2,4"))));
+        // a later per-phase value overrides the one for every phase
+        new SweepRunner(scenario, Config::new, List.of(
+                SweepRunner.Parameter.parse("minGreen=6"), SweepRunner.Parameter.parse("minGreen.0=1"),
+                SweepRunner.Parameter.parse("minGreen.1=1"), SweepRunner.Parameter.parse("minGreen.2=1"),
+                SweepRunner.Parameter.parse("minGreen.3=1"), SweepRunner.Parameter.parse("maxGreen=4:8:4")));
+    }
+}
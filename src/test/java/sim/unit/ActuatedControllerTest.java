@@ -54,4 +54,24 @@ class ActuatedControllerTest {
         assertEquals(1, greenLanes.size());
         assertTrue(greenLanes.contains(northStraight));
     }
-}
\ No newline at end of file
+
+    /**
+     * Vehicles queued after the controller was created should be picked up
+     * by its cached phase aggregates and attract the green light.
+     */
+    @Test
+    void testSwitchesToPhaseWithArrivals() {
+        controller.getGreenLanes(roads);
+        Lane eastStraight = roads.get(Direction.EAST).getLane(LaneType.STRAIGHT);
+        for (int i = 0; i < 5; i++) {
+            eastStraight.addVehicle(new Vehicle("e" + i, Direction.EAST, Direction.WEST, 1, VehicleType.NORMAL));
+        }
+
+        Set<Lane> greenLanes = Set.of();
+        for (int step = 0; step < 10 && !greenLanes.contains(eastStraight); step++) {
+            greenLanes = controller.getGreenLanes(roads);
+        }
+        assertEquals(1, controller.getCurrentPhaseIndex());
+        assertTrue(greenLanes.contains(eastStraight));
+    }
+}
@@ -0,0 +1,118 @@
+package sim.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CommandReader} verifying that commands are streamed
+ * in order from the {@code commands} array.
+ */
+class CommandReaderTest {
+
+    private static CommandReader reader(String json) throws Exception {
+        return new CommandReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Commands should be returned one by one in document order, ignoring any
+     * other fields of the root object.
+     */
+    @Test
+    void testReadsCommandsInOrder() throws Exception {
+        String json = """
+                {
+                  "name": "demo",
+                  "meta": { "nested": [1, 2, { "type": "step" }] },
+                  "commands": [
+                    { "type": "addVehicle", "vehicleId": "V1", "startRoad": "north", "endRoad": "south" },
+                    { "type": "step" },
+                    { "type": "addVehicles", "count": 2, "idPrefix": "b", "startIndex": 5,
+                      "startRoad": "east", "endRoad": "west", "vehicleType": "bus" },
+                    { "type": "step", "count": 3 }
+                  ],
+                  "trailer": true
+                }
+                """;
+        List<Command> commands = new ArrayList<>();
+        try (CommandReader r = reader(json)) {
+            r.forEachRemaining(commands::add);
+        }
+
+        assertEquals(List.of(
+                new Command.AddVehicle("V1", Direction.NORTH, Direction.SOUTH, VehicleType.NORMAL),
+                Command.STEP,
+                new Command.AddVehicles("b", 5, 2, Direction.EAST, Direction.WEST, VehicleType.BUS),
+                new Command.Step(3)
+        ), commands);
+    }
+
+    /**
+     * Counts should be decoded like {@link Command#fromMap}: whole numbers
+     * written with a fraction are accepted and fractional ones rejected.
+     */
+    @Test
+    void testFractionalCounts() throws Exception {
+        try (CommandReader r = reader("{ \"commands\": [ { \"type\": \"step\", \"count\": 2.0 } ] }")) {
+            assertEquals(new Command.Step(2), r.next());
+        }
+        try (CommandReader r = reader("{ \"commands\": [ { \"type\": \"step\", \"count\": 2.5 } ] }")) {
+            assertThrows(IllegalArgumentException.class, r::next);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> Command.fromMap(Map.of("type", "step", "count", 2.5)));
+    }
+
+    /**
+     * A document without a commands array yields no commands.
+     */
+    @Test
+    void testMissingCommandsArray() throws Exception {
+        try (CommandReader r = reader("{ \"other\": [] }")) {
+            assertFalse(r.hasNext());
+        }
+    }
+
+    /**
+     * Streaming the commands into the engine should produce the same results
+     * as executing the equivalent list of command maps.
+     */
+    @Test
+    void testStreamingMatchesListExecution() throws Exception {
+        String json = """
+                { "commands": [
+                    { "type": "addVehicle", "vehicleId": "a", "startRoad": "north", "endRoad": "south" },
+                    { "type": "addVehicle", "vehicleId": "b", "startRoad": "east", "endRoad": "north", "vehicleType": "BUS" },
+                    { "type": "step" }, { "type": "step" }, { "type": "step" }, { "type": "step" }
+                ] }
+                """;
+        Config.current = new Config();
+
+        SimulationEngine streamed = new SimulationEngine(newIntersection());
+        try (CommandReader r = reader(json)) {
+            streamed.executeCommands(r);
+        }
+
+        Map<String, Object> input = new ObjectMapper().readValue(json, Map.class);
+        List<Map<String, Object>> loaded = (List<Map<String, Object>>) input.get("commands");
+        SimulationEngine listed = new SimulationEngine(newIntersection());
+        listed.executeCommands(loaded);
+
+        assertEquals(listed.getResult(), streamed.getResult());
+        assertEquals(listed.getStats(), streamed.getStats());
+    }
+
+    private static Intersection newIntersection() {
+        Intersection intersection = new Intersection(null);
+        intersection.setController(new ActuatedController(intersection.getRoads()));
+        return intersection;
+    }
+}
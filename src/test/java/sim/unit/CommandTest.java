@@ -0,0 +1,70 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Command} decoding from the generic map form.
+ */
+class CommandTest {
+
+    /**
+     * Road names and vehicle types are resolved case-insensitively and the
+     * vehicle type defaults to NORMAL.
+     */
+    @Test
+    void testDecodeAddVehicle() {
+        Command bus = Command.fromMap(Map.of(
+                "type", "addVehicle", "vehicleId", "b1",
+                "startRoad", "east", "endRoad", "North", "vehicleType", "bus"));
+        assertEquals(new Command.AddVehicle("b1", Direction.EAST, Direction.NORTH, VehicleType.BUS), bus);
+
+        Command car = Command.fromMap(Map.of(
+                "type", "addVehicle", "vehicleId", "c1", "startRoad", "WEST", "endRoad", "EAST"));
+        assertEquals(new Command.AddVehicle("c1", Direction.WEST, Direction.EAST, VehicleType.NORMAL), car);
+    }
+
+    /**
+     * Step commands decode to the shared instance and unrecognised types are
+     * preserved for reporting.
+     */
+    @Test
+    void testDecodeStepAndUnknown() {
+        assertSame(Command.STEP, Command.fromMap(Map.of("type", "step")));
+        assertEquals(new Command.Unknown("teleport"), Command.fromMap(Map.of("type", "teleport")));
+    }
+
+    /**
+     * Bulk arrivals default to NORMAL vehicles numbered from 1, multi-step
+     * commands keep their count and a missing, negative or fractional count
+     * is rejected.
+     */
+    @Test
+    void testDecodeBulkCommands() {
+        Command bulk = Command.fromMap(Map.of(
+                "type", "addVehicles", "count", 3, "idPrefix", "car",
+                "startRoad", "north", "endRoad", "west"));
+        assertEquals(new Command.AddVehicles("car", 1, 3, Direction.NORTH, Direction.WEST, VehicleType.NORMAL), bulk);
+        assertEquals("car3", ((Command.AddVehicles) bulk).vehicleId(2));
+
+        assertEquals(new Command.Step(25), Command.fromMap(Map.of("type", "step", "count", 25)));
+        assertThrows(IllegalArgumentException.class, () -> Command.fromMap(Map.of(
+                "type", "addVehicles", "idPrefix", "car", "startRoad", "north", "endRoad", "west")));
+        assertThrows(IllegalArgumentException.class, () -> Command.fromMap(Map.of("type", "step", "count", -1)));
+        assertEquals(new Command.Step(2), Command.fromMap(Map.of("type", "step", "count", 2.0)));
+        assertThrows(IllegalArgumentException.class, () -> Command.fromMap(Map.of("type", "step", "count", 2.5)));
+    }
+
+    /**
+     * Invalid road names are rejected at decode time.
+     */
+    @Test
+    void testInvalidDirection() {
+        assertThrows(IllegalArgumentException.class, () -> Command.fromMap(Map.of(
+                "type", "addVehicle", "vehicleId", "x", "startRoad", "up", "endRoad", "SOUTH")));
+    }
+}
@@ -0,0 +1,59 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ConflictMatrix} covering the standard movement rule
+ * and custom lane layouts.
+ */
+class ConflictMatrixTest {
+
+    private static long bit(Intersection intersection, Direction d, LaneType type) {
+        return 1L << intersection.getRoads().get(d).getLane(type).getIndex();
+    }
+
+    /**
+     * Opposite lanes of the same type may run together; anything mixing axes
+     * or lane types conflicts.
+     */
+    @Test
+    void testStandardMovements() {
+        Intersection intersection = new Intersection(null);
+        ConflictMatrix matrix = intersection.getConflicts();
+        long nsStraight = bit(intersection, Direction.NORTH, LaneType.STRAIGHT)
+                | bit(intersection, Direction.SOUTH, LaneType.STRAIGHT);
+        long ewLeft = bit(intersection, Direction.EAST, LaneType.LEFT)
+                | bit(intersection, Direction.WEST, LaneType.LEFT);
+
+        assertFalse(matrix.hasConflict(0));
+        assertFalse(matrix.hasConflict(nsStraight));
+        assertFalse(matrix.hasConflict(ewLeft));
+        assertTrue(matrix.hasConflict(nsStraight | bit(intersection, Direction.EAST, LaneType.STRAIGHT)));
+        assertTrue(matrix.hasConflict(bit(intersection, Direction.NORTH, LaneType.STRAIGHT)
+                | bit(intersection, Direction.NORTH, LaneType.LEFT)));
+        assertSame(matrix, new Intersection(null).getConflicts());
+    }
+
+    /**
+     * A matrix built from a custom rule should be symmetric and only flag
+     * the listed pairs.
+     */
+    @Test
+    void testCustomRule() {
+        Lane a = new Lane(Direction.NORTH, LaneType.LEFT);
+        Lane b = new Lane(Direction.EAST, LaneType.LEFT);
+        Lane c = new Lane(Direction.SOUTH, LaneType.STRAIGHT);
+        ConflictMatrix matrix = ConflictMatrix.of(List.of(a, b, c), (x, y) -> x == a && y == c);
+
+        assertEquals(0b100, matrix.conflictsOf(0));
+        assertEquals(0b001, matrix.conflictsOf(2));
+        assertEquals(0, matrix.conflictsOf(1));
+        assertFalse(matrix.hasConflict(0b011));
+        assertTrue(matrix.hasConflict(0b101));
+    }
+}
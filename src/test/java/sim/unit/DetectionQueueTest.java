@@ -0,0 +1,137 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DetectionQueue} covering draining at step boundaries,
+ * concurrent producers and the counters.
+ */
+class DetectionQueueTest {
+
+    private static Intersection intersection(Config base) {
+        RunConfig config = RunConfig.of(base, false);
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        return intersection;
+    }
+
+    private static Intersection withoutWest() {
+        Config config = new Config();
+        config.geometry.approaches.remove(Direction.WEST);
+        return intersection(config);
+    }
+
+    /**
+     * Detections should only reach the engine when drained, as arrivals at
+     * its current step, and the counters should follow each batch.
+     */
+    @Test
+    void testDrainAtStepBoundary() {
+        Intersection intersection = intersection(new Config());
+        DetectionQueue queue = new DetectionQueue(intersection);
+        SimulationEngine engine = new SimulationEngine(intersection);
+        queue.offer("v1", Direction.NORTH, Direction.SOUTH, VehicleType.NORMAL);
+        queue.offer("v2", Direction.EAST, Direction.WEST, VehicleType.BUS);
+        assertEquals(2, queue.getDepth());
+        assertEquals(0, engine.getStats().get("totalVehicles"));
+
+        assertEquals(2, queue.drainTo(engine));
+        engine.step();
+        assertEquals(0, queue.drainTo(engine));
+        queue.offer("v3", Direction.SOUTH, Direction.NORTH, VehicleType.NORMAL);
+        assertEquals(1, queue.drainTo(engine));
+        engine.step();
+
+        assertEquals(3, engine.getStats().get("totalVehicles"));
+        assertEquals(3, queue.getOffered());
+        assertEquals(3, queue.getDrained());
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, queue.getMaxDepth());
+        assertEquals(3, queue.getBatches());
+        assertEquals(2, queue.getMaxBatch());
+        assertEquals(1.0, queue.getAverageBatch(), 1e-9);
+        assertTrue(queue.getLatencyPercentileNanos(0.5) <= queue.getMaxLatencyNanos());
+        assertEquals(queue.getMaxLatencyNanos(), queue.getLatencyPercentileNanos(1.0));
+        assertTrue(queue.getCounters().containsKey("ingestionLatencyMillis"));
+    }
+
+    /**
+     * Every detection offered by concurrent producers should be drained
+     * exactly once while the simulation keeps stepping.
+     */
+    @Test
+    void testConcurrentProducers() throws Exception {
+        Intersection intersection = intersection(new Config());
+        DetectionQueue queue = new DetectionQueue(intersection);
+        SimulationEngine engine = new SimulationEngine(intersection);
+        int producers = 4;
+        int perProducer = 20_000;
+        Direction[] directions = Direction.values();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Direction start = directions[p % directions.length];
+            Direction end = directions[(p + 2) % directions.length];
+            int producer = p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer("p" + producer + "-" + i, start, end, VehicleType.NORMAL);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            queue.drainTo(engine);
+            engine.step();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        queue.drainTo(engine);
+        engine.finish();
+
+        assertEquals(producers * perProducer, queue.getDrained());
+        assertEquals(0, queue.getDepth());
+        Map<String, Object> stats = engine.getStats();
+        assertEquals(producers * perProducer, stats.get("totalVehicles"));
+        Map<?, ?> perDirection = (Map<?, ?>) stats.get("vehiclesPerDirection");
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, perDirection.get(directions[p % directions.length].name()));
+        }
+    }
+
+    /**
+     * Detections without roads or without a route through the intersection
+     * should be rejected by the producer, and detections the engine rejects
+     * when drained should be dropped without holding up the others.
+     */
+    @Test
+    void testInvalidDetection() {
+        DetectionQueue checked = new DetectionQueue(withoutWest());
+        assertThrows(IllegalArgumentException.class,
+                () -> checked.offer("v", null, Direction.SOUTH, VehicleType.NORMAL));
+        assertThrows(IllegalArgumentException.class,
+                () -> checked.offer("v", Direction.WEST, Direction.EAST, VehicleType.NORMAL));
+        assertEquals(0, checked.getOffered());
+
+        // a queue checking routes against another geometry lets WEST through
+        DetectionQueue queue = new DetectionQueue(intersection(new Config()));
+        SimulationEngine engine = new SimulationEngine(withoutWest());
+        queue.offer("ok1", Direction.NORTH, Direction.SOUTH, VehicleType.NORMAL);
+        queue.offer("bad", Direction.WEST, Direction.EAST, VehicleType.NORMAL);
+        queue.offer("ok2", Direction.SOUTH, Direction.NORTH, VehicleType.NORMAL);
+        assertEquals(2, queue.drainTo(engine));
+        engine.step();
+        assertEquals(0, queue.drainTo(engine));
+        assertEquals(2, engine.getStats().get("totalVehicles"));
+        assertEquals(0, queue.getDepth());
+        assertEquals(3, queue.getDrained());
+        assertEquals(1, queue.getRejected());
+    }
+}
@@ -0,0 +1,75 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link FileStreams} verifying transparent gzip handling.
+ */
+class FileStreamsTest {
+
+    /**
+     * Files written with a {@code .gz} name should be compressed and read back
+     * transparently.
+     */
+    @Test
+    void testGzipRoundTrip() throws Exception {
+        Path dir = Files.createTempDirectory("streams");
+        Path file = dir.resolve("data.json.gz");
+        try {
+            try (OutputStream out = FileStreams.openOutput(file)) {
+                out.write("{\"commands\":[]}".getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] raw = Files.readAllBytes(file);
+            assertEquals(0x1f, raw[0] & 0xff);
+            assertEquals(0x8b, raw[1] & 0xff);
+
+            try (InputStream in = FileStreams.openInput(file)) {
+                assertEquals("{\"commands\":[]}", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Gzipped command files should be recognised by their header even without
+     * the extension, and plain files passed through unchanged.
+     */
+    @Test
+    void testDetectsGzipByHeader() throws Exception {
+        Path gz = Files.createTempFile("commands", ".json");
+        Path plain = Files.createTempFile("commands", ".json");
+        String json = "{ \"commands\": [ { \"type\": \"step\" }, { \"type\": \"step\" } ] }";
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.writeString(plain, json);
+
+            for (Path file : new Path[]{gz, plain}) {
+                int count = 0;
+                try (CommandReader reader = new CommandReader(file.toFile())) {
+                    while (reader.hasNext()) {
+                        assertSame(Command.STEP, reader.next());
+                        count++;
+                    }
+                }
+                assertEquals(2, count);
+            }
+        } finally {
+            Files.deleteIfExists(gz);
+            Files.deleteIfExists(plain);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package sim.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Intersection#fork()} verifying that forks replay the
+ * original and stay independent of it.
+ */
+public class IntersectionForkTest {
+
+    @BeforeEach
+    void setupConfig() {
+        Config.current = new Config();
+    }
+
+    private static Intersection actuated() {
+        Intersection intersection = new Intersection(null);
+        intersection.setController(new ActuatedController(intersection.getRoads()));
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < 24; i++) {
+            Direction start = directions[i % 4];
+            Direction end = directions[(i % 4 + 1 + (i / 4) % 3) % 4];
+            intersection.addVehicle(new Vehicle("v" + i, start, end, 0, VehicleType.NORMAL));
+        }
+        return intersection;
+    }
+
+    private static List<String> ids(List<Vehicle> vehicles) {
+        List<String> ids = new ArrayList<>();
+        for (Vehicle v : vehicles) {
+            ids.add(v.getId());
+        }
+        return ids;
+    }
+
+    private static int queued(Intersection intersection) {
+        int total = 0;
+        for (int i = 0; i < intersection.getLaneCount(); i++) {
+            total += intersection.getLane(i).size();
+        }
+        return total;
+    }
+
+    /**
+     * A fork taken mid-run, controller included, should release the same
+     * vehicles on the same steps as the original.
+     */
+    @Test
+    void testForkReplaysOriginal() {
+        Intersection original = actuated();
+        original.step();
+        original.step();
+        Intersection fork = original.fork();
+        assertTrue(fork.isFork());
+        assertInstanceOf(ActuatedController.class, fork.getController());
+
+        for (int step = 0; step < 30; step++) {
+            List<String> forked = ids(fork.step());
+            assertEquals(ids(original.step()), forked, "step " + step);
+        }
+        assertEquals(0, queued(original));
+    }
+
+    /**
+     * Advancing a fork must not drain the original, and vehicles added to the
+     * original after forking must not appear in the fork.
+     */
+    @Test
+    void testForkIsIndependent() {
+        Intersection original = actuated();
+        int before = queued(original);
+        Intersection fork = original.fork();
+
+        for (int step = 0; step < 10; step++) {
+            fork.advance();
+        }
+        assertTrue(queued(fork) < before);
+        assertEquals(before, queued(original));
+
+        int forked = queued(fork);
+        original.addVehicle(new Vehicle("late", Direction.NORTH, Direction.SOUTH, 0, VehicleType.NORMAL));
+        assertEquals(before + 1, queued(original));
+        assertEquals(forked, queued(fork));
+
+        assertThrows(IllegalStateException.class, () ->
+                fork.addVehicle(new Vehicle("x", Direction.EAST, Direction.WEST, 0, VehicleType.NORMAL)));
+    }
+}
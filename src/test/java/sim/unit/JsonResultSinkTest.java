@@ -0,0 +1,75 @@
+package sim.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link JsonResultSink} verifying each output format against
+ * the in-memory result.
+ */
+class JsonResultSinkTest {
+
+    private static void feed(ResultSink sink) {
+        sink.beginStep();
+        sink.endStep();
+        sink.beginStep();
+        sink.vehicleLeft("a");
+        sink.vehicleLeft("b");
+        sink.endStep();
+        sink.beginStep();
+        sink.vehicleLeft("c");
+        sink.endStep();
+    }
+
+    private static String write(JsonResultSink.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonResultSink sink = new JsonResultSink(out, format)) {
+            feed(sink);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The pretty format should match what ObjectMapper writes for the
+     * in-memory result, byte for byte.
+     */
+    @Test
+    void testPrettyMatchesObjectMapper() throws Exception {
+        InMemoryResultSink memory = new InMemoryResultSink();
+        feed(memory);
+        String expected = new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValueAsString(memory.getResult());
+
+        assertEquals(expected, write(JsonResultSink.Format.PRETTY));
+    }
+
+    /**
+     * The compact format should hold the same document without whitespace.
+     */
+    @Test
+    void testCompact() throws Exception {
+        assertEquals("{\"stepStatuses\":[{\"leftVehicles\":[]},{\"leftVehicles\":[\"a\",\"b\"]},"
+                + "{\"leftVehicles\":[\"c\"]}]}", write(JsonResultSink.Format.COMPACT));
+    }
+
+    /**
+     * NDJSON output should contain one step object per line.
+     */
+    @Test
+    void testNdjson() throws Exception {
+        String[] lines = write(JsonResultSink.Format.NDJSON).split("\n");
+        assertEquals(3, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(Map.of("leftVehicles", List.of()), mapper.readValue(lines[0], Map.class));
+        assertEquals(Map.of("leftVehicles", List.of("a", "b")), mapper.readValue(lines[1], Map.class));
+        assertEquals(Map.of("leftVehicles", List.of("c")), mapper.readValue(lines[2], Map.class));
+    }
+}
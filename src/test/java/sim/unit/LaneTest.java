@@ -3,6 +3,10 @@ package sim.unit;
 import org.junit.jupiter.api.Test;
 import sim.*;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -50,6 +54,37 @@ class LaneTest {
         assertEquals(1, lane.emergencyCount);
     }
 
+    /**
+     * Draining should hand out registered handles in FIFO order across ring
+     * growth and wrap-around, keeping the counters in step.
+     */
+    @Test
+    void testDrainHandlesInOrder() {
+        VehicleRegistry registry = new VehicleRegistry();
+        Lane lane = new Lane(Direction.SOUTH, LaneType.STRAIGHT, registry);
+        int next = 0;
+        int expected = 0;
+        int[] out = new int[8];
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 7; i++, next++) {
+                VehicleType type = next % 5 == 0 ? VehicleType.BUS : VehicleType.NORMAL;
+                lane.enqueue(registry.register("v" + next, round, Direction.SOUTH, Direction.NORTH, type));
+            }
+            int n = lane.drain(5, out, 0);
+            assertEquals(5, n);
+            for (int i = 0; i < n; i++, expected++) {
+                assertEquals("v" + expected, registry.id(out[i]));
+                registry.release(out[i]);
+            }
+        }
+        assertEquals(100, lane.size());
+        int buses = 0;
+        for (int v = expected; v < next; v++) {
+            if (v % 5 == 0) buses++;
+        }
+        assertEquals(buses, lane.busCount);
+    }
+
     /**
      * Total waiting time should equal the sum of individual vehicle wait
      * durations at a given simulation step.
@@ -67,6 +102,54 @@ class LaneTest {
         assertEquals(15, lane.getTotalWaitingTime(15));
     }
 
+    /**
+     * The incrementally maintained total should match a full scan of the
+     * queue after any mix of single adds, bulk adds and polls.
+     */
+    @Test
+    void testWaitingTimeMatchesScan() {
+        Lane lane = new Lane(Direction.EAST, LaneType.LEFT);
+        Deque<Vehicle> reference = new ArrayDeque<>();
+        Random random = new Random(42);
+        int n = 0;
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(4);
+            if (op == 0) {
+                Vehicle v = new Vehicle("v" + n++, Direction.EAST, Direction.NORTH, step, VehicleType.NORMAL);
+                lane.addVehicle(v);
+                reference.add(v);
+            } else if (op == 1) {
+                Vehicle[] batch = new Vehicle[random.nextInt(4)];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = new Vehicle("v" + n++, Direction.EAST, Direction.NORTH, step, VehicleType.BUS);
+                    reference.add(batch[i]);
+                }
+                lane.addVehicles(batch);
+            } else {
+                assertEquals(reference.poll(), lane.pollVehicle());
+            }
+
+            long expected = 0;
+            for (Vehicle v : reference) {
+                expected += step - v.getArrivalStep();
+            }
+            assertEquals(expected, lane.getTotalWaitingTime(step));
+        }
+    }
+
+    /**
+     * The total should not overflow once it exceeds the int range.
+     */
+    @Test
+    void testWaitingTimeBeyondIntRange() {
+        Lane lane = new Lane(Direction.NORTH, LaneType.STRAIGHT);
+        for (int i = 0; i < 3; i++) {
+            lane.addVehicle(new Vehicle("car" + i, Direction.NORTH, Direction.SOUTH, 0, VehicleType.NORMAL));
+        }
+
+        assertEquals(3L * Integer.MAX_VALUE, lane.getTotalWaitingTime(Integer.MAX_VALUE));
+    }
+
     /**
      * Lane priority should include bus bonus when buses are present.
      */
@@ -0,0 +1,101 @@
+package sim.unit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PhaseTable} covering phase generation for the default
+ * and configured geometries.
+ */
+class PhaseTableTest {
+
+    @AfterEach
+    void tearDown() {
+        Config.current = new Config();
+    }
+
+    private static long mask(PhaseTable table, String... lanes) {
+        long mask = 0;
+        for (String lane : lanes) {
+            mask |= 1L << table.getLanes().indexOf(Geometry.LaneKey.parse(lane));
+        }
+        return mask;
+    }
+
+    /**
+     * The default geometry should yield the four classic phases in their
+     * usual order, and identical geometries should share one table.
+     */
+    @Test
+    void testDefaultPhases() {
+        PhaseTable table = PhaseTable.of(new Geometry());
+
+        assertEquals(4, table.getPhaseCount());
+        assertEquals(mask(table, "NORTH_STRAIGHT", "SOUTH_STRAIGHT"), table.getPhase(0));
+        assertEquals(mask(table, "EAST_STRAIGHT", "WEST_STRAIGHT"), table.getPhase(1));
+        assertEquals(mask(table, "NORTH_LEFT", "SOUTH_LEFT"), table.getPhase(2));
+        assertEquals(mask(table, "EAST_LEFT", "WEST_LEFT"), table.getPhase(3));
+        assertSame(table, PhaseTable.of(new Geometry()));
+    }
+
+    /**
+     * Dedicated right-turn lanes should run with the straight lanes of their
+     * axis and receive turning vehicles.
+     */
+    @Test
+    void testRightTurnLanes() {
+        Config.current = new Config();
+        Config.current.geometry.approaches.put(Direction.NORTH,
+                List.of(LaneType.LEFT, LaneType.STRAIGHT, LaneType.RIGHT));
+        Config.current.geometry.approaches.put(Direction.SOUTH,
+                List.of(LaneType.LEFT, LaneType.STRAIGHT, LaneType.RIGHT));
+        PhaseTable table = PhaseTable.of(Config.current.geometry);
+
+        assertEquals(4, table.getPhaseCount());
+        assertEquals(mask(table, "NORTH_STRAIGHT", "SOUTH_STRAIGHT", "NORTH_RIGHT", "SOUTH_RIGHT"),
+                table.getPhase(0));
+
+        Intersection intersection = new Intersection(null);
+        assertEquals(10, intersection.getLaneCount());
+        intersection.addVehicle(new Vehicle("v1", Direction.NORTH, Direction.EAST, 0, VehicleType.NORMAL));
+        intersection.addVehicle(new Vehicle("v2", Direction.EAST, Direction.SOUTH, 0, VehicleType.NORMAL));
+        assertEquals(1, intersection.getRoads().get(Direction.NORTH).getLane(LaneType.RIGHT).size());
+        assertEquals(1, intersection.getRoads().get(Direction.EAST).getLane(LaneType.STRAIGHT).size());
+    }
+
+    /**
+     * Declared conflicts should replace the movement rule: for a T-junction
+     * without a western road, lanes not declared in conflict may share a
+     * phase.
+     */
+    @Test
+    void testDeclaredConflicts() {
+        Geometry geometry = new Geometry();
+        geometry.approaches.remove(Direction.WEST);
+        geometry.conflicts = Map.of(
+                "EAST_LEFT", List.of("NORTH_STRAIGHT", "SOUTH_STRAIGHT", "NORTH_LEFT", "SOUTH_LEFT"),
+                "EAST_STRAIGHT", List.of("NORTH_STRAIGHT", "SOUTH_STRAIGHT", "NORTH_LEFT", "SOUTH_LEFT"),
+                "NORTH_LEFT", List.of("SOUTH_STRAIGHT"),
+                "SOUTH_LEFT", List.of("NORTH_STRAIGHT"));
+        PhaseTable table = PhaseTable.of(geometry);
+
+        assertEquals(List.of(
+                mask(table, "NORTH_STRAIGHT", "SOUTH_STRAIGHT"),
+                mask(table, "NORTH_STRAIGHT", "NORTH_LEFT"),
+                mask(table, "SOUTH_STRAIGHT", "SOUTH_LEFT"),
+                mask(table, "EAST_STRAIGHT", "EAST_LEFT"),
+                mask(table, "NORTH_LEFT", "SOUTH_LEFT")),
+                List.of(table.getPhase(0), table.getPhase(1), table.getPhase(2),
+                        table.getPhase(3), table.getPhase(4)));
+        assertFalse(table.getConflicts().hasConflict(table.getPhase(1)));
+
+        geometry.conflicts = Map.of("WEST_LEFT", List.of("NORTH_LEFT"));
+        assertThrows(IllegalArgumentException.class, () -> PhaseTable.of(geometry));
+    }
+}
@@ -0,0 +1,90 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PipelinedRunner} verifying that the pipelined run is
+ * indistinguishable from a sequential one.
+ */
+class PipelinedRunnerTest {
+
+    private static List<Command> commands() {
+        List<Command> commands = new ArrayList<>();
+        Direction[] dirs = Direction.values();
+        for (int i = 0; i < 3000; i++) {
+            if (i % 3 != 2) {
+                VehicleType type = i % 97 == 0 ? VehicleType.EMERGENCY : i % 11 == 0 ? VehicleType.BUS : VehicleType.NORMAL;
+                commands.add(new Command.AddVehicle("v" + i, dirs[i % 4], dirs[(i / 4 + 1 + i % 4) % 4], type));
+            } else {
+                commands.add(Command.STEP);
+            }
+        }
+        return commands;
+    }
+
+    private static Intersection newIntersection() {
+        Intersection intersection = new Intersection(null);
+        intersection.setController(new ActuatedController(intersection.getRoads()));
+        return intersection;
+    }
+
+    /**
+     * Step output and statistics should match a sequential run, with small
+     * batches and rings forcing frequent hand-offs between the stages.
+     */
+    @Test
+    void testMatchesSequentialRun() {
+        Config.current = new Config();
+        List<Command> commands = commands();
+
+        SimulationEngine sequential = new SimulationEngine(newIntersection());
+        sequential.executeCommands(commands.iterator());
+
+        InMemoryResultSink output = new InMemoryResultSink();
+        PipelinedRunner runner = new PipelinedRunner(7, 2);
+        SimulationEngine pipelined = runner.run(commands.iterator(), newIntersection(), output);
+
+        assertEquals(sequential.getResult(), output.getResult());
+        assertEquals(sequential.getStats(), pipelined.getStats());
+
+        List<PipelinedRunner.StageStats> stages = runner.getStageStats();
+        assertEquals(3, stages.size());
+        assertEquals(commands.size(), stages.get(0).items());
+        assertEquals(1000, stages.get(1).items());
+        assertEquals(1000, stages.get(2).items());
+    }
+
+    /**
+     * A failure in the parser stage should surface from run() instead of
+     * leaving the other stages blocked.
+     */
+    @Test
+    void testParserFailurePropagates() {
+        Config.current = new Config();
+        Iterator<Command> failing = new Iterator<>() {
+            int n = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Command next() {
+                if (++n > 50) throw new IllegalArgumentException("bad input");
+                return Command.STEP;
+            }
+        };
+        PipelinedRunner runner = new PipelinedRunner(4, 2);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> runner.run(failing, newIntersection(), new InMemoryResultSink()));
+        assertEquals("bad input", e.getMessage());
+    }
+}
@@ -0,0 +1,116 @@
+package sim.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RunConfig} verifying that runs only depend on the
+ * snapshot they were built with.
+ */
+public class RunConfigTest {
+
+    @BeforeEach
+    void setupConfig() {
+        Config.current = new Config();
+    }
+
+    private static RunConfig config(int vehiclesPerStep, int yellowDuration) {
+        Config config = new Config();
+        config.vehiclesPerStep = vehiclesPerStep;
+        config.yellowDuration = yellowDuration;
+        return RunConfig.of(config, false);
+    }
+
+    /**
+     * Departures per step of an actuated run with twenty queued vehicles on
+     * every straight lane.
+     */
+    private static List<Integer> run(RunConfig config) {
+        Intersection intersection = new Intersection(null, config);
+        intersection.setController(new ActuatedController(intersection.getRoads(), config));
+        int id = 0;
+        for (Direction d : Direction.values()) {
+            for (int i = 0; i < 20; i++) {
+                intersection.addVehicle(new Vehicle("v" + id++, d, d.opposite(), 0, VehicleType.NORMAL));
+            }
+        }
+        List<Integer> departures = new ArrayList<>();
+        for (int step = 0; step < 60; step++) {
+            departures.add(intersection.advance());
+        }
+        return departures;
+    }
+
+    /**
+     * Later changes to the global configuration must not reach a snapshot or
+     * the intersection built from it.
+     */
+    @Test
+    void testSnapshotIgnoresGlobalChanges() {
+        RunConfig config = RunConfig.current();
+        Intersection intersection = new Intersection(null, config);
+        Config.current.vehiclesPerStep = 7;
+        Config.current.busPriority = 9.0;
+
+        assertEquals(2, config.vehiclesPerStep);
+        assertSame(config, intersection.getConfig());
+        Lane lane = intersection.getRoads().get(Direction.NORTH).getLane(LaneType.STRAIGHT);
+        lane.addVehicle(new Vehicle("bus", Direction.NORTH, Direction.SOUTH, 0, VehicleType.BUS));
+        assertEquals(1.0 + 2.0, lane.getPriority());
+    }
+
+    /**
+     * Right-turn lanes declared only in the geometry should get the default
+     * base priority, like the other lanes.
+     */
+    @Test
+    void testDefaultPriorityOfRightLanes() {
+        Config base = new Config();
+        for (Direction d : Direction.values()) {
+            base.geometry.approaches.put(d, List.of(LaneType.LEFT, LaneType.STRAIGHT, LaneType.RIGHT));
+        }
+        RunConfig config = RunConfig.of(base, false);
+        Intersection intersection = new Intersection(null, config);
+        for (int i = 0; i < intersection.getLaneCount(); i++) {
+            assertEquals(1.0, config.getLanePriority(i));
+            assertEquals(1.0, intersection.getLane(i).getPriority());
+        }
+        assertEquals(12, intersection.getLaneCount());
+    }
+
+    /**
+     * Runs with different configurations on concurrent threads should match
+     * the same runs done one after the other.
+     */
+    @Test
+    void testConcurrentRunsWithDifferentConfigs() throws Exception {
+        RunConfig slow = config(1, 2);
+        RunConfig fast = config(3, 1);
+        List<Integer> slowAlone = run(slow);
+        List<Integer> fastAlone = run(fast);
+        assertNotEquals(slowAlone, fastAlone);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Integer>>> runs = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                RunConfig config = i % 2 == 0 ? slow : fast;
+                runs.add(executor.submit(() -> run(config)));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                assertEquals(i % 2 == 0 ? slowAlone : fastAlone, runs.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ScenarioCompiler}, {@link ScenarioFile} and
+ * {@link ScenarioCache} verifying that compiled scenarios replay exactly like
+ * the commands they were built from.
+ */
+class ScenarioFileTest {
+
+    private static List<Command> sampleCommands() {
+        List<Command> commands = new ArrayList<>();
+        String[] ids = {"v1", "v2", "v007", "e1a", "12345", "car-0", "x", "v10", "ü9", "v1234567890123456789012"};
+        Direction[] dirs = Direction.values();
+        for (int i = 0; i < ids.length; i++) {
+            VehicleType type = i == 3 ? VehicleType.EMERGENCY : i % 4 == 1 ? VehicleType.BUS : VehicleType.NORMAL;
+            commands.add(new Command.AddVehicle(ids[i], dirs[i % 4], dirs[(i + 1 + i / 4) % 4], type));
+            if (i % 3 == 0) {
+                commands.add(Command.STEP);
+            }
+        }
+        commands.add(new Command.Unknown("noop"));
+        commands.add(new Command.AddVehicles("bulk", 7, 3, Direction.NORTH, Direction.EAST, VehicleType.BUS));
+        commands.add(new Command.Step(5));
+        for (int i = 0; i < 40; i++) {
+            commands.add(Command.STEP);
+        }
+        return commands;
+    }
+
+    private static SimulationEngine newEngine() {
+        Config.current = new Config();
+        Intersection intersection = new Intersection(null);
+        intersection.setController(new ActuatedController(intersection.getRoads()));
+        return new SimulationEngine(intersection);
+    }
+
+    /**
+     * Replaying a compiled scenario should yield the same step output and
+     * statistics, including every vehicle id, as executing the commands.
+     */
+    @Test
+    void testCompiledReplayMatchesCommands() throws Exception {
+        List<Command> commands = sampleCommands();
+        Path file = Files.createTempFile("scenario", ".scn");
+        try {
+            ScenarioCompiler.compile(commands.iterator(), file);
+            assertTrue(ScenarioFile.isCompiled(file));
+
+            SimulationEngine direct = newEngine();
+            direct.executeCommands(commands.iterator());
+            SimulationEngine replayed = newEngine();
+            ScenarioFile.replay(file, replayed);
+
+            assertEquals(direct.getResult(), replayed.getResult());
+            assertEquals(direct.getStats(), replayed.getStats());
+            assertEquals(13, replayed.getStats().get("vehiclesLeft"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * The cache should compile a JSON file once and reuse the result for
+     * identical content.
+     */
+    @Test
+    void testCacheReusesCompiledFile() throws Exception {
+        Path dir = Files.createTempDirectory("scenario-cache");
+        Path json = dir.resolve("input.json");
+        Files.writeString(json, """
+                { "commands": [
+                    { "type": "addVehicle", "vehicleId": "V1", "startRoad": "north", "endRoad": "south" },
+                    { "type": "step" }, { "type": "step" }
+                ] }
+                """);
+        try {
+            ScenarioCache cache = new ScenarioCache(dir.resolve("cache"));
+            Path first = cache.compiled(json);
+            long modified = Files.getLastModifiedTime(first).toMillis();
+            Path second = cache.compiled(json);
+
+            assertEquals(first, second);
+            assertEquals(modified, Files.getLastModifiedTime(second).toMillis());
+
+            SimulationEngine engine = newEngine();
+            ScenarioFile.replay(first, engine);
+            assertEquals(1, engine.getStats().get("vehiclesLeft"));
+            assertEquals(2, engine.getStats().get("totalSteps"));
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
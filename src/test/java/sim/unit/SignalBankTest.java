@@ -0,0 +1,72 @@
+package sim.unit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SignalBank} verifying that bitmask updates follow the
+ * same transitions as individual {@link TrafficLight}s.
+ */
+class SignalBankTest {
+
+    @BeforeEach
+    void resetConfig() {
+        Config.current = new Config();
+        Config.current.yellowDuration = 2;
+    }
+
+    /**
+     * Applying a mask should turn red lanes in it green and green lanes
+     * outside it yellow, leaving yellow and blinking lanes alone.
+     */
+    @Test
+    void testApplyTransitions() {
+        SignalBank bank = new SignalBank(4);
+        bank.setGreen(0);
+        bank.setYellow(1);
+        bank.setBlinking(2);
+
+        bank.apply(0b1110);
+        assertEquals(TrafficLightState.YELLOW, bank.getState(0));
+        assertEquals(TrafficLightState.YELLOW, bank.getState(1));
+        assertEquals(TrafficLightState.BLINKING, bank.getState(2));
+        assertEquals(TrafficLightState.GREEN, bank.getState(3));
+        assertEquals(0b1000, bank.getGreenMask());
+    }
+
+    /**
+     * Yellow lights should count down and turn red after the configured
+     * duration.
+     */
+    @Test
+    void testYellowCountdown() {
+        SignalBank bank = new SignalBank(2);
+        bank.apply(0b11);
+        bank.apply(0b10);
+        assertEquals(TrafficLightState.YELLOW, bank.getState(0));
+
+        bank.step();
+        assertEquals(TrafficLightState.YELLOW, bank.getState(0));
+        bank.step();
+        assertEquals(TrafficLightState.RED, bank.getState(0));
+        assertEquals(TrafficLightState.GREEN, bank.getState(1));
+    }
+
+    /**
+     * Lanes of an intersection should be indexed densely and their lights
+     * should be views of the intersection's bank.
+     */
+    @Test
+    void testIntersectionLanesShareBank() {
+        Intersection intersection = new Intersection(null);
+        for (int i = 0; i < intersection.getLaneCount(); i++) {
+            assertEquals(i, intersection.getLane(i).getIndex());
+        }
+        Lane lane = intersection.getRoads().get(Direction.EAST).getLane(LaneType.LEFT);
+        lane.getTrafficLight().setGreen();
+        assertEquals(1L << lane.getIndex(), intersection.getSignals().getGreenMask());
+    }
+}
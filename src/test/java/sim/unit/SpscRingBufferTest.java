@@ -0,0 +1,86 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.SpscRingBuffer;
+
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SpscRingBuffer} covering ordering across threads and
+ * aborting blocked callers.
+ */
+class SpscRingBufferTest {
+
+    /**
+     * Capacity should be rounded up to a power of two.
+     */
+    @Test
+    void testCapacityRounding() {
+        assertEquals(8, new SpscRingBuffer<Integer>(5).capacity());
+        assertEquals(1, new SpscRingBuffer<Integer>(1).capacity());
+    }
+
+    /**
+     * Elements put by one thread should be taken by another in FIFO order,
+     * even when the producer repeatedly fills the buffer.
+     */
+    @Test
+    void testOrderAcrossThreads() throws Exception {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        int count = 100_000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                ring.put(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, ring.take());
+        }
+        producer.join();
+    }
+
+    /**
+     * Non-blocking reads should return null on an empty buffer and leave the
+     * element in place when only peeking.
+     */
+    @Test
+    void testPeekAndPoll() {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(2);
+        assertNull(ring.peek());
+        assertNull(ring.poll());
+        ring.put(1);
+        ring.put(2);
+        assertEquals(1, ring.peek());
+        assertEquals(1, ring.poll());
+        assertEquals(2, ring.peek());
+        ring.put(3);
+        assertEquals(2, ring.poll());
+        assertEquals(3, ring.take());
+        assertNull(ring.poll());
+    }
+
+    /**
+     * A consumer waiting on an empty buffer should fail once it is aborted.
+     */
+    @Test
+    void testAbortWakesConsumer() throws Exception {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(2);
+        Throwable[] thrown = new Throwable[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                ring.take();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        consumer.start();
+        Thread.sleep(20);
+        ring.abort();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertInstanceOf(CancellationException.class, thrown[0]);
+    }
+}
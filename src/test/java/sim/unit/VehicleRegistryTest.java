@@ -0,0 +1,187 @@
+package sim.unit;
+
+import org.junit.jupiter.api.Test;
+import sim.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link VehicleRegistry} covering handle assignment, reuse
+ * and the remaining wait time scan.
+ */
+class VehicleRegistryTest {
+
+    /**
+     * Handles should be dense and resolve back to the registered id and
+     * arrival step.
+     */
+    @Test
+    void testRegisterAndLookup() {
+        VehicleRegistry registry = new VehicleRegistry();
+        int a = registry.register("a", 3);
+        int b = registry.register("b", 5);
+
+        assertEquals(0, a);
+        assertEquals(1, b);
+        assertEquals("a", registry.id(a));
+        assertEquals(5, registry.arrivalStep(b));
+        assertEquals(2, registry.size());
+    }
+
+    /**
+     * Released handles should be reused and no longer count towards the
+     * remaining wait time.
+     */
+    @Test
+    void testReleaseReusesHandle() {
+        VehicleRegistry registry = new VehicleRegistry();
+        int a = registry.register("a", 0);
+        registry.register("b", 4);
+        registry.release(a);
+
+        assertEquals(1, registry.size());
+        assertEquals(6, registry.maxWaitTime(10));
+
+        int c = registry.register("c", 7);
+        assertEquals(a, c);
+        assertEquals("c", registry.id(c));
+        assertThrows(IllegalStateException.class, () -> {
+            registry.release(c);
+            registry.release(c);
+        });
+    }
+
+    /**
+     * Route and type should be stored with the handle and rebuild an equal
+     * vehicle; handles registered without a route cannot be rebuilt.
+     */
+    @Test
+    void testRoute() {
+        VehicleRegistry registry = new VehicleRegistry();
+        int bus = registry.register("b1", 2, Direction.WEST, Direction.NORTH, VehicleType.BUS);
+        int plain = registry.register("p1", 3);
+
+        assertEquals(Direction.WEST, registry.start(bus));
+        assertEquals(Direction.NORTH, registry.end(bus));
+        assertEquals(VehicleType.BUS, registry.type(bus));
+        assertEquals(new Vehicle("b1", Direction.WEST, Direction.NORTH, 2, VehicleType.BUS), registry.vehicle(bus));
+        assertThrows(IllegalStateException.class, () -> registry.type(plain));
+    }
+
+    /**
+     * The registry should grow past its initial capacity.
+     */
+    @Test
+    void testGrowth() {
+        VehicleRegistry registry = new VehicleRegistry();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, registry.register("v" + i, i));
+        }
+        assertEquals("v999", registry.id(999));
+        assertEquals(1000, registry.maxWaitTime(1000));
+    }
+
+    /**
+     * Ids should round-trip exactly, including leading zeros, missing ids and
+     * ids without a numeric suffix.
+     */
+    @Test
+    void testIdEncoding() {
+        VehicleRegistry registry = new VehicleRegistry();
+        String[] ids = {"car7", "car007", "0", "00", "bus", "12345678901234567890", null, "ü9"};
+        int[] handles = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            handles[i] = registry.register(ids[i], i);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], registry.id(handles[i]));
+        }
+    }
+
+    /**
+     * Records beyond the memory budget should be served from the spill file
+     * and behave like any other record.
+     */
+    @Test
+    void testSpillBeyondBudget() throws Exception {
+        Path dir = Files.createTempDirectory("vehicle-spill");
+        try {
+            VehicleRegistry registry = new VehicleRegistry(1, dir);
+            int n = 150_000;
+            for (int i = 0; i < n; i++) {
+                registry.register("v" + i, i, Direction.NORTH, Direction.SOUTH, VehicleType.NORMAL);
+            }
+            assertTrue(registry.getSpilledBytes() > 0);
+            assertEquals("v149999", registry.id(149_999));
+            assertEquals(100_000, registry.arrivalStep(100_000));
+            assertEquals(n, registry.maxWaitTime(n));
+
+            registry.release(0);
+            registry.release(140_000);
+            assertEquals(140_000, registry.register("again", 7));
+            assertEquals(n - 1, registry.maxWaitTime(n));
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * @return files in {@code dir} plus descriptors of this process still
+     * open on files there, which on Linux outlive the directory entry of a
+     * spill file
+     */
+    private static long spillFiles(Path dir) throws Exception {
+        long count;
+        try (var files = Files.list(dir)) {
+            count = files.count();
+        }
+        Path descriptors = Path.of("/proc/self/fd");
+        if (Files.isDirectory(descriptors)) {
+            try (var fds = Files.list(descriptors)) {
+                count += fds.filter(fd -> {
+                    try {
+                        return Files.readSymbolicLink(fd).startsWith(dir);
+                    } catch (Exception e) {
+                        return false;
+                    }
+                }).count();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closing the engine should close the registry of its intersection,
+     * releasing and deleting the spill file.
+     */
+    @Test
+    void testCloseDeletesSpillFile() throws Exception {
+        Path dir = Files.createTempDirectory("vehicle-spill");
+        try {
+            Config config = new Config();
+            config.vehicleStoreMemoryMB = 1;
+            config.vehicleStoreSpillDir = dir.toString();
+            Intersection intersection = new Intersection(null, RunConfig.of(config, false));
+            intersection.setController(new ActuatedController(intersection.getRoads(), intersection.getConfig()));
+            SimulationEngine engine = new SimulationEngine(intersection);
+            engine.addVehicles("v", 0, 100_000, Direction.NORTH, Direction.SOUTH, VehicleType.NORMAL);
+            assertTrue(intersection.getVehicles().getSpilledBytes() > 0);
+            assertTrue(spillFiles(dir) > 0);
+
+            engine.close();
+            assertEquals(0, spillFiles(dir));
+            assertEquals(100_000, engine.getStats().get("totalVehicles"));
+            assertThrows(IllegalStateException.class, () -> intersection.getVehicles().register("late", 0));
+            engine.close();
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(java.util.Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}